@@ -0,0 +1,176 @@
+package com.example.mediaid.neo4j;
+
+import com.example.mediaid.bl.build_UMLS_terms.RrfReader;
+import com.example.mediaid.constants.ImportConstants;
+import com.example.mediaid.utils.CuiCodec;
+import com.example.mediaid.utils.IntHashSet;
+import com.example.mediaid.utils.IntIntHashMap;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.example.mediaid.constants.DatabaseConstants.INDEXED_ENTITY_TYPES;
+
+/**
+ * השוואת סיווג שורות MRREL: הדרך הישנה (מחרוזות, נרמול וסט לכל סוג בכל שורה) מול MrrelClassifier
+ * הרצה: mvn -Pjmh verify
+ * שתי המדידות קוראות את אותו קובץ סינתטי בתהליכון אחד, כך שההבדל הוא עלות הסיווג בלבד.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MrrelClassifierBenchmark {
+
+    private static final int CUI1 = 0;
+    private static final int REL = 3;
+    private static final int CUI2 = 4;
+    private static final int RELA = 7;
+    private static final int SAB = 10;
+
+    private static final String[] RELS = {"RO", "RN", "RB", "PAR", "CHD", "SY", "RQ"};
+    private static final String[] RELAS = {"", "may_treat", "may_be_treated_by", "has_finding", "finding_of",
+            "causative_agent_of", "has_causative_agent", "isa", "inverse_isa", "associated_with",
+            "has_manifestation", "manifestation_of", "contraindicated_with", "has_location", "location_of"};
+    private static final String[] SABS = {"SNOMEDCT_US", "RXNORM", "MSH", "NCI", "MTH", "MEDCIN", "ICD10"};
+
+    @Param({"1000000"})
+    public int lines;
+
+    @Param({"50000"})
+    public int nodes;
+
+    private Path mrrel;
+    private Map<String, IntHashSet> cuisByType;
+
+    @Setup(Level.Trial)
+    public void createFile() throws IOException {
+        Random random = new Random(7);
+        cuisByType = new LinkedHashMap<>();
+        for (String type : INDEXED_ENTITY_TYPES) {
+            cuisByType.put(type, new IntHashSet());
+        }
+        for (int i = 0; i < nodes; i++) {
+            cuisByType.get(INDEXED_ENTITY_TYPES[random.nextInt(INDEXED_ENTITY_TYPES.length)]).add(random.nextInt(2 * nodes) + 1);
+        }
+
+        mrrel = Files.createTempFile("mrrel-bench-", ".RRF");
+        try (BufferedWriter writer = Files.newBufferedWriter(mrrel)) {
+            for (int i = 0; i < lines; i++) {
+                String cui1 = CuiCodec.decode(random.nextInt(2 * nodes) + 1);
+                String cui2 = CuiCodec.decode(random.nextInt(2 * nodes) + 1);
+                String rel = RELS[random.nextInt(RELS.length)];
+                String rela = RELAS[random.nextInt(RELAS.length)];
+                String sab = SABS[random.nextInt(SABS.length)];
+                writer.write(cui1 + "|A1|SCUI|" + rel + "|" + cui2 + "|A2|SCUI|" + rela + "|R" + i + "||" +
+                        sab + "|" + sab + "|||N||\n");
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFile() throws IOException {
+        Files.deleteIfExists(mrrel);
+    }
+
+    @Benchmark
+    public void legacy(Blackhole blackhole) throws IOException {
+        LegacyClassifier classifier = new LegacyClassifier(cuisByType);
+        reader().forEach(row -> blackhole.consume(classifier.classify(row)));
+    }
+
+    @Benchmark
+    public void compiled(Blackhole blackhole) throws IOException {
+        MrrelClassifier classifier = new MrrelClassifier(cuisByType, REL, RELA, SAB);
+        reader().forEach(row -> {
+            int cui1 = row.cuiCode(CUI1);
+            int cui2 = row.cuiCode(CUI2);
+            if (cui1 == cui2) {
+                return;
+            }
+            MrrelClassifier.RelationEntry relation = classifier.relation(row);
+            if (relation.isExcluded()) {
+                return;
+            }
+            int startTypes = classifier.typeMask(cui1);
+            int endTypes = classifier.typeMask(cui2);
+            if (startTypes == 0 || endTypes == 0) {
+                return;
+            }
+            blackhole.consume(CuiCodec.relationshipKey(cui1, cui2, relation.relationshipTypeId()));
+            blackhole.consume(relation.weight());
+        });
+    }
+
+    private RrfReader reader() {
+        return new RrfReader(mrrel.toString(), CUI1, REL, CUI2, RELA, SAB, 14).parallelism(1);
+    }
+
+    /**
+     * הסיווג כפי שהיה ב-UmlsRelationshipImporter לפני MrrelClassifier
+     */
+    private static final class LegacyClassifier {
+        private final List<IntHashSet> sets = new ArrayList<>();
+        private final IntIntHashMap cuiLabels = new IntIntHashMap();
+        private final Map<String, Integer> relationshipTypeIds = new ConcurrentHashMap<>();
+        private final AtomicInteger nextRelationshipTypeId = new AtomicInteger();
+
+        LegacyClassifier(Map<String, IntHashSet> cuisByType) {
+            for (int typeIndex = 0; typeIndex < INDEXED_ENTITY_TYPES.length; typeIndex++) {
+                IntHashSet cuis = cuisByType.get(INDEXED_ENTITY_TYPES[typeIndex]);
+                sets.add(cuis);
+                int index = typeIndex;
+                cuis.forEach(cui -> {
+                    if (!cuiLabels.containsKey(cui)) {
+                        cuiLabels.put(cui, index);
+                    }
+                });
+            }
+        }
+
+        long classify(RrfReader.RrfRow row) {
+            int cui1 = row.cuiCode(CUI1);
+            int cui2 = row.cuiCode(CUI2);
+            if (cui1 == cui2) {
+                return -1;
+            }
+            String rel = row.getString(REL);
+            String rela = row.getString(RELA);
+            String sab = row.getString(SAB);
+
+            String relationshipType = MrrelClassifier.relationshipType(rel, rela);
+            if (relationshipType == null ||
+                    ImportConstants.EXCLUDED_RELATIONSHIP_TYPES.contains(relationshipType.toLowerCase())) {
+                return -1;
+            }
+            int startLabel = cuiLabels.get(cui1, -1);
+            int endLabel = cuiLabels.get(cui2, -1);
+            if (!exists(cui1) || !exists(cui2) || startLabel < 0 || endLabel < 0) {
+                return -1;
+            }
+            int relTypeId = relationshipTypeIds.computeIfAbsent(relationshipType, type -> nextRelationshipTypeId.getAndIncrement());
+            double weight = RelationshipTypes.calculateRelationshipWeight(
+                    rela != null && !rela.trim().isEmpty() ? rela : rel, sab);
+            return CuiCodec.relationshipKey(cui1, cui2, relTypeId) ^ Double.doubleToLongBits(weight);
+        }
+
+        private boolean exists(int cui) {
+            for (IntHashSet set : sets) {
+                if (set.contains(cui)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -271,12 +271,8 @@ public class RecommendationController {
             Map<String, Object> graphAnalysisResults = new HashMap<>();
 
             // 1. Advanced Pathway Analysis
-            List<MedicalAnalysisService.MedicalPathway> pathways = new ArrayList<>();
-            for (var entity : allUserEntities) {
-                var entityPathways = analysisService.findMedicalPathways(
-                        entity.getCui(), symptoms, maxPathDepth);
-                pathways.addAll(entityPathways);
-            }
+            List<MedicalAnalysisService.MedicalPathway> pathways =
+                    analysisService.findMedicalPathwaysFromEntities(allUserEntities, symptoms, maxPathDepth);
             graphAnalysisResults.put("advancedPathways", pathways);
             logger.info("Found {} advanced pathways", pathways.size());
 
@@ -1,5 +1,7 @@
 package com.example.mediaid.bl;
 
+import com.example.mediaid.utils.CuiCodec;
+import com.example.mediaid.utils.IntHashSet;
 import lombok.Data;
 
 import java.util.Set;
@@ -122,6 +124,15 @@ public class DemoMode {
             "C0022662" //בדיקות תפקודי כליות
     );
 
+    // אותם CUIs בקידוד מספרי - לבדיקות בתהליכי הייבוא
+    private static final IntHashSet DEMO_CUI_CODES = new IntHashSet(DEMO_CUIS.size());
+
+    static {
+        for (String cui : DEMO_CUIS) {
+            DEMO_CUI_CODES.add(CuiCodec.encode(cui));
+        }
+    }
+
     /**
      * בדיקה אם CUI כלול במצב דמו
      */
@@ -142,6 +153,26 @@ public class DemoMode {
         return isRelevantForDemo(cui1) && isRelevantForDemo(cui2);
     }
 
+    /**
+     * בדיקה אם CUI (בקידוד CuiCodec) כלול במצב דמו
+     */
+    public static boolean isRelevantForDemo(int cuiCode) {
+        if (!MODE) {
+            return true;
+        }
+        return DEMO_CUI_CODES.contains(cuiCode);
+    }
+
+    /**
+     * בדיקה אם קשר רלוונטי למצב דמו (CUIs בקידוד CuiCodec)
+     */
+    public static boolean isRelationshipRelevantForDemo(int cui1, int cui2) {
+        if (!MODE) {
+            return true;
+        }
+        return isRelevantForDemo(cui1) && isRelevantForDemo(cui2);
+    }
+
     /**
      * קבלת סטטיסטיקות על מצב דמו
      */
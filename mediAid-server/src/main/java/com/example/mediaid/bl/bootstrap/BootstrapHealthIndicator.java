@@ -0,0 +1,38 @@
+package com.example.mediaid.bl.bootstrap;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.stereotype.Component;
+
+/**
+ * מצב טעינת הנתונים ב-/actuator/health (רכיב "bootstrap")
+ * WARMING כל עוד שלב כלשהו לא הסתיים, ואחר כך UP עם פירוט השלבים (כולל שגיאות).
+ */
+@Component
+public class BootstrapHealthIndicator implements HealthIndicator {
+
+    /** סטטוס מותאם - השרת פעיל אבל הנתונים עדיין נטענים */
+    public static final Status WARMING = new Status("WARMING", "Data bootstrap in progress");
+
+    private final BootstrapStatus status;
+
+    @Autowired
+    public BootstrapHealthIndicator(BootstrapStatus status) {
+        this.status = status;
+    }
+
+    @Override
+    public Health health() {
+        Health.Builder builder = status.isComplete() ? Health.up() : Health.status(WARMING);
+        BootstrapPhase current = status.currentPhase();
+        if (current != null) {
+            builder.withDetail("currentPhase", current.name().toLowerCase());
+        }
+        return builder
+                .withDetails(status.details())
+                .withDetail("failures", status.hasFailures())
+                .build();
+    }
+}
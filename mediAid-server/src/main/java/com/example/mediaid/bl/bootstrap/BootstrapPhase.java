@@ -0,0 +1,13 @@
+package com.example.mediaid.bl.bootstrap;
+
+/**
+ * שלבי טעינת הנתונים בעליית השרת, לפי סדר התלות ביניהם
+ */
+public enum BootstrapPhase {
+    /** טבלאות מונחי UMLS ב-PostgreSQL */
+    TERMS,
+    /** ישויות בגרף Neo4j (נקראות מטבלאות המונחים) */
+    GRAPH_ENTITIES,
+    /** קשרים בגרף Neo4j מתוך MRREL (דורשים את הישויות) */
+    GRAPH_RELATIONSHIPS
+}
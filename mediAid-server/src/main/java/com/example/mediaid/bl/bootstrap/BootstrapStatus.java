@@ -0,0 +1,122 @@
+package com.example.mediaid.bl.bootstrap;
+
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * מצב טעינת הנתונים - נכתב על ידי DataBootstrapService ונקרא על ידי ה-health indicator ושכבת ה-web
+ */
+@Component
+public class BootstrapStatus {
+
+    public enum PhaseState {
+        PENDING, RUNNING, READY, SKIPPED, FAILED;
+
+        /** האם השלב הסתיים (בהצלחה, בדילוג או בכישלון) */
+        public boolean isFinished() {
+            return this == READY || this == SKIPPED || this == FAILED;
+        }
+    }
+
+    private final Map<BootstrapPhase, PhaseState> states = new EnumMap<>(BootstrapPhase.class);
+    private final Map<BootstrapPhase, Instant> startTimes = new EnumMap<>(BootstrapPhase.class);
+    private final Map<BootstrapPhase, Duration> durations = new EnumMap<>(BootstrapPhase.class);
+    private final Map<BootstrapPhase, String> errors = new EnumMap<>(BootstrapPhase.class);
+
+    public BootstrapStatus() {
+        for (BootstrapPhase phase : BootstrapPhase.values()) {
+            states.put(phase, PhaseState.PENDING);
+        }
+    }
+
+    public synchronized void start(BootstrapPhase phase) {
+        states.put(phase, PhaseState.RUNNING);
+        startTimes.put(phase, Instant.now());
+    }
+
+    public synchronized void complete(BootstrapPhase phase) {
+        finish(phase, PhaseState.READY);
+    }
+
+    public synchronized void skip(BootstrapPhase phase) {
+        finish(phase, PhaseState.SKIPPED);
+    }
+
+    public synchronized void fail(BootstrapPhase phase, String error) {
+        finish(phase, PhaseState.FAILED);
+        errors.put(phase, error);
+    }
+
+    private void finish(BootstrapPhase phase, PhaseState state) {
+        states.put(phase, state);
+        Instant start = startTimes.get(phase);
+        if (start != null) {
+            durations.put(phase, Duration.between(start, Instant.now()));
+        }
+    }
+
+    public synchronized PhaseState getState(BootstrapPhase phase) {
+        return states.get(phase);
+    }
+
+    /**
+     * האם השלב (וכל השלבים שהוא תלוי בהם) הסתיים
+     */
+    public synchronized boolean isAvailable(BootstrapPhase phase) {
+        for (BootstrapPhase p : BootstrapPhase.values()) {
+            if (!states.get(p).isFinished()) {
+                return false;
+            }
+            if (p == phase) {
+                return true;
+            }
+        }
+        return true;
+    }
+
+    public synchronized boolean isComplete() {
+        return states.values().stream().allMatch(PhaseState::isFinished);
+    }
+
+    public synchronized boolean hasFailures() {
+        return states.containsValue(PhaseState.FAILED);
+    }
+
+    /**
+     * השלב הראשון שעדיין לא הסתיים, או null
+     */
+    public synchronized BootstrapPhase currentPhase() {
+        for (BootstrapPhase phase : BootstrapPhase.values()) {
+            if (!states.get(phase).isFinished()) {
+                return phase;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * פירוט השלבים לתצוגה ב-health
+     */
+    public synchronized Map<String, Object> details() {
+        Map<String, Object> details = new LinkedHashMap<>();
+        for (BootstrapPhase phase : BootstrapPhase.values()) {
+            Map<String, Object> phaseDetails = new LinkedHashMap<>();
+            phaseDetails.put("state", states.get(phase));
+            if (durations.containsKey(phase)) {
+                phaseDetails.put("durationMs", durations.get(phase).toMillis());
+            } else if (startTimes.containsKey(phase)) {
+                phaseDetails.put("runningForMs", Duration.between(startTimes.get(phase), Instant.now()).toMillis());
+            }
+            if (errors.containsKey(phase)) {
+                phaseDetails.put("error", errors.get(phase));
+            }
+            details.put(phase.name().toLowerCase(), phaseDetails);
+        }
+        return details;
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.mediaid.bl.bootstrap;
+
+import com.example.mediaid.bl.build_UMLS_terms.GenericUmlsProcessor;
+import com.example.mediaid.bl.build_UMLS_terms.UmlsIngestCoordinator;
+import com.example.mediaid.neo4j.DataImportRunner;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * טעינת נתוני UMLS והגרף ברקע, כך ששכבת ה-web עולה מיד
+ * השלבים רצים לפי סדר התלות (מונחים -> ישויות בגרף -> קשרים), ובתוך כל שלב העבודה הבלתי תלויה רצה במקביל.
+ * ההתקדמות מתפרסמת ב-BootstrapStatus (health indicator) וב-ReadinessState של Actuator.
+ */
+@Service
+public class DataBootstrapService {
+    private static final Logger logger = LoggerFactory.getLogger(DataBootstrapService.class);
+
+    private final UmlsIngestCoordinator ingestCoordinator;
+    private final List<GenericUmlsProcessor<?>> processors;
+    private final DataImportRunner dataImportRunner;
+    private final BootstrapStatus status;
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final AtomicInteger threadCounter = new AtomicInteger();
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "mediaid-bootstrap-" + threadCounter.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Value("${mediaid.umls.ingest.coordinated:true}")
+    private boolean coordinatedIngest; //ייבוא משותף לכל המעבדים בסריקה אחת
+
+    @Value("${mediaid.bootstrap.hold-readiness:false}")
+    private boolean holdReadiness; //השרת מסרב לתעבורה (readiness) עד סוף הטעינה
+
+    @Autowired
+    public DataBootstrapService(UmlsIngestCoordinator ingestCoordinator,
+                                List<GenericUmlsProcessor<?>> processors,
+                                DataImportRunner dataImportRunner,
+                                BootstrapStatus status,
+                                ApplicationEventPublisher eventPublisher) {
+        this.ingestCoordinator = ingestCoordinator;
+        this.processors = processors;
+        this.dataImportRunner = dataImportRunner;
+        this.status = status;
+        this.eventPublisher = eventPublisher;
+    }
+
+    /**
+     * הפעלת הטעינה ברקע מיד כשהאפליקציה מוכנה
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void startBootstrap() {
+        logger.info("Starting background data bootstrap");
+        CompletableFuture.runAsync(this::runBootstrap, executor);
+    }
+
+    /**
+     * Spring Boot מפרסם ACCEPTING_TRAFFIC מיד אחרי ApplicationReadyEvent - כל עוד הטעינה לא הסתיימה מחזירים REFUSING_TRAFFIC
+     */
+    @EventListener
+    public void onReadinessChange(AvailabilityChangeEvent<ReadinessState> event) {
+        if (holdReadiness && event.getState() == ReadinessState.ACCEPTING_TRAFFIC && !status.isComplete()) {
+            AvailabilityChangeEvent.publish(eventPublisher, this, ReadinessState.REFUSING_TRAFFIC);
+        }
+    }
+
+    private void runBootstrap() {
+        long startTime = System.currentTimeMillis();
+        try {
+            loadTerms();
+            dataImportRunner.runDataImport();
+        } catch (Exception e) {
+            logger.error("Data bootstrap failed: {}", e.getMessage(), e);
+        } finally {
+            for (BootstrapPhase phase : BootstrapPhase.values()) {
+                if (!status.getState(phase).isFinished()) {
+                    status.skip(phase);
+                }
+            }
+            logger.info("Data bootstrap finished in {} ms ({})", System.currentTimeMillis() - startTime,
+                    status.hasFailures() ? "with failures" : "all phases ready");
+            AvailabilityChangeEvent.publish(eventPublisher, this, ReadinessState.ACCEPTING_TRAFFIC);
+        }
+    }
+
+    /**
+     * שלב המונחים - סריקה משותפת אחת, או המעבדים במקביל כשהייבוא המשותף כבוי
+     */
+    private void loadTerms() {
+        status.start(BootstrapPhase.TERMS);
+        try {
+            boolean success;
+            if (coordinatedIngest) {
+                success = ingestCoordinator.ingest();
+            } else {
+                List<CompletableFuture<Boolean>> tasks = processors.stream()
+                        .map(processor -> CompletableFuture.supplyAsync(processor::processAndSave, executor))
+                        .toList();
+                success = tasks.stream().allMatch(CompletableFuture::join);
+            }
+
+            if (success) {
+                status.complete(BootstrapPhase.TERMS);
+            } else {
+                status.fail(BootstrapPhase.TERMS, "UMLS term import failed - see log for details");
+            }
+        } catch (Exception e) {
+            status.fail(BootstrapPhase.TERMS, e.getMessage());
+            throw e;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
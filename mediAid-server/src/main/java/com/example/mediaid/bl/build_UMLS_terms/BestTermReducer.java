@@ -0,0 +1,134 @@
+package com.example.mediaid.bl.build_UMLS_terms;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.example.mediaid.bl.build_UMLS_terms.UmlsTermHelper.*;
+
+/**
+ * בחירת המונח המועדף לכל CUI תוך כדי סריקת MRCONSO
+ * נשמר רק המועמד הטוב ביותר לכל CUI, כך שצריכת הזיכרון תלויה במספר ה-CUI ולא במספר המונחים.
+ * סדר העדיפויות: מקור מועדף, ISPREF, סוג מונח (PT, PV, SY), אורך השם, מספר סימני הפיסוק.
+ * הדירוג של SAB ו-TTY נלקח מטבלאות שנבנות פעם אחת, ולא מסריקה של רשימת המקורות בכל שורה.
+ */
+public class BestTermReducer {
+
+    /** סוגי מונחים מועדפים לפי סדר */
+    private static final String[] PREFERRED_TERM_TYPES = {"PT", "PV", "SY"};
+
+    private static final RankTable TERM_TYPE_RANKS = new RankTable(PREFERRED_TERM_TYPES);
+
+    private static final String PUNCTUATION = ";,.";
+
+    private final RankTable sourceRanks;
+    private final Map<String, Candidate> best = new ConcurrentHashMap<>();
+
+    public BestTermReducer(List<String> preferredSources) {
+        this.sourceRanks = new RankTable(preferredSources.toArray(new String[0]));
+    }
+
+    /**
+     * הצעת שורת MRCONSO כמועמד ל-CUI. השם נוצר כמחרוזת רק אם הוא עדיף על המועמד הנוכחי.
+     * בטוח לקריאה מכמה תהליכונים.
+     */
+    public void accept(String cui, RrfReader.RrfRow row) {
+        long rank = rank(sourceRanks.rank(row, MRCONSO_SAB), row.fieldEquals(MRCONSO_ISPREF, "Y"),
+                TERM_TYPE_RANKS.rank(row, MRCONSO_TTY),
+                row.charLength(MRCONSO_STR), row.countAny(MRCONSO_STR, PUNCTUATION));
+
+        best.compute(cui, (key, current) -> {
+            if (current == null) {
+                return new Candidate(rank, row.getString(MRCONSO_STR));
+            }
+            if (rank < current.rank) {
+                current.rank = rank;
+                current.name = row.getString(MRCONSO_STR);
+            } else if (rank == current.rank) {
+                // שוויון מלא - הכרעה לפי סדר אלפביתי כדי שהתוצאה לא תהיה תלויה בסדר הסריקה
+                String name = row.getString(MRCONSO_STR);
+                if (name.compareTo(current.name) < 0) {
+                    current.name = name;
+                }
+            }
+            return current;
+        });
+    }
+
+    /**
+     * המונח שנבחר לכל CUI
+     */
+    public Map<String, String> results() {
+        Map<String, String> selected = new HashMap<>(best.size() * 2);
+        best.forEach((cui, candidate) -> selected.put(cui, candidate.name));
+        return selected;
+    }
+
+    public int size() {
+        return best.size();
+    }
+
+    /**
+     * דירוג מחושב מראש של מועמד - ערך נמוך יותר עדיף.
+     * כל הקריטריונים נארזים ב-long אחד כך שההשוואה היא השוואת מספרים בלבד.
+     */
+    static long rank(int sourceRank, boolean preferred, int termTypeRank, int length, int punctuation) {
+        long category = ((long) sourceRank * 2 + (preferred ? 0 : 1)) * (PREFERRED_TERM_TYPES.length + 1) + termTypeRank;
+        return (category << 32) | ((long) Math.min(length, 0xFFFFF) << 12) | Math.min(punctuation, 0xFFF);
+    }
+
+    /**
+     * טבלת דירוג לערכי שדה (מקור או סוג מונח) - hash פתוח עם בדיקה לינארית, שנבנה פעם אחת.
+     * בכל שורה: חישוב hash של השדה והשוואה אחת בדרך כלל. ערך שלא בטבלה מקבל את הדירוג האחרון.
+     */
+    private static final class RankTable {
+        private final String[] keys;
+        private final int[] ranks;
+        private final int mask;
+        private final int missing;
+
+        RankTable(String[] values) {
+            // לפחות פי שניים מקומות מערכים, כדי שהחיפוש ייעצר מהר בתא ריק
+            int capacity = Integer.highestOneBit(Math.max(1, values.length) * 4);
+            this.keys = new String[capacity];
+            this.ranks = new int[capacity];
+            this.mask = capacity - 1;
+            this.missing = values.length;
+            for (int rank = 0; rank < values.length; rank++) {
+                int slot = spread(values[rank].hashCode()) & mask;
+                while (keys[slot] != null && !keys[slot].equals(values[rank])) {
+                    slot = (slot + 1) & mask;
+                }
+                // ערך שחוזר ברשימה שומר על הדירוג של המופע הראשון
+                if (keys[slot] == null) {
+                    keys[slot] = values[rank];
+                    ranks[slot] = rank;
+                }
+            }
+        }
+
+        int rank(RrfReader.RrfRow row, int field) {
+            for (int slot = spread(row.fieldHash(field)) & mask; keys[slot] != null; slot = (slot + 1) & mask) {
+                if (row.fieldEquals(field, keys[slot])) {
+                    return ranks[slot];
+                }
+            }
+            return missing;
+        }
+
+        private static int spread(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+    }
+
+    private static final class Candidate {
+        long rank;
+        String name;
+
+        Candidate(long rank, String name) {
+            this.rank = rank;
+            this.name = name;
+        }
+    }
+}
@@ -1,18 +1,22 @@
 package com.example.mediaid.bl.build_UMLS_terms;
 
 import com.example.mediaid.dal.UMLS_terms.BaseUmlsEntity;
-import com.example.mediaid.dal.UMLS_terms.UmlsTerm;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Table;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.support.TransactionCallback;
 import org.springframework.transaction.support.TransactionTemplate;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
 import java.util.*;
 import java.util.function.Function;
 
@@ -29,14 +33,31 @@ public abstract class GenericUmlsProcessor<T extends BaseUmlsEntity> {
 
     protected TransactionTemplate transactionTemplate; //עטיפה לכתיבת הקוד בתוך טרנזקציה
     protected final JpaRepository<T, Long> repository;
+    protected final Class<T> entityClass;
     protected final Set<String> semanticTypes;
     protected final List<String> preferredSources;
     protected final Function<String,T> entityCreator;
     protected final String entityTypeName;
 
+    @Value("${mediaid.umls.ingest.bulk-load:true}")
+    private boolean bulkLoad; //טעינה ב-COPY במקום persist שורה-שורה
+
+    @Value("${mediaid.umls.ingest.delta:false}")
+    private boolean deltaIngest; //עדכון טבלה קיימת לגרסת UMLS חדשה לפי הבדלים בלבד
+
+    @Value("${mediaid.umls.snapshot.enabled:true}")
+    private boolean snapshotEnabled; //שימוש בתמונת מצב בינארית במקום סריקה חוזרת של MRSTY/MRCONSO
+
+    @Autowired
+    protected UmlsCopyLoader copyLoader;
+
+    @Autowired
+    protected UmlsDeltaImporter deltaImporter;
+
     /**
      * יוצר מעבד גנרי חדש
      * @param repository - מאגר לשמירת הישויות
+     * @param entityClass - מחלקת הישות (לשם הטבלה)
      * @param semanticTypes - סוגים סמנטיים שיש לחפש
      * @param preferredSources - מקורות מועדפים לבחירת מונחים
      * @param entityCreator - פונקציה ליצירת ישות חדשה
@@ -44,11 +65,13 @@ public abstract class GenericUmlsProcessor<T extends BaseUmlsEntity> {
      */
     public GenericUmlsProcessor(
             JpaRepository<T, Long> repository,
+            Class<T> entityClass,
             Set<String> semanticTypes,
             List<String> preferredSources,
             Function<String, T> entityCreator,
             String entityTypeName){
         this.repository = repository;
+        this.entityClass = entityClass;
         this.semanticTypes = semanticTypes;
         this.preferredSources = preferredSources;
         this.entityCreator = entityCreator;
@@ -142,36 +165,94 @@ public abstract class GenericUmlsProcessor<T extends BaseUmlsEntity> {
             logger.info("Skipped {} entities due to name length issues", skippedCount);
     }
 
-    public void processAndSave(){
-        try{
-            if(repository.count() > 0){
-                logger.info("The data for {} already exists in the database. Skipping import.", entityTypeName);
+    /**
+     * שמירת המונחים שנבחרו - ב-COPY כשאפשר, אחרת דרך JPA באצוות
+     */
+    protected void saveTerms(Map<String, String> terms) {
+        if (bulkLoad && copyLoader.isSupported()) {
+            try {
+                copyLoader.load(tableName(), terms);
+                return;
+            } catch (SQLException e) {
+                logger.warn("COPY bulk load for {} failed, falling back to batched inserts: {}", entityTypeName, e.getMessage());
+            }
+        }
+        insertIntoDatabase(terms);
+    }
+
+    /**
+     * החלת המונחים שנבחרו על הטבלה - טבלה ריקה נטענת במלואה, טבלה קיימת מעודכנת לפי הבדלים (במצב delta)
+     * כשלון בעדכון ה-delta נזרק הלאה כדי ששלב המונחים יסומן כנכשל
+     */
+    protected void applyTerms(Map<String, String> terms) throws SQLException, IOException {
+        if (deltaIngest && isAlreadyLoaded()) {
+            try {
+                deltaImporter.apply(tableName(), terms);
                 return;
+            } catch (Exception e) {
+                logger.error("UMLS delta import for {} failed, existing data was left unchanged: {}",
+                        entityTypeName, e.getMessage());
+                throw e;
             }
+        }
+        saveTerms(terms);
+    }
 
-            logger.info("Processing data for {} from file MRSTY", entityTypeName);
-            Set<String> entityCuis = UmlsTermHelper.loadCuisBySemanticTypes(semanticTypes);
-            logger.info("Loaded {} cuis", entityCuis.size());
+    /**
+     * שם הטבלה של הישות לפי @Table
+     */
+    protected String tableName() {
+        Table table = entityClass.getAnnotation(Table.class);
+        return table.name();
+    }
 
-            logger.info("Processing data for {} from file MRCONSO", entityTypeName);
-            Map<String,List<UmlsTerm>> allTerms = UmlsTermHelper.loadTermsForCuis(entityCuis);
+    /**
+     * קובץ תמונת המצב של המונחים, או null אם המטמון כבוי
+     */
+    protected Path snapshotFile() {
+        return snapshotEnabled ? Path.of(UMLS_SNAPSHOT_FILE_PATH) : null;
+    }
 
-            Map<String,String> selectedTerms = new HashMap<>();
-            for(Map.Entry<String,List<UmlsTerm>> entry : allTerms.entrySet()){
-                String bestName = UmlsTermHelper.chooseBestTerm(entry.getValue(), preferredSources);
-                if(bestName != null){
-                    selectedTerms.put(entry.getKey(), bestName);
-                }
+    /**
+     * האם הטבלה כבר מכילה נתונים
+     */
+    public boolean isAlreadyLoaded() {
+        return repository.count() > 0;
+    }
+
+    /**
+     * האם יש להריץ ייבוא - טבלה ריקה, או עדכון גרסה במצב delta
+     */
+    public boolean needsImport() {
+        return deltaIngest || !isAlreadyLoaded();
+    }
+
+    /**
+     * ייבוא עצמאי של המעבד (כשהייבוא המשותף כבוי)
+     * @return false אם הייבוא נכשל
+     */
+    public boolean processAndSave(){
+        try{
+            if(!needsImport()){
+                logger.info("The data for {} already exists in the database. Skipping import.", entityTypeName);
+                return true;
             }
+
+            logger.info("Processing data for {} from files MRSTY and MRCONSO", entityTypeName);
+            Map<String,String> selectedTerms = UmlsTermHelper.selectBestTerms(
+                    Map.of(entityTypeName, semanticTypes), Map.of(entityTypeName, preferredSources), snapshotFile())
+                    .getOrDefault(entityTypeName, Map.of());
             logger.info("Selected {} favorite terms", selectedTerms.size());
 
             logger.info("Inserting data into the database.");
-            insertIntoDatabase(selectedTerms);
+            applyTerms(selectedTerms);
 
             logger.info("The loading process {} completed successfully.", entityTypeName);
+            return true;
 
         }catch (Exception e){
             logger.error("Error processing {}: {}", entityTypeName, e.getMessage(), e);
+            return false;
         }
     }
 }
\ No newline at end of file
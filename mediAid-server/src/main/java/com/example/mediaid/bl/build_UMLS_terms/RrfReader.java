@@ -0,0 +1,626 @@
+package com.example.mediaid.bl.build_UMLS_terms;
+
+import com.example.mediaid.utils.CuiCodec;
+import com.example.mediaid.utils.IntHashSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.example.mediaid.constants.DatabaseConstants.*;
+
+/**
+ * קורא קבצי RRF של UMLS במיפוי זיכרון ובמקביל
+ * הקובץ מחולק לקטעים שמסתיימים בסוף שורה, וכל קטע מעובד במשימה נפרדת ב-ForkJoinPool.
+ * רק השדות המבוקשים נחתכים, וכחתיכות מתוך הבאפר (ללא יצירת String) - עד שהקורא מבקש מחרוזת במפורש.
+ * קובץ דחוס (ראה RrfSource) נפרס בתהליכון נפרד לטבעת של בלוקים שמסתיימים בסוף שורה, והבלוקים מעובדים במקביל באותו אופן.
+ */
+public class RrfReader {
+    private static final Logger logger = LoggerFactory.getLogger(RrfReader.class);
+
+    // סימן סיום למפענחים בקריאת קובץ דחוס
+    private static final ByteBuffer END_OF_BLOCKS = ByteBuffer.allocate(0);
+
+    private final String location;
+    private final Path path;
+    private final int[] fieldIndices;
+    private final int maxFieldIndex;
+    private final List<RowFilter> filters = new ArrayList<>();
+    private int parallelism = RRF_READER_PARALLELISM;
+    private long chunkSize = RRF_CHUNK_SIZE_BYTES;
+
+    /**
+     * @param path - נתיב לקובץ ה-RRF (אפשר גם .gz, .zst או רשומה בתוך zip)
+     * @param fieldIndices - אינדקסי השדות שהקורא צריך (שאר השדות לא נחתכים)
+     */
+    public RrfReader(String path, int... fieldIndices) {
+        this.location = path;
+        this.path = RrfSource.filePath(path);
+        this.fieldIndices = fieldIndices.clone();
+        this.maxFieldIndex = Arrays.stream(fieldIndices).max().orElse(0);
+    }
+
+    /**
+     * מספר התהליכונים לעיבוד. 1 = עיבוד סדרתי לפי סדר הקובץ על התהליכון הקורא
+     */
+    public RrfReader parallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+        return this;
+    }
+
+    public RrfReader chunkSize(long chunkSize) {
+        this.chunkSize = Math.max(1, chunkSize);
+        return this;
+    }
+
+    /**
+     * סינון שורות לפני שהן מגיעות ל-handler
+     */
+    public RrfReader filter(RowFilter filter) {
+        filters.add(filter);
+        return this;
+    }
+
+    /**
+     * סינון לפי מזהה UMLS (CUI/TUI) ללא יצירת מחרוזות - השוואה לפי הקוד המספרי של המזהה
+     */
+    public RrfReader idFilter(int fieldIndex, Collection<String> ids) {
+        int[] codes = ids.stream().mapToInt(RrfReader::idCode).filter(c -> c >= 0).sorted().distinct().toArray();
+        return filter(row -> Arrays.binarySearch(codes, row.idCode(fieldIndex)) >= 0);
+    }
+
+    /**
+     * סינון לפי קבוצת CUIs בקידוד CuiCodec
+     */
+    public RrfReader cuiFilter(int fieldIndex, IntHashSet cuiCodes) {
+        return filter(row -> cuiCodes.contains(row.cuiCode(fieldIndex)));
+    }
+
+    /**
+     * מעבר על כל השורות שעברו את הסינון.
+     * כאשר parallelism > 1 ה-handler נקרא מכמה תהליכונים במקביל ועליו להיות thread-safe.
+     * אובייקט השורה והחתיכות שלו תקפים רק בזמן הקריאה ל-handler.
+     */
+    public ScanResult forEach(RowHandler handler) throws IOException {
+        long startTime = System.currentTimeMillis();
+        AtomicLong totalLines = new AtomicLong();
+        AtomicLong deliveredRows = new AtomicLong();
+        AtomicLong invalidLines = new AtomicLong();
+
+        if (RrfSource.isCompressed(location)) {
+            forEachDecompressed(handler, totalLines, deliveredRows, invalidLines);
+        } else {
+            forEachMapped(handler, totalLines, deliveredRows, invalidLines);
+        }
+
+        ScanResult result = new ScanResult(totalLines.get(), deliveredRows.get(), invalidLines.get());
+        logger.info("Read {}: {} lines, {} rows delivered, {} invalid lines in {} ms",
+                path.getFileName(), result.totalLines, result.deliveredRows, result.invalidLines,
+                System.currentTimeMillis() - startTime);
+        return result;
+    }
+
+    private void forEachMapped(RowHandler handler, AtomicLong totalLines, AtomicLong deliveredRows,
+                               AtomicLong invalidLines) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            List<long[]> chunks = splitIntoChunks(channel);
+
+            if (parallelism == 1 || chunks.size() == 1) {
+                for (long[] chunk : chunks) {
+                    processChunk(channel.map(FileChannel.MapMode.READ_ONLY, chunk[0], chunk[1] - chunk[0]),
+                            handler, totalLines, deliveredRows, invalidLines);
+                }
+            } else {
+                ForkJoinPool pool = new ForkJoinPool(parallelism);
+                try {
+                    List<ForkJoinTask<?>> tasks = new ArrayList<>();
+                    for (long[] chunk : chunks) {
+                        tasks.add(pool.submit(() -> {
+                            try {
+                                processChunk(channel.map(FileChannel.MapMode.READ_ONLY, chunk[0], chunk[1] - chunk[0]),
+                                        handler, totalLines, deliveredRows, invalidLines);
+                            } catch (IOException e) {
+                                throw new RuntimeException(e);
+                            }
+                        }));
+                    }
+                    for (ForkJoinTask<?> task : tasks) {
+                        task.join();
+                    }
+                } catch (RuntimeException e) {
+                    if (e.getCause() instanceof IOException ioException) {
+                        throw ioException;
+                    }
+                    throw e;
+                } finally {
+                    pool.shutdown();
+                }
+            }
+        }
+    }
+
+    /**
+     * קריאת קובץ דחוס: תהליכון אחד פורס את הזרם לבלוקים שמסתיימים בסוף שורה ומעביר אותם בתור,
+     * והמפענחים (התהליכון הקורא ועוד parallelism-1) מעבדים את הבלוקים ומחזירים אותם לטבעת לשימוש חוזר.
+     * כישלון באחד הצדדים עוצר את השני, והחריגה הראשונה נזרקת מכאן.
+     */
+    private void forEachDecompressed(RowHandler handler, AtomicLong totalLines, AtomicLong deliveredRows,
+                                     AtomicLong invalidLines) throws IOException {
+        int workers = parallelism;
+        BlockingQueue<byte[]> freeBlocks = new ArrayBlockingQueue<>(workers + 2);
+        for (int i = 0; i < workers + 2; i++) {
+            freeBlocks.add(new byte[RRF_DECOMPRESS_BLOCK_BYTES]);
+        }
+        BlockingQueue<ByteBuffer> filledBlocks = new ArrayBlockingQueue<>(workers + 2);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        Thread inflater = new Thread(() -> inflate(freeBlocks, filledBlocks, failure, workers),
+                "rrf-inflate-" + path.getFileName());
+        inflater.setDaemon(true);
+        inflater.start();
+
+        Runnable worker = () -> {
+            try {
+                while (true) {
+                    ByteBuffer block = filledBlocks.take();
+                    if (block == END_OF_BLOCKS) {
+                        return;
+                    }
+                    try {
+                        if (failure.get() == null) {
+                            processChunk(block, handler, totalLines, deliveredRows, invalidLines);
+                        }
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                        inflater.interrupt();
+                    } finally {
+                        recycle(block.array(), freeBlocks);
+                    }
+                }
+            } catch (InterruptedException e) {
+                failure.compareAndSet(null, e);
+                inflater.interrupt();
+            }
+        };
+
+        ExecutorService pool = workers > 1 ? Executors.newFixedThreadPool(workers - 1) : null;
+        try {
+            List<Future<?>> tasks = new ArrayList<>();
+            for (int i = 1; i < workers; i++) {
+                tasks.add(pool.submit(worker));
+            }
+            // התהליכון הקורא הוא אחד המפענחים - כשיש אחד בלבד, השורות מעובדות לפי סדר הקובץ
+            worker.run();
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+            inflater.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure.compareAndSet(null, e);
+        } catch (ExecutionException e) {
+            failure.compareAndSet(null, e.getCause());
+        } finally {
+            inflater.interrupt();
+            if (pool != null) {
+                pool.shutdownNow();
+            }
+        }
+
+        Throwable error = failure.get();
+        if (error instanceof IOException ioException) {
+            throw ioException;
+        }
+        if (error instanceof RuntimeException runtimeException) {
+            throw runtimeException;
+        }
+        if (error instanceof Error e) {
+            throw e;
+        }
+        if (error != null) {
+            throw new InterruptedIOException("Interrupted while reading " + location);
+        }
+    }
+
+    /**
+     * פריסת הזרם לבלוקים. בסוף כל בלוק מועבר רק עד סוף השורה האחרונה, והשארית מועתקת לתחילת הבלוק הבא.
+     * שורה ארוכה מבלוק שלם מקבלת בלוק גדול יותר (שלא חוזר לטבעת).
+     */
+    private void inflate(BlockingQueue<byte[]> freeBlocks, BlockingQueue<ByteBuffer> filledBlocks,
+                         AtomicReference<Throwable> failure, int workers) {
+        try (InputStream in = RrfSource.openDecompressed(location)) {
+            byte[] block = freeBlocks.take();
+            int length = 0;
+            while (true) {
+                if (length == block.length) {
+                    byte[] grown = Arrays.copyOf(block, block.length * 2);
+                    recycle(block, freeBlocks);
+                    block = grown;
+                }
+                int read = in.read(block, length, block.length - length);
+                if (read < 0) {
+                    break;
+                }
+                length += read;
+                if (length < block.length) {
+                    continue;
+                }
+
+                int lineEnd = lastLineEnd(block, length);
+                if (lineEnd < 0) {
+                    continue;
+                }
+                byte[] next = freeBlocks.take();
+                int remainder = length - lineEnd;
+                if (remainder > next.length) {
+                    recycle(next, freeBlocks);
+                    next = new byte[remainder * 2];
+                }
+                System.arraycopy(block, lineEnd, next, 0, remainder);
+                filledBlocks.put(ByteBuffer.wrap(block, 0, lineEnd));
+                block = next;
+                length = remainder;
+            }
+            if (length > 0) {
+                filledBlocks.put(ByteBuffer.wrap(block, 0, length));
+            }
+        } catch (Throwable t) {
+            failure.compareAndSet(null, t);
+        } finally {
+            // סימן סיום לכל מפענח; אחרי כישלון הבלוקים שעוד בתור לא רלוונטיים, וכך יש מקום לכל הסימנים
+            if (failure.get() != null) {
+                filledBlocks.clear();
+            }
+            Thread.interrupted();
+            try {
+                for (int i = 0; i < workers; i++) {
+                    filledBlocks.put(END_OF_BLOCKS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // רק בלוקים בגודל הרגיל חוזרים לטבעת
+    private static void recycle(byte[] block, BlockingQueue<byte[]> freeBlocks) {
+        if (block.length == RRF_DECOMPRESS_BLOCK_BYTES) {
+            freeBlocks.offer(block);
+        }
+    }
+
+    // המיקום שאחרי ה-'\n' האחרון בבלוק, או -1
+    private static int lastLineEnd(byte[] block, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (block[i] == '\n') {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * חלוקת הקובץ לקטעים שכל אחד מהם מסתיים מיד אחרי תו '\n'
+     */
+    private List<long[]> splitIntoChunks(FileChannel channel) throws IOException {
+        long size = channel.size();
+        List<long[]> chunks = new ArrayList<>();
+        ByteBuffer probe = ByteBuffer.allocate(8192);
+
+        long start = 0;
+        while (start < size) {
+            long end = Math.min(start + chunkSize, size);
+            // הזזת הגבול קדימה עד סוף השורה
+            while (end < size) {
+                probe.clear();
+                int read = channel.read(probe, end);
+                if (read <= 0) {
+                    end = size;
+                    break;
+                }
+                int newline = -1;
+                for (int i = 0; i < read; i++) {
+                    if (probe.get(i) == '\n') {
+                        newline = i;
+                        break;
+                    }
+                }
+                if (newline >= 0) {
+                    end += newline + 1;
+                    break;
+                }
+                end += read;
+            }
+            chunks.add(new long[]{start, Math.min(end, size)});
+            start = end;
+        }
+        return chunks;
+    }
+
+    private void processChunk(ByteBuffer buffer, RowHandler handler,
+                              AtomicLong totalLines, AtomicLong deliveredRows, AtomicLong invalidLines) {
+        RrfRow row = new RrfRow(buffer, maxFieldIndex, fieldIndices);
+        long lines = 0;
+        long delivered = 0;
+        long invalid = 0;
+
+        int limit = buffer.limit();
+        int pos = 0;
+        while (pos < limit) {
+            int lineEnd = pos;
+            while (lineEnd < limit && buffer.get(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            int contentEnd = lineEnd;
+            if (contentEnd > pos && buffer.get(contentEnd - 1) == '\r') {
+                contentEnd--;
+            }
+
+            if (contentEnd > pos) {
+                lines++;
+                if (!row.parse(pos, contentEnd)) {
+                    invalid++;
+                } else if (accept(row)) {
+                    handler.onRow(row);
+                    delivered++;
+                }
+            }
+            pos = lineEnd + 1;
+        }
+
+        totalLines.addAndGet(lines);
+        deliveredRows.addAndGet(delivered);
+        invalidLines.addAndGet(invalid);
+    }
+
+    private boolean accept(RrfRow row) {
+        for (RowFilter filter : filters) {
+            if (!filter.accept(row)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * קוד מספרי למזהה UMLS (אות ואחריה ספרות, לדוגמה C0004057 או T047). -1 אם הפורמט לא תקין
+     */
+    public static int idCode(CharSequence id) {
+        int length = id.length();
+        if (length < 2 || length > 10) {
+            return -1;
+        }
+        int code = 0;
+        for (int i = 1; i < length; i++) {
+            char c = id.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            code = code * 10 + (c - '0');
+        }
+        return code;
+    }
+
+    // =============== ממשקים ומחלקות עזר ===============
+
+    @FunctionalInterface
+    public interface RowHandler {
+        void onRow(RrfRow row);
+    }
+
+    @FunctionalInterface
+    public interface RowFilter {
+        boolean accept(RrfRow row);
+    }
+
+    /**
+     * שורה בקובץ RRF - תצוגה על הבאפר הממופה. האובייקט ממוחזר בין השורות של אותו קטע.
+     */
+    public static final class RrfRow {
+        private final ByteBuffer buffer;
+        private final int maxFieldIndex;
+        private final int[] starts;
+        private final int[] ends;
+        private final FieldSlice[] slices;
+
+        RrfRow(ByteBuffer buffer, int maxFieldIndex, int[] fieldIndices) {
+            this.buffer = buffer;
+            this.maxFieldIndex = maxFieldIndex;
+            this.starts = new int[maxFieldIndex + 1];
+            this.ends = new int[maxFieldIndex + 1];
+            this.slices = new FieldSlice[maxFieldIndex + 1];
+            for (int index : fieldIndices) {
+                slices[index] = new FieldSlice(index);
+            }
+        }
+
+        /**
+         * חיתוך השדות עד maxFieldIndex. false אם בשורה אין מספיק שדות
+         */
+        boolean parse(int lineStart, int lineEnd) {
+            int field = 0;
+            int fieldStart = lineStart;
+            for (int i = lineStart; i < lineEnd && field <= maxFieldIndex; i++) {
+                if (buffer.get(i) == '|') {
+                    starts[field] = fieldStart;
+                    ends[field] = i;
+                    field++;
+                    fieldStart = i + 1;
+                }
+            }
+            if (field <= maxFieldIndex) {
+                // שדה אחרון ללא '|' בסופו
+                if (field == maxFieldIndex && fieldStart <= lineEnd) {
+                    starts[field] = fieldStart;
+                    ends[field] = lineEnd;
+                    return true;
+                }
+                return false;
+            }
+            return true;
+        }
+
+        /**
+         * חתיכה של שדה כ-CharSequence (ASCII) ללא העתקה
+         */
+        public CharSequence field(int index) {
+            FieldSlice slice = slices[index];
+            if (slice == null) {
+                throw new IllegalArgumentException("Field " + index + " was not requested");
+            }
+            return slice;
+        }
+
+        public int length(int index) {
+            return ends[index] - starts[index];
+        }
+
+        public boolean isEmpty(int index) {
+            return ends[index] == starts[index];
+        }
+
+        /**
+         * השוואת שדה למחרוזת ASCII ללא יצירת String
+         */
+        public boolean fieldEquals(int index, String value) {
+            int length = ends[index] - starts[index];
+            if (length != value.length()) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (buffer.get(starts[index] + i) != value.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public boolean fieldsEqual(int first, int second) {
+            int length = ends[first] - starts[first];
+            if (length != ends[second] - starts[second]) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (buffer.get(starts[first] + i) != buffer.get(starts[second] + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * אורך השדה בתווים (ספירת בתים שאינם בתי המשך של UTF-8)
+         */
+        public int charLength(int index) {
+            int count = 0;
+            for (int i = starts[index]; i < ends[index]; i++) {
+                if ((buffer.get(i) & 0xC0) != 0x80) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        /**
+         * ספירת המופעים בשדה של כל אחד מתווי ה-ASCII שב-chars
+         */
+        public int countAny(int index, String chars) {
+            int count = 0;
+            for (int i = starts[index]; i < ends[index]; i++) {
+                if (chars.indexOf(buffer.get(i)) >= 0) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        /**
+         * hash של השדה - לשדה ASCII זהה ל-String.hashCode של אותו ערך, לחיפוש בטבלאות בלי ליצור String
+         */
+        public int fieldHash(int index) {
+            int hash = 0;
+            for (int i = starts[index]; i < ends[index]; i++) {
+                hash = 31 * hash + (buffer.get(i) & 0xFF);
+            }
+            return hash;
+        }
+
+        /**
+         * הקוד המספרי של מזהה UMLS בשדה (ראה RrfReader.idCode)
+         */
+        public int idCode(int index) {
+            return RrfReader.idCode(field(index));
+        }
+
+        /**
+         * קוד CUI של השדה (ראה CuiCodec), או CuiCodec.INVALID
+         */
+        public int cuiCode(int index) {
+            return CuiCodec.encode(field(index));
+        }
+
+        /**
+         * יצירת String מהשדה (UTF-8) - רק לשורות שעברו את כל הסינונים
+         */
+        public String getString(int index) {
+            int length = ends[index] - starts[index];
+            byte[] bytes = new byte[length];
+            buffer.get(starts[index], bytes, 0, length);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private final class FieldSlice implements CharSequence {
+            private final int index;
+
+            FieldSlice(int index) {
+                this.index = index;
+            }
+
+            @Override
+            public int length() {
+                return ends[index] - starts[index];
+            }
+
+            @Override
+            public char charAt(int i) {
+                return (char) (buffer.get(starts[index] + i) & 0xFF);
+            }
+
+            @Override
+            public CharSequence subSequence(int start, int end) {
+                return toString().subSequence(start, end);
+            }
+
+            @Override
+            public String toString() {
+                return getString(index);
+            }
+        }
+    }
+
+    /**
+     * סיכום סריקה
+     */
+    public static final class ScanResult {
+        public final long totalLines;
+        public final long deliveredRows;
+        public final long invalidLines;
+
+        ScanResult(long totalLines, long deliveredRows, long invalidLines) {
+            this.totalLines = totalLines;
+            this.deliveredRows = deliveredRows;
+            this.invalidLines = invalidLines;
+        }
+    }
+}
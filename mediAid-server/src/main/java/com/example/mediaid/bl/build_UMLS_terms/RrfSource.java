@@ -0,0 +1,158 @@
+package com.example.mediaid.bl.build_UMLS_terms;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import static com.example.mediaid.constants.DatabaseConstants.RRF_DECOMPRESS_INPUT_BUFFER_BYTES;
+
+/**
+ * מיקום של קובץ RRF - קובץ רגיל (נקרא במיפוי זיכרון) או דחוס, שנקרא בזרימה:
+ * - MRCONSO.RRF.gz - gzip (גם כמה חלקים משורשרים)
+ * - MRCONSO.RRF.zst - zstd, דרך תוכנת zstd שמותקנת על השרת (אין ספריית zstd בתלויות)
+ * - 2024AB.zip!/2024AB/META/MRCONSO.RRF - רשומה בתוך zip (גם רשומה עם סיומת .gz),
+ *   או 2024AB.zip בלבד אם יש בו קובץ RRF יחיד. ה-zip נפתח כמערכת קבצים של NIO, בלי לחלץ לדיסק.
+ */
+public final class RrfSource {
+
+    private static final String ZIP_ENTRY_SEPARATOR = "!";
+
+    private RrfSource() {
+    }
+
+    public static boolean isCompressed(String location) {
+        String name = location.toLowerCase(Locale.ROOT);
+        return name.endsWith(".gz") || name.endsWith(".zst") || name.endsWith(".zip") || zipSeparator(location) >= 0;
+    }
+
+    /**
+     * הקובץ שעל הדיסק (ה-zip עצמו עבור רשומה בתוך zip) - לחתימת הקבצים ולבדיקת קיום
+     */
+    public static Path filePath(String location) {
+        int separator = zipSeparator(location);
+        return Path.of(separator >= 0 ? location.substring(0, separator) : location);
+    }
+
+    /**
+     * זרם של התוכן הלא דחוס
+     */
+    static InputStream openDecompressed(String location) throws IOException {
+        String name = location.toLowerCase(Locale.ROOT);
+        if (zipSeparator(location) >= 0 || name.endsWith(".zip")) {
+            return openZipEntry(location);
+        }
+        if (name.endsWith(".gz")) {
+            return new GZIPInputStream(Files.newInputStream(Path.of(location)), RRF_DECOMPRESS_INPUT_BUFFER_BYTES);
+        }
+        if (name.endsWith(".zst")) {
+            return openZstd(Path.of(location));
+        }
+        return new BufferedInputStream(Files.newInputStream(Path.of(location)), RRF_DECOMPRESS_INPUT_BUFFER_BYTES);
+    }
+
+    private static InputStream openZipEntry(String location) throws IOException {
+        int separator = zipSeparator(location);
+        Path archive = filePath(location);
+        String entryName = separator >= 0 ? location.substring(separator + 1).replace('\\', '/') : "";
+        while (entryName.startsWith("/")) {
+            entryName = entryName.substring(1);
+        }
+
+        FileSystem zip = FileSystems.newFileSystem(archive);
+        try {
+            Path entry = entryName.isEmpty() ? singleRrfEntry(zip, archive) : zip.getPath("/", entryName);
+            InputStream in = Files.newInputStream(entry);
+            if (entry.toString().toLowerCase(Locale.ROOT).endsWith(".gz")) {
+                in = new GZIPInputStream(in, RRF_DECOMPRESS_INPUT_BUFFER_BYTES);
+            } else {
+                in = new BufferedInputStream(in, RRF_DECOMPRESS_INPUT_BUFFER_BYTES);
+            }
+            // סגירת הזרם סוגרת גם את מערכת הקבצים של ה-zip
+            return new FilterInputStream(in) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        zip.close();
+                    }
+                }
+            };
+        } catch (IOException | RuntimeException e) {
+            zip.close();
+            throw e;
+        }
+    }
+
+    private static Path singleRrfEntry(FileSystem zip, Path archive) throws IOException {
+        try (Stream<Path> entries = Files.walk(zip.getPath("/"))) {
+            List<Path> rrfEntries = entries
+                    .filter(p -> {
+                        String name = p.toString().toLowerCase(Locale.ROOT);
+                        return name.endsWith(".rrf") || name.endsWith(".rrf.gz");
+                    })
+                    .toList();
+            if (rrfEntries.size() != 1) {
+                throw new IOException("Expected exactly one RRF file in " + archive + " but found " + rrfEntries.size() +
+                        " - use archive.zip!/path/inside/FILE.RRF to pick one");
+            }
+            return rrfEntries.get(0);
+        }
+    }
+
+    private static InputStream openZstd(Path file) throws IOException {
+        Process process;
+        try {
+            process = new ProcessBuilder("zstd", "-dcq", file.toString())
+                    .redirectError(ProcessBuilder.Redirect.INHERIT)
+                    .start();
+        } catch (IOException e) {
+            throw new IOException("Reading " + file + " requires the zstd executable on the PATH", e);
+        }
+        process.getOutputStream().close();
+        return new FilterInputStream(new BufferedInputStream(process.getInputStream(), RRF_DECOMPRESS_INPUT_BUFFER_BYTES)) {
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                int read = super.read(buffer, offset, length);
+                if (read < 0) {
+                    // סוף הזרם - קובץ פגום או קטוע מתגלה רק בקוד היציאה של zstd
+                    try {
+                        int exitCode = process.waitFor();
+                        if (exitCode != 0) {
+                            throw new IOException("zstd failed with exit code " + exitCode + " while reading " + file);
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted while waiting for zstd");
+                    }
+                }
+                return read;
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    process.destroy();
+                }
+            }
+        };
+    }
+
+    // "!" אחרי ".zip" מפריד בין הארכיון לרשומה שבתוכו
+    private static int zipSeparator(String location) {
+        int zipEnd = location.toLowerCase(Locale.ROOT).indexOf(".zip" + ZIP_ENTRY_SEPARATOR);
+        return zipEnd >= 0 ? zipEnd + ".zip".length() : -1;
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.mediaid.bl.build_UMLS_terms;
+
+import com.example.mediaid.constants.ApiConstants;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+
+import static com.example.mediaid.constants.DatabaseConstants.*;
+
+/**
+ * טעינה מרוכזת של טבלאות מונחי UMLS דרך COPY של PostgreSQL
+ * הזוגות (cui, name) נכתבים בזרם לטבלת ביניים זמנית, ואחר כך ממוזגים לטבלת היעד בפקודת INSERT ... ON CONFLICT אחת.
+ * כך עוקפים את ה-persist שורה-שורה של JPA (שלא ניתן לאצווה בגלל GenerationType.IDENTITY).
+ */
+@Component
+public class UmlsCopyLoader {
+    private static final Logger logger = LoggerFactory.getLogger(UmlsCopyLoader.class);
+
+    private static final String STAGING_TABLE = "umls_term_staging";
+
+    private final DataSource dataSource;
+
+    @Autowired
+    public UmlsCopyLoader(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * האם מסד הנתונים תומך ב-COPY (חיבור PostgreSQL)
+     */
+    public boolean isSupported() {
+        try (Connection connection = dataSource.getConnection()) {
+            return connection.isWrapperFor(PGConnection.class);
+        } catch (SQLException e) {
+            logger.warn("Could not check COPY support: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * טעינת המונחים לטבלה בטרנזקציה אחת
+     * @param tableName - טבלת היעד (diseases / medications / symptoms)
+     * @param terms - מיפוי CUI לשם
+     * @return מספר השורות שנוספו או עודכנו בטבלת היעד
+     */
+    public int load(String tableName, Map<String, String> terms) throws SQLException {
+        long startTime = System.currentTimeMillis();
+
+        try (Connection connection = dataSource.getConnection()) {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("CREATE TEMP TABLE IF NOT EXISTS " + STAGING_TABLE +
+                            " (cui varchar(" + ApiConstants.CUI_LENGTH + "), name varchar(" + MAX_ENTITY_NAME_LENGTH + ")) ON COMMIT DROP");
+                }
+
+                long copied = copyIntoStaging(connection.unwrap(PGConnection.class).getCopyAPI(), terms);
+
+                int merged;
+                try (Statement statement = connection.createStatement()) {
+                    merged = statement.executeUpdate(
+                            "INSERT INTO " + tableName + " (cui, name) " +
+                                    "SELECT cui, name FROM " + STAGING_TABLE + " " +
+                                    "ON CONFLICT (cui) DO UPDATE SET name = EXCLUDED.name " +
+                                    "WHERE " + tableName + ".name IS DISTINCT FROM EXCLUDED.name");
+                }
+
+                connection.commit();
+                logger.info("COPY loaded {} rows into {} ({} inserted or renamed) in {} ms",
+                        copied, tableName, merged, System.currentTimeMillis() - startTime);
+                return merged;
+
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        }
+    }
+
+    /**
+     * כתיבת השורות בפורמט text של COPY, בבלוקים של COPY_BUFFER_SIZE_BYTES
+     */
+    private long copyIntoStaging(CopyManager copyManager, Map<String, String> terms) throws SQLException {
+        CopyIn copyIn = copyManager.copyIn("COPY " + STAGING_TABLE + " (cui, name) FROM STDIN WITH (FORMAT text)");
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(COPY_BUFFER_SIZE_BYTES);
+        StringBuilder line = new StringBuilder();
+        long rows = 0;
+
+        try {
+            for (Map.Entry<String, String> entry : terms.entrySet()) {
+                String name = entry.getValue();
+                if (name == null) {
+                    continue;
+                }
+                //קיצור שם אם הוא ארוך מדי למסד
+                if (name.length() > MAX_ENTITY_NAME_LENGTH) {
+                    name = name.substring(0, MAX_ENTITY_NAME_LENGTH);
+                }
+
+                line.setLength(0);
+                appendEscaped(line, entry.getKey()).append('\t');
+                appendEscaped(line, name).append('\n');
+                buffer.writeBytes(line.toString().getBytes(StandardCharsets.UTF_8));
+                rows++;
+
+                if (buffer.size() >= COPY_BUFFER_SIZE_BYTES) {
+                    copyIn.writeToCopy(buffer.toByteArray(), 0, buffer.size());
+                    buffer.reset();
+                }
+            }
+            if (buffer.size() > 0) {
+                copyIn.writeToCopy(buffer.toByteArray(), 0, buffer.size());
+            }
+            copyIn.endCopy();
+            return rows;
+
+        } finally {
+            if (copyIn.isActive()) {
+                copyIn.cancelCopy();
+            }
+        }
+    }
+
+    /**
+     * בריחת תווים מיוחדים של פורמט text
+     */
+    private static StringBuilder appendEscaped(StringBuilder out, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\' -> out.append("\\\\");
+                case '\t' -> out.append("\\t");
+                case '\n' -> out.append("\\n");
+                case '\r' -> out.append("\\r");
+                default -> out.append(c);
+            }
+        }
+        return out;
+    }
+}
@@ -0,0 +1,257 @@
+package com.example.mediaid.bl.build_UMLS_terms;
+
+import com.example.mediaid.constants.DatabaseConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.*;
+import java.util.*;
+
+import static com.example.mediaid.constants.DatabaseConstants.*;
+
+/**
+ * עדכון טבלת מונחים קיימת לגרסת UMLS חדשה בלי למחוק ולטעון מחדש
+ * המונחים שנבחרו בגרסה החדשה מושווים לטבלה הנוכחית במעבר ממוין אחד (merge לפי cui),
+ * ורק ההבדלים מוחלים: הוספות, שינויי שם וביטולים.
+ * CUI שבוטל או מוזג (לפי MRCUI) - הפניות מהיסטוריית המשתמשים מועברות ל-CUI החדש לפני הביטול.
+ */
+@Component
+public class UmlsDeltaImporter {
+    private static final Logger logger = LoggerFactory.getLogger(UmlsDeltaImporter.class);
+
+    // טבלת המונחים -> טבלת ההיסטוריה ועמודת ההפניה
+    private static final Map<String, String[]> HISTORY_REFERENCES = Map.of(
+            "diseases", new String[]{"user_diseases", "disease_id"},
+            "medications", new String[]{"user_medications", "medication_id"},
+            "symptoms", new String[]{"user_symptoms", "symptom_id"}
+    );
+
+    // אינדקסי שדות בקובץ MRCUI
+    private static final int MRCUI_CUI1 = 0;
+    private static final int MRCUI_REL = 2;
+    private static final int MRCUI_CUI2 = 5;
+
+    private final DataSource dataSource;
+
+    @Autowired
+    public UmlsDeltaImporter(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * החלת ההבדלים בין הטבלה הנוכחית למונחים של הגרסה החדשה
+     * @param tableName - טבלת המונחים (diseases / medications / symptoms)
+     * @param selectedTerms - CUI -> השם שנבחר בגרסה החדשה
+     */
+    public DeltaResult apply(String tableName, Map<String, String> selectedTerms) throws SQLException, IOException {
+        long startTime = System.currentTimeMillis();
+        DeltaResult result = new DeltaResult();
+
+        String[] newCuis = selectedTerms.keySet().toArray(new String[0]);
+        Arrays.sort(newCuis);
+
+        List<String[]> upserts = new ArrayList<>();
+        Map<Long, String> retired = new HashMap<>(); // id -> cui
+
+        try (Connection connection = dataSource.getConnection()) {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try {
+                // מעבר ממוין על הטבלה הנוכחית במקביל למונחים החדשים
+                try (PreparedStatement statement = connection.prepareStatement(
+                        "SELECT id, cui, name FROM " + tableName + " ORDER BY cui COLLATE \"C\"")) {
+                    statement.setFetchSize(PAGE_SIZE);
+                    try (ResultSet rows = statement.executeQuery()) {
+                        int index = 0;
+                        while (rows.next()) {
+                            long id = rows.getLong(1);
+                            String cui = rows.getString(2);
+                            String name = rows.getString(3);
+
+                            // CUI חדשים שקודמים ל-CUI הנוכחי בטבלה
+                            while (index < newCuis.length && newCuis[index].compareTo(cui) < 0) {
+                                upserts.add(new String[]{newCuis[index], truncate(selectedTerms.get(newCuis[index]))});
+                                result.inserted++;
+                                index++;
+                            }
+
+                            if (index < newCuis.length && newCuis[index].equals(cui)) {
+                                String newName = truncate(selectedTerms.get(cui));
+                                if (!newName.equals(name)) {
+                                    upserts.add(new String[]{cui, newName});
+                                    result.renamed++;
+                                }
+                                index++;
+                            } else {
+                                retired.put(id, cui);
+                            }
+                        }
+                        for (; index < newCuis.length; index++) {
+                            upserts.add(new String[]{newCuis[index], truncate(selectedTerms.get(newCuis[index]))});
+                            result.inserted++;
+                        }
+                    }
+                }
+
+                // הוספות ושינויי שם
+                applyUpserts(connection, tableName, upserts);
+                connection.commit();
+
+                // ביטולים - העברת הפניות ל-CUI הממוזג ומחיקת שורות שאין אליהן הפניות
+                if (!retired.isEmpty()) {
+                    Map<String, String> mergedInto = loadMergedCuis(retired.values(), selectedTerms.keySet());
+                    String[] history = HISTORY_REFERENCES.get(tableName);
+                    if (history != null) {
+                        result.remapped = remapHistory(connection, tableName, history[0], history[1], retired, mergedInto);
+                    }
+                    result.retired = deleteUnreferenced(connection, tableName, history, retired.keySet());
+                    result.keptReferenced = retired.size() - result.retired;
+                    connection.commit();
+                }
+
+            } catch (SQLException | IOException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        }
+
+        logger.info("UMLS delta for {}: {} inserted, {} renamed, {} history rows remapped, {} retired, " +
+                        "{} retired CUIs kept because they are still referenced ({} ms)",
+                tableName, result.inserted, result.renamed, result.remapped, result.retired,
+                result.keptReferenced, System.currentTimeMillis() - startTime);
+        return result;
+    }
+
+    private void applyUpserts(Connection connection, String tableName, List<String[]> upserts) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "INSERT INTO " + tableName + " (cui, name) VALUES (?, ?) " +
+                        "ON CONFLICT (cui) DO UPDATE SET name = EXCLUDED.name")) {
+            int pending = 0;
+            for (String[] upsert : upserts) {
+                statement.setString(1, upsert[0]);
+                statement.setString(2, upsert[1]);
+                statement.addBatch();
+                if (++pending >= DELTA_BATCH_SIZE) {
+                    statement.executeBatch();
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                statement.executeBatch();
+            }
+        }
+    }
+
+    /**
+     * מיפוי CUI שבוטלו ל-CUI שאליו מוזגו (REL=SY ב-MRCUI), רק כשה-CUI היעד קיים בגרסה החדשה
+     */
+    private Map<String, String> loadMergedCuis(Collection<String> retiredCuis, Set<String> currentCuis) throws IOException {
+        Map<String, String> mergedInto = new HashMap<>();
+        if (!Files.exists(RrfSource.filePath(DatabaseConstants.MRCUI_FILE_PATH))) {
+            logger.warn("MRCUI file not found - retired CUIs will not be remapped");
+            return mergedInto;
+        }
+
+        new RrfReader(DatabaseConstants.MRCUI_FILE_PATH, MRCUI_CUI1, MRCUI_REL, MRCUI_CUI2)
+                .parallelism(1)
+                .idFilter(MRCUI_CUI1, retiredCuis)
+                .filter(row -> row.fieldEquals(MRCUI_REL, "SY"))
+                .forEach(row -> {
+                    String target = row.getString(MRCUI_CUI2);
+                    if (currentCuis.contains(target)) {
+                        mergedInto.put(row.getString(MRCUI_CUI1), target);
+                    }
+                });
+        return mergedInto;
+    }
+
+    /**
+     * העברת שורות היסטוריה מה-CUI שבוטל ל-CUI שאליו מוזג.
+     * שורה שהמשתמש כבר מחזיק בה את ה-CUI החדש נשארת במקומה (אילוץ הייחודיות) והשורה הישנה לא תימחק.
+     */
+    private int remapHistory(Connection connection, String tableName, String historyTable, String column,
+                             Map<Long, String> retired, Map<String, String> mergedInto) throws SQLException {
+        int remapped = 0;
+        try (PreparedStatement statement = connection.prepareStatement(
+                "UPDATE " + historyTable + " h SET " + column + " = t.id FROM " + tableName + " t " +
+                        "WHERE h." + column + " = ? AND t.cui = ? " +
+                        "AND NOT EXISTS (SELECT 1 FROM " + historyTable + " d " +
+                        "WHERE d.user_id = h.user_id AND d." + column + " = t.id)")) {
+            int pending = 0;
+            for (Map.Entry<Long, String> entry : retired.entrySet()) {
+                String target = mergedInto.get(entry.getValue());
+                if (target == null) {
+                    continue;
+                }
+                statement.setLong(1, entry.getKey());
+                statement.setString(2, target);
+                statement.addBatch();
+                if (++pending >= DELTA_BATCH_SIZE) {
+                    remapped += sum(statement.executeBatch());
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                remapped += sum(statement.executeBatch());
+            }
+        }
+        return remapped;
+    }
+
+    /**
+     * מחיקת שורות שבוטלו ואין אליהן הפניות מהיסטוריית המשתמשים
+     */
+    private int deleteUnreferenced(Connection connection, String tableName, String[] history,
+                                   Collection<Long> retiredIds) throws SQLException {
+        String sql = "DELETE FROM " + tableName + " t WHERE t.id = ?" +
+                (history != null ? " AND NOT EXISTS (SELECT 1 FROM " + history[0] + " h WHERE h." + history[1] + " = t.id)" : "");
+        int deleted = 0;
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            int pending = 0;
+            for (Long id : retiredIds) {
+                statement.setLong(1, id);
+                statement.addBatch();
+                if (++pending >= DELTA_BATCH_SIZE) {
+                    deleted += sum(statement.executeBatch());
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                deleted += sum(statement.executeBatch());
+            }
+        }
+        return deleted;
+    }
+
+    private static int sum(int[] counts) {
+        int total = 0;
+        for (int count : counts) {
+            if (count > 0) {
+                total += count;
+            }
+        }
+        return total;
+    }
+
+    private static String truncate(String name) {
+        return name.length() > MAX_ENTITY_NAME_LENGTH ? name.substring(0, MAX_ENTITY_NAME_LENGTH) : name;
+    }
+
+    /**
+     * סיכום עדכון גרסה
+     */
+    public static class DeltaResult {
+        public int inserted;
+        public int renamed;
+        public int remapped;
+        public int retired;
+        public int keptReferenced;
+    }
+}
@@ -0,0 +1,159 @@
+package com.example.mediaid.bl.build_UMLS_terms;
+
+import com.example.mediaid.constants.DatabaseConstants;
+import com.example.mediaid.neo4j.EntityTypes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * ייבוא משותף של מונחי UMLS - סריקה אחת של MRSTY ואחת של MRCONSO עבור כל המעבדים
+ * במקום סריקה נפרדת של כל הקבצים לכל מעבד.
+ * מלבד המעבדים אפשר לרשום יעדים נוספים (למשל סוגי הגרף שאין להם טבלה) - הם נבחרים באותה סריקה
+ * והמונחים שלהם עוברים לצרכן שנרשם איתם.
+ */
+@Component
+public class UmlsIngestCoordinator {
+    private static final Logger logger = LoggerFactory.getLogger(UmlsIngestCoordinator.class);
+
+    /** סוגי הגרף הנוספים שאין להם טבלה ב-PostgreSQL */
+    private static final Map<String, String[]> GRAPH_TYPE_SEMANTIC_TYPES = Map.of(
+            EntityTypes.PROCEDURE, DatabaseConstants.PROCEDURE_SEMANTIC_TYPES,
+            EntityTypes.LABORATORY_TEST, DatabaseConstants.LAB_TEST_SEMANTIC_TYPES,
+            EntityTypes.ANATOMICAL_STRUCTURE, DatabaseConstants.ANATOMY_SEMANTIC_TYPES,
+            EntityTypes.BIOLOGICAL_FUNCTION, DatabaseConstants.BIOLOGICAL_FUNCTION_SEMANTIC_TYPES
+    );
+
+    /**
+     * יעד נוסף לסריקה המשותפת - מקבל את המונחים שנבחרו (CUI -> שם) ולא נשמר במעבד
+     */
+    private record ExtraTarget(Set<String> semanticTypes, List<String> preferredSources,
+                               Consumer<Map<String, String>> consumer) {
+    }
+
+    private final List<GenericUmlsProcessor<?>> processors;
+
+    //יעדים נוספים שעוד לא קיבלו מונחים; יעד יוצא מהרשימה אחרי שהצרכן שלו הצליח
+    private final Map<String, ExtraTarget> pendingTargets = new ConcurrentHashMap<>();
+
+    @Value("${mediaid.umls.snapshot.enabled:true}")
+    private boolean snapshotEnabled;
+
+    @Autowired
+    public UmlsIngestCoordinator(List<GenericUmlsProcessor<?>> processors) {
+        this.processors = processors;
+    }
+
+    /**
+     * רישום יעד נוסף לסריקה המשותפת הבאה
+     * @param name - שם היעד; לא יכול להיות שם של מעבד
+     * @param consumer - מקבל את המונח שנבחר לכל CUI, פעם אחת אחרי הסריקה
+     */
+    public void registerTarget(String name, Set<String> semanticTypes, List<String> preferredSources,
+                               Consumer<Map<String, String>> consumer) {
+        if (processors.stream().anyMatch(processor -> processor.entityTypeName.equals(name))) {
+            throw new IllegalArgumentException("Target " + name + " is already handled by a processor");
+        }
+        pendingTargets.put(name, new ExtraTarget(Set.copyOf(semanticTypes), List.copyOf(preferredSources), consumer));
+    }
+
+    /**
+     * רישום סוגי הגרף הנוספים מ-INDEXED_ENTITY_TYPES (פרוצדורות, בדיקות מעבדה, אנטומיה, פונקציות ביולוגיות)
+     * @param consumer - מקבל את סוג הישות ואת המונחים שנבחרו לו
+     */
+    public void registerGraphTypes(BiConsumer<String, Map<String, String>> consumer) {
+        GRAPH_TYPE_SEMANTIC_TYPES.forEach((entityType, tuis) ->
+                registerTarget(entityType, Set.of(tuis), Arrays.asList(DatabaseConstants.GRAPH_TYPE_PREFERRED_SOURCES),
+                        selected -> consumer.accept(entityType, selected)));
+    }
+
+    /**
+     * הרצת הייבוא המשותף לכל המעבדים שטבלתם ריקה ולכל היעדים הנוספים שנרשמו
+     * @return false אם הייבוא נכשל
+     */
+    public boolean ingest() {
+        try {
+            // בדיקת מצב הטבלאות במקביל - כל בדיקה היא שאילתת count נפרדת
+            List<GenericUmlsProcessor<?>> pending = processors.parallelStream()
+                    .filter(processor -> {
+                        boolean needed = processor.needsImport();
+                        if (!needed) {
+                            logger.info("The data for {} already exists in the database. Skipping import.", processor.entityTypeName);
+                        }
+                        return needed;
+                    })
+                    .toList();
+
+            Map<String, ExtraTarget> targets = new LinkedHashMap<>(pendingTargets);
+            if (pending.isEmpty() && targets.isEmpty()) {
+                logger.info("All UMLS term tables are loaded - no file scan needed");
+                return true;
+            }
+
+            // קבוצת יעד לכל מעבד ולכל יעד נוסף
+            Map<String, Set<String>> semanticTypesByTarget = new LinkedHashMap<>();
+            Map<String, List<String>> preferredSourcesByTarget = new HashMap<>();
+            for (GenericUmlsProcessor<?> processor : pending) {
+                semanticTypesByTarget.put(processor.entityTypeName, processor.semanticTypes);
+                preferredSourcesByTarget.put(processor.entityTypeName, processor.preferredSources);
+            }
+            targets.forEach((name, target) -> {
+                semanticTypesByTarget.put(name, target.semanticTypes());
+                preferredSourcesByTarget.put(name, target.preferredSources());
+            });
+
+            logger.info("Coordinated UMLS ingest for {}: scanning MRSTY and MRCONSO once", semanticTypesByTarget.keySet());
+            Map<String, Map<String, String>> selectedByTarget = UmlsTermHelper.selectBestTerms(
+                    semanticTypesByTarget, preferredSourcesByTarget,
+                    snapshotEnabled ? Path.of(DatabaseConstants.UMLS_SNAPSHOT_FILE_PATH) : null);
+
+            // כל טבלה נטענת בחיבור ובטרנזקציה משלה, ולכן הטעינות רצות במקביל
+            List<String> failed = Collections.synchronizedList(new ArrayList<>());
+            pending.parallelStream().forEach(processor -> {
+                Map<String, String> selected = selectedByTarget.get(processor.entityTypeName);
+                if (selected == null || selected.isEmpty()) {
+                    logger.warn("No terms found for {}", processor.entityTypeName);
+                    return;
+                }
+                logger.info("Selected {} favorite terms for {}", selected.size(), processor.entityTypeName);
+                try {
+                    processor.applyTerms(selected);
+                    logger.info("The loading process {} completed successfully.", processor.entityTypeName);
+                } catch (Exception e) {
+                    logger.error("Loading terms for {} failed: {}", processor.entityTypeName, e.getMessage(), e);
+                    failed.add(processor.entityTypeName);
+                }
+            });
+
+            targets.forEach((name, target) -> {
+                Map<String, String> selected = selectedByTarget.getOrDefault(name, Map.of());
+                logger.info("Selected {} terms for {}", selected.size(), name);
+                try {
+                    target.consumer().accept(selected);
+                    pendingTargets.remove(name, target);
+                } catch (Exception e) {
+                    logger.error("Handing terms to {} failed: {}", name, e.getMessage(), e);
+                    failed.add(name);
+                }
+            });
+
+            if (!failed.isEmpty()) {
+                logger.error("Coordinated UMLS ingest failed for {}", failed);
+                return false;
+            }
+            return true;
+
+        } catch (Exception e) {
+            logger.error("Error in coordinated UMLS ingest: {}", e.getMessage(), e);
+            return false;
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package com.example.mediaid.bl.build_UMLS_terms;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * תמונת מצב בינארית של מונחי UMLS שכבר נבחרו, כדי שבנייה מחדש לא תסרוק שוב את MRSTY ו-MRCONSO
+ * לכל קבוצת יעד נשמרים זוגות (cui, name) ממוינים לפי CUI כמחרוזות עם קידומת אורך.
+ * התמונה תקפה רק כל עוד טביעת האצבע של קבצי המקור לא השתנתה, וכל קבוצה תקפה רק עבור אותם סוגים סמנטיים ומקורות מועדפים.
+ *
+ * מבנה הקובץ:
+ * MAGIC, VERSION, טביעת אצבע של המקור, מספר קבוצות,
+ * ולכל קבוצה: שם, מפתח הגדרות, אורך בבתים, מספר רשומות, רשומות (cui, name)
+ */
+public class UmlsSnapshot {
+    private static final Logger logger = LoggerFactory.getLogger(UmlsSnapshot.class);
+
+    private static final int MAGIC = 0x554D4C53; // "UMLS"
+    private static final int VERSION = 2; // 2: הדירוג לפי ISPREF (שדה 6) ולא SUPPRESS
+
+    /** גודל הדגימה מתחילת וסוף כל קובץ מקור לחישוב טביעת האצבע */
+    private static final int FINGERPRINT_SAMPLE_BYTES = 1024 * 1024;
+
+    // מעבדים שרצים במקביל כותבים לאותו קובץ - הקריאה, המיזוג וההחלפה נעשים אחד אחרי השני
+    private static final Object WRITE_LOCK = new Object();
+
+    // קבוצה שמועתקת כמו שהיא מהקובץ הקיים
+    private record RawSection(long key, byte[] body) {
+    }
+
+    private UmlsSnapshot() {
+    }
+
+    /**
+     * טביעת אצבע של קבצי המקור: גודל, זמן שינוי ו-CRC32 של תחילת וסוף כל קובץ.
+     * לא קוראים את הקבצים במלואם - זה בדיוק מה שהתמונה באה לחסוך.
+     */
+    public static long sourceFingerprint(String... paths) throws IOException {
+        CRC32 crc = new CRC32();
+        ByteBuffer header = ByteBuffer.allocate(Long.BYTES * 2);
+        for (String pathName : paths) {
+            // לקובץ דחוס או רשומה בתוך zip - החתימה היא של הקובץ שעל הדיסק
+            Path path = RrfSource.filePath(pathName);
+            long size = Files.size(path);
+            header.clear();
+            header.putLong(size).putLong(Files.getLastModifiedTime(path).toMillis()).flip();
+            crc.update(header);
+
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                int head = (int) Math.min(size, FINGERPRINT_SAMPLE_BYTES);
+                crc.update(channel.map(FileChannel.MapMode.READ_ONLY, 0, head));
+                long tailStart = Math.max(head, size - FINGERPRINT_SAMPLE_BYTES);
+                if (tailStart < size) {
+                    crc.update(channel.map(FileChannel.MapMode.READ_ONLY, tailStart, size - tailStart));
+                }
+            }
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * מפתח ההגדרות של קבוצת יעד - משתנה אם הסוגים הסמנטיים או המקורות המועדפים השתנו
+     */
+    public static long targetKey(Set<String> semanticTypes, List<String> preferredSources) {
+        CRC32 crc = new CRC32();
+        crc.update(String.join(",", new TreeSet<>(semanticTypes)).getBytes(StandardCharsets.UTF_8));
+        crc.update('|');
+        crc.update(String.join(",", preferredSources).getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+
+    /**
+     * קריאת הקבוצות התקפות מתוך התמונה (ממופה לזיכרון)
+     * @param targetKeys - קבוצות היעד המבוקשות ומפתח ההגדרות של כל אחת
+     * @return הקבוצות שנמצאו ותקפות; ריק אם הקובץ חסר, פגום או שייך לגרסת מקור אחרת
+     */
+    public static Map<String, Map<String, String>> read(Path file, long fingerprint, Map<String, Long> targetKeys) {
+        Map<String, Map<String, String>> sections = new HashMap<>();
+        if (!Files.exists(file)) {
+            return sections;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                logger.warn("Ignoring UMLS snapshot {} - unknown format", file);
+                return sections;
+            }
+            if (buffer.getLong() != fingerprint) {
+                logger.info("UMLS snapshot {} belongs to a different release of the source files - ignoring it", file);
+                return sections;
+            }
+
+            int sectionCount = buffer.getInt();
+            for (int s = 0; s < sectionCount; s++) {
+                String target = readString(buffer);
+                long key = buffer.getLong();
+                long length = buffer.getLong();
+                Long wantedKey = targetKeys.get(target);
+                if (wantedKey == null || wantedKey != key) {
+                    buffer.position(Math.toIntExact(buffer.position() + length));
+                    continue;
+                }
+
+                int count = buffer.getInt();
+                Map<String, String> terms = new HashMap<>(count * 2);
+                for (int i = 0; i < count; i++) {
+                    terms.put(readString(buffer), readString(buffer));
+                }
+                sections.put(target, terms);
+            }
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException | ArithmeticException e) {
+            logger.warn("Could not read UMLS snapshot {}: {}", file, e.toString());
+            sections.clear();
+        }
+        return sections;
+    }
+
+    /**
+     * כתיבת התמונה לקובץ זמני והחלפה אטומית של הקובץ הקיים.
+     * קבוצות אחרות מהקובץ הקיים, עם אותה טביעת אצבע, נשמרות בקובץ החדש - כך שכל מעבד מוסיף את הקבוצה שלו
+     * במקום לדרוס את של האחרים.
+     * @param targetKeys - מפתח ההגדרות של כל קבוצת יעד
+     * @param terms - לכל קבוצת יעד: CUI -> שם
+     */
+    public static void write(Path file, long fingerprint, Map<String, Long> targetKeys,
+                             Map<String, Map<String, String>> terms) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+
+        synchronized (WRITE_LOCK) {
+            Map<String, RawSection> retained = readOtherSections(file, fingerprint, terms.keySet());
+            Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+
+            try {
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                    out.writeInt(MAGIC);
+                    out.writeInt(VERSION);
+                    out.writeLong(fingerprint);
+                    out.writeInt(retained.size() + terms.size());
+
+                    for (Map.Entry<String, RawSection> section : retained.entrySet()) {
+                        writeSection(out, section.getKey(), section.getValue().key(), section.getValue().body());
+                    }
+                    for (Map.Entry<String, Map<String, String>> section : terms.entrySet()) {
+                        writeSection(out, section.getKey(), targetKeys.get(section.getKey()), encodeSection(section.getValue()));
+                    }
+                }
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                logger.info("Wrote UMLS snapshot {} with {} target groups", file, retained.size() + terms.size());
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    /**
+     * הקבוצות בקובץ הקיים שלא נכתבות מחדש, אם הקובץ שייך לאותה טביעת אצבע; אחרת ריק
+     */
+    private static Map<String, RawSection> readOtherSections(Path file, long fingerprint, Set<String> replaced) {
+        Map<String, RawSection> sections = new LinkedHashMap<>();
+        if (!Files.exists(file)) {
+            return sections;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getLong() != fingerprint) {
+                return sections;
+            }
+
+            int sectionCount = buffer.getInt();
+            for (int s = 0; s < sectionCount; s++) {
+                String target = readString(buffer);
+                long key = buffer.getLong();
+                long length = buffer.getLong();
+                if (length < 0 || length > buffer.remaining()) {
+                    throw new IllegalArgumentException("Corrupt section length " + length);
+                }
+                byte[] body = new byte[(int) length];
+                buffer.get(body);
+                if (!replaced.contains(target)) {
+                    sections.put(target, new RawSection(key, body));
+                }
+            }
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+            logger.warn("Could not merge existing UMLS snapshot {} - rewriting it: {}", file, e.toString());
+            sections.clear();
+        }
+        return sections;
+    }
+
+    private static void writeSection(DataOutputStream out, String target, long key, byte[] body) throws IOException {
+        writeString(out, target);
+        out.writeLong(key);
+        out.writeLong(body.length);
+        out.write(body);
+    }
+
+    /**
+     * רשומות קבוצה אחת, ממוינות לפי CUI
+     */
+    private static byte[] encodeSection(Map<String, String> terms) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(terms.size());
+            for (Map.Entry<String, String> entry : new TreeMap<>(terms).entrySet()) {
+                writeString(out, entry.getKey());
+                writeString(out, entry.getValue());
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalArgumentException("Corrupt string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
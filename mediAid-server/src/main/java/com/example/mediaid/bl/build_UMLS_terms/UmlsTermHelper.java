@@ -1,138 +1,137 @@
 package com.example.mediaid.bl.build_UMLS_terms;
 
-import com.example.mediaid.dal.UMLS_terms.UmlsTerm;
 import com.example.mediaid.constants.DatabaseConstants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class UmlsTermHelper {
     private static final Logger logger = LoggerFactory.getLogger(UmlsTermHelper.class);
 
+    // אינדקסי שדות בקבצי RRF
+    static final int MRSTY_CUI = 0;
+    static final int MRSTY_TUI = 1;
+    static final int MRCONSO_CUI = 0;
+    static final int MRCONSO_LAT = 1;
+    static final int MRCONSO_SAB = 11;
+    static final int MRCONSO_TTY = 12;
+    static final int MRCONSO_STR = 14;
+    static final int MRCONSO_ISPREF = 6;
+
     /**
-     * טוען CUIs מסוג סמנטי מסוים מקובץ MRSTY
+     * סריקה יחידה של MRSTY עבור כמה קבוצות יעד במקביל
+     * @param semanticTypesByTarget - סוגים סמנטיים לכל קבוצת יעד (למשל Diseases, Medications)
+     * @return מיפוי CUI לקבוצות היעד שאליהן הוא שייך
      */
-    public static Set<String> loadCuisBySemanticTypes(Set<String> semanticTypes) throws IOException {
-        Set<String> resultCuis = new HashSet<String>();
-        int lineNumber = 0;
-        int validLines = 0;
-        int skippedLines = 0;
-        try (BufferedReader reader = new BufferedReader(new FileReader(DatabaseConstants.MRSTY_FILE_PATH))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                lineNumber++;
-
-                // דלג על שורות ריקות
-                if (line.trim().isEmpty()) {
-                    skippedLines++;
-                    continue;
-                }
-
-                String[] fields = line.split("\\|");
-
-                // בדיקת תקינות - וודא שיש לפחות 2 שדות
-                if (fields.length < 2) {
-                    logger.warn("שורה {} בקובץ MRSTY לא תקינה: {}", lineNumber, line.substring(0, Math.min(50, line.length())));
-                    skippedLines++;
-                    continue;
-                }
-
-                String cui = fields[0].trim();
-                String tui = fields[1].trim();
-
-                if (semanticTypes.contains(tui)) {
-                    resultCuis.add(cui);
-                    validLines++;
-                }
+    public static Map<String, Set<String>> loadCuiTargets(Map<String, Set<String>> semanticTypesByTarget) throws IOException {
+        // היפוך המיפוי: TUI -> קבוצות יעד
+        Map<String, Set<String>> targetsByTui = new HashMap<>();
+        for (Map.Entry<String, Set<String>> entry : semanticTypesByTarget.entrySet()) {
+            for (String tui : entry.getValue()) {
+                targetsByTui.computeIfAbsent(tui, k -> new HashSet<>()).add(entry.getKey());
             }
         }
-        logger.info("Finished reading MRSTY: {} valid CUIs loaded, {} lines skipped (from total {}).",
-                validLines, skippedLines, lineNumber);
-        return resultCuis;
 
+        Map<String, Set<String>> cuiTargets = new ConcurrentHashMap<>();
+        RrfReader.ScanResult result = new RrfReader(DatabaseConstants.MRSTY_FILE_PATH, MRSTY_CUI, MRSTY_TUI)
+                .idFilter(MRSTY_TUI, targetsByTui.keySet())
+                .forEach(row -> {
+                    Set<String> targets = targetsByTui.get(row.getString(MRSTY_TUI));
+                    cuiTargets.computeIfAbsent(row.getString(MRSTY_CUI), k -> ConcurrentHashMap.newKeySet()).addAll(targets);
+                });
+
+        logger.info("Finished reading MRSTY: {} CUIs mapped to {} targets (from total {} lines).",
+                cuiTargets.size(), semanticTypesByTarget.size(), result.totalLines);
+        return cuiTargets;
     }
 
     /**
-     * טוען את המונחים באנגלית של רשימת הCUI
+     * סריקה יחידה של MRCONSO - כל שורה באנגלית מנותבת לבוחר המונחים של כל קבוצת יעד של ה-CUI שלה
+     * @param cuiTargets - מיפוי CUI לקבוצות יעד (מתוך loadCuiTargets)
+     * @param preferredSourcesByTarget - מקורות מועדפים לכל קבוצת יעד
+     * @return לכל קבוצת יעד - המונח שנבחר לכל CUI
      */
-    public static Map<String, List<UmlsTerm>> loadTermsForCuis(Set<String> cuis) throws IOException {
-        Map<String,List<UmlsTerm>> allTerms = new HashMap<>();
-        try(BufferedReader reader = new BufferedReader(new FileReader(DatabaseConstants.MRCONSO_FILE_PATH))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] fields = line.split("\\|");
-                String cui = fields[0];
-                String lang = fields[1];
-                String sab = fields[11]; // מקור המידע (UMLS source) לדוגמה: SNOMEDCT_US
-                String tty = fields[12]; // סוג מונח: PT = Preferred Term
-                String ispref = fields[16]; // האם מונח מועדף
-                String name = fields[14]; // שם המונח
-
-                if(cuis.contains(cui) && "ENG".equals(lang)) {
-                    UmlsTerm term = new UmlsTerm(name, sab, tty, ispref);
-                    allTerms.computeIfAbsent(cui, k -> new ArrayList<>()).add(term);
-                }
-            }
-
-        }
-        return allTerms;
+    public static Map<String, Map<String, String>> selectBestTermsByTarget(Map<String, Set<String>> cuiTargets,
+                                                                        Map<String, List<String>> preferredSourcesByTarget) throws IOException {
+        Map<String, BestTermReducer> reducers = new HashMap<>();
+        preferredSourcesByTarget.forEach((target, sources) -> reducers.put(target, new BestTermReducer(sources)));
+
+        mrconsoReader()
+                .idFilter(MRCONSO_CUI, cuiTargets.keySet())
+                .forEach(row -> {
+                    String cui = row.getString(MRCONSO_CUI);
+                    for (String target : cuiTargets.get(cui)) {
+                        reducers.get(target).accept(cui, row);
+                    }
+                });
+
+        Map<String, Map<String, String>> selected = new HashMap<>();
+        reducers.forEach((target, reducer) -> selected.put(target, reducer.results()));
+        return selected;
     }
 
     /**
-     * בוחר את המונח המועדף לפי המקורות המועדפים
+     * בחירת המונחים לכל קבוצות היעד, עם תמונת מצב בינארית כשהיא קיימת ותקפה.
+     * רק קבוצות שחסרות בתמונה נסרקות מ-MRSTY ו-MRCONSO, ואחרי סריקה התמונה נכתבת מחדש.
+     * @param semanticTypesByTarget - סוגים סמנטיים לכל קבוצת יעד
+     * @param preferredSourcesByTarget - מקורות מועדפים לכל קבוצת יעד
+     * @param snapshotFile - קובץ תמונת המצב, או null לסריקה ללא מטמון
+     * @return לכל קבוצת יעד - המונח שנבחר לכל CUI
      */
-    public static String chooseBestTerm(List<UmlsTerm> terms, List<String> preferredSources) {
-        if(terms == null || terms.isEmpty()) {
-            return null;
+    public static Map<String, Map<String, String>> selectBestTerms(Map<String, Set<String>> semanticTypesByTarget,
+                                                                Map<String, List<String>> preferredSourcesByTarget,
+                                                                Path snapshotFile) throws IOException {
+        if (snapshotFile == null) {
+            Map<String, Set<String>> cuiTargets = loadCuiTargets(semanticTypesByTarget);
+            return selectBestTermsByTarget(cuiTargets, preferredSourcesByTarget);
         }
-        terms.sort((term1, term2)->{
-            //לפי מקור מידע מועדף
-            int sabCompare = Integer.compare(
-                    preferredSources.contains(term1.getSab())?preferredSources.indexOf(term1.getSab()):preferredSources.size(),
-                    preferredSources.contains(term2.getSab())?preferredSources.indexOf(term1.getSab()):preferredSources.size()
-            );
-            if (sabCompare != 0) {return sabCompare;}
-
-
-            // מיון לפי האם מועדף
-            int prefCompare = Integer.compare(
-                    "Y".equals(term1.getIspref()) ? 0 : 1,
-                    "Y".equals(term2.getIspref()) ? 0 : 1
-            );
-            if (prefCompare != 0) return prefCompare;
-
-            // מיון לפי סוג מונח
-            List<String> preferredTypes = Arrays.asList("PT", "PV", "SY");
-            int term1Rank = preferredTypes.contains(term1.getTty()) ? preferredTypes.indexOf(term1.getTty()) : preferredTypes.size();
-            int term2Rank = preferredTypes.contains(term2.getTty()) ? preferredTypes.indexOf(term2.getTty()) : preferredTypes.size();
-            int ttyCompare = Integer.compare(term1Rank, term2Rank);
-            if (ttyCompare != 0) return ttyCompare;
-
-            //מיון לפי אורך מונח
-            int lengthCompare = Integer.compare(term1.getName().length(), term2.getName().length());
-            if (lengthCompare != 0) return lengthCompare;
-
-            //מיון לפי מספר סימני הפיסוק
-            return Integer.compare(countPunctuation(term1.getName()), countPunctuation(term2.getName()));
+
+        long fingerprint = UmlsSnapshot.sourceFingerprint(DatabaseConstants.MRSTY_FILE_PATH, DatabaseConstants.MRCONSO_FILE_PATH);
+        Map<String, Long> targetKeys = new HashMap<>();
+        semanticTypesByTarget.forEach((target, tuis) ->
+                targetKeys.put(target, UmlsSnapshot.targetKey(tuis, preferredSourcesByTarget.get(target))));
+
+        Map<String, Map<String, String>> selected = UmlsSnapshot.read(snapshotFile, fingerprint, targetKeys);
+        if (selected.keySet().containsAll(semanticTypesByTarget.keySet())) {
+            logger.info("Loaded {} from UMLS snapshot {} - skipping MRSTY/MRCONSO scan", selected.keySet(), snapshotFile);
+            return selected;
+        }
+
+        // סריקה רק של הקבוצות החסרות
+        Map<String, Set<String>> missingTypes = new LinkedHashMap<>();
+        Map<String, List<String>> missingSources = new HashMap<>();
+        semanticTypesByTarget.forEach((target, tuis) -> {
+            if (!selected.containsKey(target)) {
+                missingTypes.put(target, tuis);
+                missingSources.put(target, preferredSourcesByTarget.get(target));
+            }
         });
-        return terms.get(0).getName();
+        if (!selected.isEmpty()) {
+            logger.info("Loaded {} from UMLS snapshot, scanning files for {}", selected.keySet(), missingTypes.keySet());
+        }
+
+        Map<String, Set<String>> cuiTargets = loadCuiTargets(missingTypes);
+        selected.putAll(selectBestTermsByTarget(cuiTargets, missingSources));
+
+        try {
+            UmlsSnapshot.write(snapshotFile, fingerprint, targetKeys, selected);
+        } catch (IOException e) {
+            logger.warn("Could not write UMLS snapshot {}: {}", snapshotFile, e.getMessage());
+        }
+        return selected;
     }
 
     /**
-     * ספירת מספר סימני פיסוק
+     * קורא MRCONSO עם השדות הדרושים בלבד, מסונן לשורות באנגלית
      */
-    private static int countPunctuation(String text) {
-        int count = 0;
-        for(char c : text.toCharArray()) {
-            if(c == ';' || c == ',' || c == '.') {
-                count++;
-            }
-        }
-        return count;
+    private static RrfReader mrconsoReader() {
+        return new RrfReader(DatabaseConstants.MRCONSO_FILE_PATH,
+                MRCONSO_CUI, MRCONSO_LAT, MRCONSO_SAB, MRCONSO_TTY, MRCONSO_STR, MRCONSO_ISPREF)
+                .filter(row -> row.fieldEquals(MRCONSO_LAT, "ENG"));
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,148 @@
+package com.example.mediaid.bl.emergency;
+
+import com.example.mediaid.bl.bootstrap.BootstrapStatus;
+import com.example.mediaid.neo4j.GraphImportFinishedEvent;
+import jakarta.annotation.PreDestroy;
+import org.neo4j.driver.Driver;
+import org.neo4j.driver.Record;
+import org.neo4j.driver.Result;
+import org.neo4j.driver.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.example.mediaid.constants.MedicalAnalysisConstants.DEFAULT_MEDICAL_WEIGHT;
+
+/**
+ * הגרף הרפואי בזיכרון (mediaid.analysis.in-memory-graph)
+ * נטען מ-Neo4j בסוף הטעינה הראשונית ושוב בסוף כל ריצת ייבוא. הטעינה רצה ברקע ובונה גרף חדש,
+ * שמחליף את הקודם בהשמה אחת - שאילתה שכבר רצה ממשיכה עם הגרף שהיא קיבלה.
+ * עד שהטעינה הראשונה מסתיימת (או אם היא נכשלת) הניתוח ממשיך מול Neo4j.
+ */
+@Component
+public class InMemoryMedicalGraph {
+
+    private static final Logger logger = LoggerFactory.getLogger(InMemoryMedicalGraph.class);
+
+    @Autowired
+    private Driver neo4jDriver;
+
+    @Autowired
+    private BootstrapStatus bootstrapStatus;
+
+    @Value("${mediaid.analysis.in-memory-graph:false}")
+    private boolean enabled; //ניתוח מהגרף שבזיכרון במקום שאילתות Neo4j
+
+    private final ExecutorService loader = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "mediaid-graph-loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicBoolean reloadPending = new AtomicBoolean();
+    private final AtomicBoolean loadRequested = new AtomicBoolean();
+    private volatile MedicalGraph graph;
+
+    /**
+     * הגרף הנוכחי, או null אם הגרף בזיכרון כבוי או שעוד לא נטען
+     */
+    public MedicalGraph current() {
+        return enabled ? graph : null;
+    }
+
+    /**
+     * טעינה ראשונה בסוף ה-bootstrap - גם כשהייבוא כבוי והגרף כבר קיים ב-Neo4j
+     */
+    @EventListener
+    public void onReadinessChange(AvailabilityChangeEvent<ReadinessState> event) {
+        if (event.getState() == ReadinessState.ACCEPTING_TRAFFIC && bootstrapStatus.isComplete()
+                && !loadRequested.get()) {
+            requestReload();
+        }
+    }
+
+    @EventListener
+    public void onImportFinished(GraphImportFinishedEvent event) {
+        logger.info("Graph import {} - reloading the in-memory graph", event.state().name().toLowerCase());
+        requestReload();
+    }
+
+    /**
+     * טעינה מחדש ברקע; בקשות שמגיעות לפני שהטעינה התחילה מתאחדות לטעינה אחת
+     */
+    public void requestReload() {
+        if (!enabled) {
+            return;
+        }
+        loadRequested.set(true);
+        if (reloadPending.compareAndSet(false, true)) {
+            loader.execute(this::reload);
+        }
+    }
+
+    private void reload() {
+        reloadPending.set(false);
+        long start = System.nanoTime();
+        try {
+            MedicalGraph loaded = load();
+            graph = loaded;
+            logger.info("In-memory medical graph loaded: {} nodes, {} relationships in {} ms",
+                    loaded.nodeCount(), loaded.relationshipCount(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (Exception e) {
+            logger.error("Failed to load the in-memory medical graph - analysis keeps using Neo4j: {}", e.getMessage(), e);
+        }
+    }
+
+    private MedicalGraph load() {
+        // גם צמתים בלי תווית מ-LABELS שיש להם קשר סיכון - הרחבת הסיכון ב-Neo4j עוברת דרכם
+        String nodeQuery = """
+            MATCH (n:Concept)
+            WHERE n.cui IS NOT NULL
+              AND (any(l IN labels(n) WHERE l IN $labels) OR EXISTS { (n)-[:%s]-(:Concept) })
+            RETURN n.cui as cui, n.name as name, [l IN labels(n) WHERE l <> 'Concept'] as labels
+            """.formatted(String.join("|", MedicalGraph.RISK_RELATIONSHIP_TYPES));
+        // הסוגים בתבנית עצמה (ולא ב-WHERE) - Neo4j סורק רק את הקשרים מהסוגים האלה
+        String relationshipQuery = """
+            MATCH (a:Concept)-[r:%s]->(b:Concept)
+            RETURN a.cui as fromCui, b.cui as toCui, type(r) as type, coalesce(r.weight, $defaultWeight) as weight
+            """.formatted(String.join("|", MedicalGraph.RELATIONSHIP_TYPES));
+
+        // הבנייה כולה בתוך הטרנזקציה: אם הדרייבר מנסה אותה שוב, הניסיון החדש מתחיל מ-builder ריק
+        // ולא מוסיף שוב את מה שהניסיון הקודם כבר הוסיף
+        try (Session session = neo4jDriver.session()) {
+            return session.readTransaction(tx -> {
+                MedicalGraph.Builder builder = MedicalGraph.builder();
+                Result nodes = tx.run(nodeQuery, Map.of("labels", MedicalGraph.LABELS));
+                while (nodes.hasNext()) {
+                    Record record = nodes.next();
+                    builder.addNode(record.get("cui").asString(), record.get("name").asString(null),
+                            record.get("labels").asList(label -> label.asString()).toArray(new String[0]));
+                }
+                Result relationships = tx.run(relationshipQuery, Map.of("defaultWeight", DEFAULT_MEDICAL_WEIGHT));
+                while (relationships.hasNext()) {
+                    Record record = relationships.next();
+                    builder.addRelationship(record.get("fromCui").asString(null), record.get("toCui").asString(null),
+                            record.get("type").asString(), record.get("weight").asDouble());
+                }
+                return builder.build();
+            });
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        loader.shutdownNow();
+    }
+}
@@ -4,6 +4,7 @@ import com.example.mediaid.constants.MedicalAnalysisConstants;
 import com.example.mediaid.dto.emergency.ExtractedSymptom;
 import com.example.mediaid.dto.emergency.MedicalConnection;
 import com.example.mediaid.dto.emergency.UserMedicalEntity;
+import com.example.mediaid.neo4j.EntityTypes;
 import lombok.Data;
 import org.neo4j.driver.Record;
 import org.slf4j.Logger;
@@ -28,19 +29,57 @@ public class MedicalAnalysisService {
     @Autowired
     private Neo4jMedicalRepository repository;
 
+    @Autowired
+    private InMemoryMedicalGraph inMemoryGraph;
+
     /**
      * מציאת מסלולים רפואיים עד 5 צעדים
      */
     public List<MedicalPathway> findMedicalPathways(String sourceCui, Set<ExtractedSymptom> targetSymptoms, int maxDepth) {
         logger.info("Finding advanced pathways from {} to {} symptoms (max depth: {})", sourceCui, targetSymptoms.size(), maxDepth);
+        return findMedicalPathways(List.of(sourceCui), targetSymptoms, maxDepth);
+    }
+
+    /**
+     * מציאת מסלולים רפואיים מכל הישויות של המשתמש לכל הסימפטומים בשאילתה אחת
+     */
+    public List<MedicalPathway> findMedicalPathwaysFromEntities(List<UserMedicalEntity> sources, Set<ExtractedSymptom> targetSymptoms, int maxDepth) {
+        List<String> sourceCuis = sources.stream()
+                .map(UserMedicalEntity::getCui)
+                .filter(cui -> cui != null && !cui.trim().isEmpty())
+                .distinct()
+                .collect(Collectors.toList());
+        logger.info("Finding advanced pathways from {} sources to {} symptoms (max depth: {})", sourceCuis.size(), targetSymptoms.size(), maxDepth);
+        return findMedicalPathways(sourceCuis, targetSymptoms, maxDepth);
+    }
+
+    // הרחבה אחת לכל מקור, עם כל הסימפטומים כיעדים
+    private List<MedicalPathway> findMedicalPathways(List<String> sourceCuis, Set<ExtractedSymptom> targetSymptoms, int maxDepth) {
+        Map<String, ExtractedSymptom> symptomsByCui = symptomsByCui(targetSymptoms);
         List<MedicalPathway> pathways = new ArrayList<>();
 
-        for (ExtractedSymptom symptom : targetSymptoms) {
-            List<Record> records = repository.findMedicalPathwaysQuery(sourceCui, symptom.getCui(), maxDepth);
+        MedicalGraph graph = inMemoryGraph.current();
+        if (graph != null) {
+            for (String sourceCui : sourceCuis) {
+                for (MedicalGraph.ScoredPath path : graph.findPathways(sourceCui, symptomsByCui.keySet(), maxDepth,
+                        MAX_PATHWAYS_PER_SOURCE * symptomsByCui.size(), MAX_PATHWAYS_PER_TARGET)) {
+                    MedicalPathway pathway = pathwayFromGraph(graph, path, sourceCui, symptomsByCui.get(graph.cui(path.target())));
+                    if (pathway.getRiskScore() > MIN_PATHWAY_CONFIDENCE) {
+                        pathways.add(pathway);
+                    }
+                }
+            }
+        } else {
+            List<Record> records = repository.findMedicalPathwaysMultiTargetQuery(
+                    sourceCuis, new ArrayList<>(symptomsByCui.keySet()), maxDepth, MAX_PATHWAYS_PER_TARGET);
 
             for (Record record : records) {
                 try {
-                    MedicalPathway pathway = parsePathwayFromRecord(record, sourceCui, symptom);
+                    ExtractedSymptom symptom = symptomsByCui.get(record.get("targetCui").asString());
+                    if (symptom == null) {
+                        continue;
+                    }
+                    MedicalPathway pathway = parsePathwayFromRecord(record, record.get("sourceCui").asString(), symptom);
                     if (pathway != null && pathway.getRiskScore() > MIN_PATHWAY_CONFIDENCE) {
                         pathways.add(pathway);
                     }
@@ -105,34 +144,59 @@ public class MedicalAnalysisService {
 
     /**
      * חישוב סיכונים עם הגרף
+     * כל גורמי הסיכון וכל הסימפטומים נשלחים בשאילתה אחת - הסיכון לכל סימפטום מסוכם כבר ב-Neo4j
+     * (או מחושב מהגרף שבזיכרון, כשהוא טעון)
      */
     public RiskPropagationResult calculateRiskPropagation(List<UserMedicalEntity> riskSources, Set<ExtractedSymptom> targetSymptoms, double decayFactor) {
         logger.info("Calculating risk propagation from {} sources to {} targets", riskSources.size(), targetSymptoms.size());
         Map<String, Double> symptomRiskScores = new HashMap<>();
         List<RiskPropagationPath> propagationPaths = new ArrayList<>();
 
-        for (UserMedicalEntity riskSource : riskSources) {
-            for (ExtractedSymptom symptom : targetSymptoms) {
-                double initialRisk = calculateInitialRisk(riskSource);
+        List<UserMedicalEntity> sources = riskSources.stream()
+                .filter(source -> source.getCui() != null && !source.getCui().trim().isEmpty())
+                .collect(Collectors.toList());
+        Map<String, ExtractedSymptom> symptomsByCui = symptomsByCui(targetSymptoms);
+
+        MedicalGraph graph = inMemoryGraph.current();
+        if (graph != null) {
+            for (UserMedicalEntity source : sources) {
+                for (MedicalGraph.ScoredPath path : graph.findRiskPaths(source.getCui(), calculateInitialRisk(source),
+                        symptomsByCui.keySet(), decayFactor, MAX_RISK_PROPAGATION_DEPTH, MIN_RISK_PROPAGATION,
+                        RISK_PROPAGATION_PATHS_PER_TARGET * symptomsByCui.size(), MAX_RISK_PATHS_PER_PAIR)) {
+                    ExtractedSymptom symptom = symptomsByCui.get(graph.cui(path.target()));
+                    symptomRiskScores.merge(symptom.getCui(), path.score(), Double::sum);
+                    propagationPaths.add(newRiskPropagationPath(source, symptom, path.score(), path.length()));
+                }
+            }
+        } else {
+            List<Map<String, Object>> sourceParams = sources.stream()
+                    .map(source -> Map.<String, Object>of("source", source.getCui(), "initialRisk", calculateInitialRisk(source)))
+                    .collect(Collectors.toList());
 
-                List<Record> records = repository.findRiskPropagationQuery(
-                        riskSource.getCui(), symptom.getCui(), initialRisk, decayFactor);
+            List<Record> records = repository.findRiskPropagationBatchQuery(
+                    sourceParams, new ArrayList<>(symptomsByCui.keySet()), decayFactor, MAX_RISK_PATHS_PER_PAIR);
 
-                for (Record record : records) {
-                    try {
-                        double finalRisk = record.get("finalRisk").asDouble();
-                        symptomRiskScores.merge(symptom.getCui(), finalRisk, Double::sum);
+            for (Record record : records) {
+                try {
+                    ExtractedSymptom symptom = symptomsByCui.get(record.get("symptomCui").asString());
+                    if (symptom == null) {
+                        continue;
+                    }
+                    symptomRiskScores.merge(symptom.getCui(), record.get("totalRisk").asDouble(), Double::sum);
 
-                        RiskPropagationPath path = parseRiskPropagationPath(record, riskSource, symptom);
-                        if (path != null) {
-                            propagationPaths.add(path);
-                        }
-                    } catch (Exception e) {
-                        logger.error("Error parsing risk propagation path: {}", e.getMessage());
+                    for (Object pathObject : record.get("paths").asList()) {
+                        @SuppressWarnings("unchecked")
+                        Map<String, Object> pathMap = (Map<String, Object>) pathObject;
+                        UserMedicalEntity source = sources.get(((Number) pathMap.get("sourceIndex")).intValue());
+                        propagationPaths.add(newRiskPropagationPath(source, symptom,
+                                ((Number) pathMap.get("finalRisk")).doubleValue(), ((Number) pathMap.get("pathLength")).intValue()));
                     }
+                } catch (Exception e) {
+                    logger.error("Error parsing risk propagation path: {}", e.getMessage());
                 }
             }
         }
+        propagationPaths.sort((p1, p2) -> Double.compare(p2.getFinalRisk(), p1.getFinalRisk()));
 
         RiskPropagationResult result = new RiskPropagationResult();
         result.setSymptomRiskScores(symptomRiskScores);
@@ -145,104 +209,195 @@ public class MedicalAnalysisService {
 
     /**
      * קשר בין תרופות לבין סימפטומים של המשתמש
+     * כל הזוגות תרופה-סימפטום נבדקים בשאילתה אחת
      */
     public List<MedicalConnection> findMedicationSideEffects(List<UserMedicalEntity> medications, List<ExtractedSymptom> symptoms) {
         List<MedicalConnection> connections = new ArrayList<>();
-
-        for (UserMedicalEntity medication : medications) {
-            for (ExtractedSymptom symptom : symptoms) {
-                List<Record> records = repository.findMedicationSideEffectsQuery(medication.getCui(), symptom.getCui());
-
-                for (Record record : records) {
-                    try {
-                        MedicalConnection connection = new MedicalConnection();
-                        connection.setType(MedicalConnection.ConnectionType.valueOf(CONNECTION_SIDE_EFFECT));
-                        connection.setFromEntity(record.get("medName").asString());
-                        connection.setToEntity(record.get("sympName").asString());
-                        connection.setFromCui(medication.getCui());
-                        connection.setToCui(symptom.getCui());
-                        connection.setConfidence(record.get("confidence").asDouble());
-                        connection.setExplanation(String.format("The drug %s may cause a side effect: %s",
-                                medication.getName(), symptom.getName()));
-                        connections.add(connection);
-
-                        logger.info("Found side effect connection: {} -> {}", medication.getName(), symptom.getName());
-                    } catch (Exception e) {
-                        logger.warn("Error processing side effect record: {}", e.getMessage());
+        Map<String, UserMedicalEntity> medicationsByCui = entitiesByCui(medications);
+        Map<String, ExtractedSymptom> symptomsByCui = symptomsByCui(symptoms);
+
+        MedicalGraph graph = inMemoryGraph.current();
+        if (graph != null) {
+            for (UserMedicalEntity medication : medicationsByCui.values()) {
+                for (ExtractedSymptom symptom : symptomsByCui.values()) {
+                    for (MedicalGraph.Connection found : graph.medicationSideEffects(medication.getCui(), symptom.getCui())) {
+                        connections.add(sideEffectConnection(medication, symptom,
+                                graph.name(found.from()), graph.name(found.to()), found.confidence()));
                     }
                 }
             }
+            return connections;
+        }
+
+        List<Record> records = repository.findMedicationSideEffectsBatchQuery(
+                cuiPairs(medicationsByCui.keySet(), symptomsByCui.keySet()));
+
+        for (Record record : records) {
+            try {
+                UserMedicalEntity medication = medicationsByCui.get(record.get("fromCui").asString());
+                ExtractedSymptom symptom = symptomsByCui.get(record.get("toCui").asString());
+                connections.add(sideEffectConnection(medication, symptom, record.get("medName").asString(),
+                        record.get("sympName").asString(), record.get("confidence").asDouble()));
+            } catch (Exception e) {
+                logger.warn("Error processing side effect record: {}", e.getMessage());
+            }
         }
         return connections;
     }
 
+    private MedicalConnection sideEffectConnection(UserMedicalEntity medication, ExtractedSymptom symptom,
+                                                   String medName, String sympName, double confidence) {
+        MedicalConnection connection = new MedicalConnection();
+        connection.setType(MedicalConnection.ConnectionType.valueOf(CONNECTION_SIDE_EFFECT));
+        connection.setFromEntity(medName);
+        connection.setToEntity(sympName);
+        connection.setFromCui(medication.getCui());
+        connection.setToCui(symptom.getCui());
+        connection.setConfidence(confidence);
+        connection.setExplanation(String.format("The drug %s may cause a side effect: %s",
+                medication.getName(), symptom.getName()));
+
+        logger.info("Found side effect connection: {} -> {}", medication.getName(), symptom.getName());
+        return connection;
+    }
+
     /**
      * קשר בין מחלה וסימפטומים
+     * כל הזוגות מחלה-סימפטום נבדקים בשאילתה אחת
      */
     public List<MedicalConnection> findDiseaseSymptoms(List<UserMedicalEntity> diseases, List<ExtractedSymptom> symptoms) {
         List<MedicalConnection> connections = new ArrayList<>();
-
-        for (UserMedicalEntity disease : diseases) {
-            for (ExtractedSymptom symptom : symptoms) {
-                List<Record> records = repository.findDiseaseSymptomsQuery(disease.getCui(), symptom.getCui());
-
-                for (Record record : records) {
-                    try {
-                        MedicalConnection connection = new MedicalConnection();
-                        connection.setType(MedicalConnection.ConnectionType.valueOf(CONNECTION_DISEASE_SYMPTOM));
-                        connection.setFromEntity(record.get("disName").asString());
-                        connection.setToEntity(record.get("sympName").asString());
-                        connection.setFromCui(disease.getCui());
-                        connection.setToCui(symptom.getCui());
-                        connection.setConfidence(record.get("confidence").asDouble());
-                        connection.setExplanation(
-                                String.format("המחלה %s יכולה להיות הגורם לסימפטום: %s",
-                                        disease.getName(), symptom.getName())
-                        );
-                        connections.add(connection);
-
-                        logger.info("Found disease-symptom connection: {} -> {}", disease.getName(), symptom.getName());
-                    } catch (Exception e) {
-                        logger.warn("Error processing disease-symptom record: {}", e.getMessage());
+        Map<String, UserMedicalEntity> diseasesByCui = entitiesByCui(diseases);
+        Map<String, ExtractedSymptom> symptomsByCui = symptomsByCui(symptoms);
+
+        MedicalGraph graph = inMemoryGraph.current();
+        if (graph != null) {
+            for (UserMedicalEntity disease : diseasesByCui.values()) {
+                for (ExtractedSymptom symptom : symptomsByCui.values()) {
+                    for (MedicalGraph.Connection found : graph.diseaseSymptoms(disease.getCui(), symptom.getCui())) {
+                        connections.add(diseaseSymptomConnection(disease, symptom,
+                                graph.name(found.from()), graph.name(found.to()), found.confidence()));
                     }
                 }
             }
+            return connections;
+        }
+
+        List<Record> records = repository.findDiseaseSymptomsBatchQuery(
+                cuiPairs(diseasesByCui.keySet(), symptomsByCui.keySet()));
+
+        for (Record record : records) {
+            try {
+                UserMedicalEntity disease = diseasesByCui.get(record.get("fromCui").asString());
+                ExtractedSymptom symptom = symptomsByCui.get(record.get("toCui").asString());
+                connections.add(diseaseSymptomConnection(disease, symptom, record.get("disName").asString(),
+                        record.get("sympName").asString(), record.get("confidence").asDouble()));
+            } catch (Exception e) {
+                logger.warn("Error processing disease-symptom record: {}", e.getMessage());
+            }
         }
         return connections;
     }
 
+    private MedicalConnection diseaseSymptomConnection(UserMedicalEntity disease, ExtractedSymptom symptom,
+                                                       String disName, String sympName, double confidence) {
+        MedicalConnection connection = new MedicalConnection();
+        connection.setType(MedicalConnection.ConnectionType.valueOf(CONNECTION_DISEASE_SYMPTOM));
+        connection.setFromEntity(disName);
+        connection.setToEntity(sympName);
+        connection.setFromCui(disease.getCui());
+        connection.setToCui(symptom.getCui());
+        connection.setConfidence(confidence);
+        connection.setExplanation(
+                String.format("המחלה %s יכולה להיות הגורם לסימפטום: %s",
+                        disease.getName(), symptom.getName())
+        );
+
+        logger.info("Found disease-symptom connection: {} -> {}", disease.getName(), symptom.getName());
+        return connection;
+    }
+
     /**
      * חיפוש טיפול אפשרי לסימפטום
+     * כל הסימפטומים נבדקים בשאילתה אחת
      */
     public List<MedicalConnection> findPossibleTreatments(List<ExtractedSymptom> symptoms) {
         List<MedicalConnection> connections = new ArrayList<>();
+        Map<String, ExtractedSymptom> symptomsByCui = symptomsByCui(symptoms);
+
+        MedicalGraph graph = inMemoryGraph.current();
+        if (graph != null) {
+            for (ExtractedSymptom symptom : symptomsByCui.values()) {
+                for (MedicalGraph.Treatment found : graph.possibleTreatments(symptom.getCui(), MAX_LOOKUP_RESULTS_PER_ENTITY)) {
+                    connections.add(treatmentConnection(symptom, graph.name(found.medication()),
+                            graph.cui(found.medication()), graph.name(found.disease()), found.confidence()));
+                }
+            }
+            return connections;
+        }
 
-        for (ExtractedSymptom symptom : symptoms) {
-            List<Record> records = repository.findPossibleTreatmentsQuery(symptom.getCui());
+        List<Record> records = repository.findPossibleTreatmentsBatchQuery(new ArrayList<>(symptomsByCui.keySet()));
 
-            // עיבוד התוצאות
-            for (Record record : records) {
-                try {
-                    MedicalConnection connection = new MedicalConnection();
-                    connection.setType(MedicalConnection.ConnectionType.valueOf(CONNECTION_TREATMENT));
-                    connection.setFromEntity(symptom.getName());
-                    connection.setToEntity(record.get("medName").asString());
-                    connection.setFromCui(symptom.getCui());
-                    connection.setToCui(record.get("medCui").asString());
-                    connection.setConfidence(record.get("confidence").asDouble());
-                    connection.setExplanation(
-                            String.format("התרופה %s עשויה לעזור בטיפול בסימפטום %s (דרך %s)",
-                                    record.get("medName").asString(), symptom.getName(), record.get("disName").asString())
-                    );
-                    connections.add(connection);
-                } catch (Exception e) {
-                    logger.warn("Error processing treatment record: {}", e.getMessage());
-                }
+        // עיבוד התוצאות
+        for (Record record : records) {
+            try {
+                ExtractedSymptom symptom = symptomsByCui.get(record.get("sympCui").asString());
+                connections.add(treatmentConnection(symptom, record.get("medName").asString(),
+                        record.get("medCui").asString(), record.get("disName").asString(), record.get("confidence").asDouble()));
+            } catch (Exception e) {
+                logger.warn("Error processing treatment record: {}", e.getMessage());
             }
         }
         return connections;
     }
 
+    private MedicalConnection treatmentConnection(ExtractedSymptom symptom, String medName, String medCui,
+                                                  String disName, double confidence) {
+        MedicalConnection connection = new MedicalConnection();
+        connection.setType(MedicalConnection.ConnectionType.valueOf(CONNECTION_TREATMENT));
+        connection.setFromEntity(symptom.getName());
+        connection.setToEntity(medName);
+        connection.setFromCui(symptom.getCui());
+        connection.setToCui(medCui);
+        connection.setConfidence(confidence);
+        connection.setExplanation(
+                String.format("התרופה %s עשויה לעזור בטיפול בסימפטום %s (דרך %s)",
+                        medName, symptom.getName(), disName)
+        );
+        return connection;
+    }
+
+    // כל הזוגות (from, to) לשאילתות ה-UNWIND
+    private List<Map<String, Object>> cuiPairs(Collection<String> fromCuis, Collection<String> toCuis) {
+        List<Map<String, Object>> pairs = new ArrayList<>(fromCuis.size() * toCuis.size());
+        for (String fromCui : fromCuis) {
+            for (String toCui : toCuis) {
+                pairs.add(Map.of("from", fromCui, "to", toCui));
+            }
+        }
+        return pairs;
+    }
+
+    // ישות אחת לכל CUI - שורות התוצאה מסומנות ב-CUI בלבד
+    private Map<String, UserMedicalEntity> entitiesByCui(List<UserMedicalEntity> entities) {
+        Map<String, UserMedicalEntity> byCui = new LinkedHashMap<>();
+        for (UserMedicalEntity entity : entities) {
+            if (entity.getCui() != null && !entity.getCui().trim().isEmpty()) {
+                byCui.putIfAbsent(entity.getCui(), entity);
+            }
+        }
+        return byCui;
+    }
+
+    private Map<String, ExtractedSymptom> symptomsByCui(Collection<ExtractedSymptom> symptoms) {
+        Map<String, ExtractedSymptom> byCui = new LinkedHashMap<>();
+        for (ExtractedSymptom symptom : symptoms) {
+            if (symptom.getCui() != null && !symptom.getCui().trim().isEmpty()) {
+                byCui.putIfAbsent(symptom.getCui(), symptom);
+            }
+        }
+        return byCui;
+    }
 
     private List<MedicalCommunity> detectCommunitiesWithGDS(List<String> userCuis) {
         List<MedicalCommunity> communities = new ArrayList<>();
@@ -331,49 +486,70 @@ public class MedicalAnalysisService {
 
     private MedicalPathway parsePathwayFromRecord(Record record, String sourceCui, ExtractedSymptom targetSymptom) {
         try {
-            List<Object> pathNodes = record.get("pathNodes").asList();
-            List<Object> pathRelationships = record.get("pathRelationships").asList();
-            double riskScore = record.get("riskScore").asDouble();
-            int pathLength = record.get("pathLength").asInt();
-
-            MedicalPathway pathway = new MedicalPathway();
-            pathway.setSourceCui(sourceCui);
-            pathway.setTargetCui(targetSymptom.getCui());
-            pathway.setTargetName(targetSymptom.getName());
-            pathway.setRiskScore(riskScore);
-            pathway.setPathLength(pathLength);
-            pathway.setConfidence(calculatePathwayConfidence(riskScore, pathLength));
-
-            List<PathNode> nodes = pathNodes.stream()
+            List<PathNode> nodes = record.get("pathNodes").asList().stream()
                     .map(node -> {
                         @SuppressWarnings("unchecked")
                         Map<String, Object> nodeMap = (Map<String, Object>) node;
-                        PathNode pathNode = new PathNode();
-                        pathNode.setCui((String) nodeMap.get("cui"));
-                        pathNode.setName((String) nodeMap.get("name"));
-                        pathNode.setType((String) nodeMap.get("type"));
-                        return pathNode;
+                        return newPathNode((String) nodeMap.get("cui"), (String) nodeMap.get("name"), (String) nodeMap.get("type"));
                     }).collect(Collectors.toList());
-            pathway.setNodes(nodes);
 
-            List<PathRelationship> relationships = pathRelationships.stream()
+            List<PathRelationship> relationships = record.get("pathRelationships").asList().stream()
                     .map(rel -> {
                         @SuppressWarnings("unchecked")
                         Map<String, Object> relMap = (Map<String, Object>) rel;
-                        PathRelationship pathRel = new PathRelationship();
-                        pathRel.setType((String) relMap.get("type"));
-                        pathRel.setWeight(((Number) relMap.get("weight")).doubleValue());
-                        return pathRel;
+                        return newPathRelationship((String) relMap.get("type"), ((Number) relMap.get("weight")).doubleValue());
                     }).collect(Collectors.toList());
-            pathway.setRelationships(relationships);
-            pathway.setExplanation(generatePathwayExplanation(pathway));
-            return pathway;
+
+            return newPathway(sourceCui, targetSymptom, record.get("riskScore").asDouble(),
+                    record.get("pathLength").asInt(), nodes, relationships);
         } catch (Exception e) {
             logger.error("Error parsing pathway: {}", e.getMessage());
             return null;
         }
     }
 
+    private MedicalPathway pathwayFromGraph(MedicalGraph graph, MedicalGraph.ScoredPath path, String sourceCui, ExtractedSymptom targetSymptom) {
+        List<PathNode> nodes = new ArrayList<>(path.nodes().length);
+        for (int node : path.nodes()) {
+            nodes.add(newPathNode(graph.cui(node), graph.name(node), graph.label(node)));
+        }
+        List<PathRelationship> relationships = new ArrayList<>(path.edges().length);
+        for (int edge : path.edges()) {
+            relationships.add(newPathRelationship(graph.relationshipType(edge), graph.weight(edge)));
+        }
+        return newPathway(sourceCui, targetSymptom, path.score(), path.length(), nodes, relationships);
+    }
+
+    private MedicalPathway newPathway(String sourceCui, ExtractedSymptom targetSymptom, double riskScore, int pathLength,
+                                      List<PathNode> nodes, List<PathRelationship> relationships) {
+        MedicalPathway pathway = new MedicalPathway();
+        pathway.setSourceCui(sourceCui);
+        pathway.setTargetCui(targetSymptom.getCui());
+        pathway.setTargetName(targetSymptom.getName());
+        pathway.setRiskScore(riskScore);
+        pathway.setPathLength(pathLength);
+        pathway.setConfidence(calculatePathwayConfidence(riskScore, pathLength));
+        pathway.setNodes(nodes);
+        pathway.setRelationships(relationships);
+        pathway.setExplanation(generatePathwayExplanation(pathway));
+        return pathway;
+    }
+
+    private static PathNode newPathNode(String cui, String name, String type) {
+        PathNode pathNode = new PathNode();
+        pathNode.setCui(cui);
+        pathNode.setName(name);
+        pathNode.setType(type);
+        return pathNode;
+    }
+
+    private static PathRelationship newPathRelationship(String type, double weight) {
+        PathRelationship pathRel = new PathRelationship();
+        pathRel.setType(type);
+        pathRel.setWeight(weight);
+        return pathRel;
+    }
+
     private MedicalCommunity parseCommunityFromRecord(Record record) {
         try {
             MedicalCommunity community = new MedicalCommunity();
@@ -405,24 +581,17 @@ public class MedicalAnalysisService {
         }
     }
 
-    private RiskPropagationPath parseRiskPropagationPath(Record record, UserMedicalEntity source, ExtractedSymptom target) {
-        try {
-            int pathLength = record.get("pathLength").asInt();
-
-            RiskPropagationPath path = new RiskPropagationPath();
-            path.setSourceCui(source.getCui());
-            path.setSourceName(source.getName());
-            path.setTargetCui(target.getCui());
-            path.setTargetName(target.getName());
-            path.setFinalRisk(record.get("finalRisk").asDouble());
-            path.setPathLength(pathLength);
-            path.setDecayFactor(calculateDecayFactor(pathLength));
-
-            return path;
-        } catch (Exception e) {
-            logger.error("Error parsing path: {}", e.getMessage());
-            return null;
-        }
+    private RiskPropagationPath newRiskPropagationPath(UserMedicalEntity source, ExtractedSymptom target, double finalRisk, int pathLength) {
+        RiskPropagationPath path = new RiskPropagationPath();
+        path.setSourceCui(source.getCui());
+        path.setSourceName(source.getName());
+        path.setTargetCui(target.getCui());
+        path.setTargetName(target.getName());
+        path.setFinalRisk(finalRisk);
+        path.setPathLength(pathLength);
+        path.setDecayFactor(calculateDecayFactor(pathLength));
+
+        return path;
     }
 
     private double calculateInitialRisk(UserMedicalEntity entity) {
@@ -479,27 +648,30 @@ public class MedicalAnalysisService {
      */
     public List<MedicalConnection> findRecommendedTests(List<ExtractedSymptom> symptoms) {
         List<MedicalConnection> connections = new ArrayList<>();
+        Map<String, ExtractedSymptom> symptomsByCui = symptomsByCui(symptoms);
+
+        MedicalGraph graph = inMemoryGraph.current();
+        if (graph != null) {
+            for (ExtractedSymptom symptom : symptomsByCui.values()) {
+                for (MedicalGraph.Connection found : graph.requiredTests(symptom.getCui(), EntityTypes.SYMPTOM, MAX_LOOKUP_RESULTS_PER_ENTITY)) {
+                    connections.add(testConnection(symptom.getName(), symptom.getCui(), graph.name(found.to()),
+                            graph.cui(found.to()), found.confidence(), "Test %s recommended for symptom %s"));
+                }
+            }
+            return connections;
+        }
 
-        for (ExtractedSymptom symptom : symptoms) {
-            List<Record> records = repository.findTestsForSymptomQuery(symptom.getCui());
+        List<Record> records = repository.findTestsForSymptomsBatchQuery(new ArrayList<>(symptomsByCui.keySet()));
 
-            for (Record record : records) {
-                try {
-                    MedicalConnection connection = new MedicalConnection();
-                    connection.setType(MedicalConnection.ConnectionType.REQUIRES_TEST);
-                    connection.setFromEntity(symptom.getName());
-                    connection.setToEntity(record.get("testName").asString());
-                    connection.setFromCui(symptom.getCui());
-                    connection.setToCui(record.get("testCui").asString());
-                    connection.setConfidence(record.get("confidence").asDouble());
-                    connection.setExplanation(String.format("Test %s recommended for symptom %s",
-                            record.get("testName").asString(), symptom.getName()));
-                    connections.add(connection);
-
-                    logger.debug("Found test: {} -> {}", symptom.getName(), record.get("testName").asString());
-                } catch (Exception e) {
-                    logger.warn("Error processing test: {}", e.getMessage());
-                }
+        for (Record record : records) {
+            try {
+                ExtractedSymptom symptom = symptomsByCui.get(record.get("sourceCui").asString());
+                connections.add(testConnection(symptom.getName(), symptom.getCui(), record.get("testName").asString(),
+                        record.get("testCui").asString(), record.get("confidence").asDouble(), "Test %s recommended for symptom %s"));
+
+                logger.debug("Found test: {} -> {}", symptom.getName(), record.get("testName").asString());
+            } catch (Exception e) {
+                logger.warn("Error processing test: {}", e.getMessage());
             }
         }
         return connections;
@@ -510,30 +682,47 @@ public class MedicalAnalysisService {
      */
     public List<MedicalConnection> findTestsForDiseases(List<UserMedicalEntity> diseases) {
         List<MedicalConnection> connections = new ArrayList<>();
+        Map<String, UserMedicalEntity> diseasesByCui = entitiesByCui(diseases);
+
+        MedicalGraph graph = inMemoryGraph.current();
+        if (graph != null) {
+            for (UserMedicalEntity disease : diseasesByCui.values()) {
+                for (MedicalGraph.Connection found : graph.requiredTests(disease.getCui(), EntityTypes.DISEASE, MAX_LOOKUP_RESULTS_PER_ENTITY)) {
+                    connections.add(testConnection(disease.getName(), disease.getCui(), graph.name(found.to()),
+                            graph.cui(found.to()), found.confidence(), "Test %s recommended for monitoring %s"));
+                }
+            }
+            return connections;
+        }
 
-        for (UserMedicalEntity disease : diseases) {
-            List<Record> records = repository.findTestsForDiseaseQuery(disease.getCui());
+        List<Record> records = repository.findTestsForDiseasesBatchQuery(new ArrayList<>(diseasesByCui.keySet()));
 
-            for (Record record : records) {
-                try {
-                    MedicalConnection connection = new MedicalConnection();
-                    connection.setType(MedicalConnection.ConnectionType.REQUIRES_TEST);
-                    connection.setFromEntity(disease.getName());
-                    connection.setToEntity(record.get("testName").asString());
-                    connection.setFromCui(disease.getCui());
-                    connection.setToCui(record.get("testCui").asString());
-                    connection.setConfidence(record.get("confidence").asDouble());
-                    connection.setExplanation(String.format("Test %s recommended for monitoring %s",
-                            record.get("testName").asString(), disease.getName()));
-                    connections.add(connection);
-                } catch (Exception e) {
-                    logger.warn("Error processing disease test: {}", e.getMessage());
-                }
+        for (Record record : records) {
+            try {
+                UserMedicalEntity disease = diseasesByCui.get(record.get("sourceCui").asString());
+                connections.add(testConnection(disease.getName(), disease.getCui(), record.get("testName").asString(),
+                        record.get("testCui").asString(), record.get("confidence").asDouble(), "Test %s recommended for monitoring %s"));
+            } catch (Exception e) {
+                logger.warn("Error processing disease test: {}", e.getMessage());
             }
         }
         return connections;
     }
 
+    // explanationFormat מקבל את שם הבדיקה ואת שם הישות
+    private MedicalConnection testConnection(String fromName, String fromCui, String testName, String testCui,
+                                             double confidence, String explanationFormat) {
+        MedicalConnection connection = new MedicalConnection();
+        connection.setType(MedicalConnection.ConnectionType.REQUIRES_TEST);
+        connection.setFromEntity(fromName);
+        connection.setToEntity(testName);
+        connection.setFromCui(fromCui);
+        connection.setToCui(testCui);
+        connection.setConfidence(confidence);
+        connection.setExplanation(String.format(explanationFormat, testName, fromName));
+        return connection;
+    }
+
     // Data classes
     @Data
     public static class MedicalPathway {
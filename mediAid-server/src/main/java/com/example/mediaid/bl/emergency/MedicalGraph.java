@@ -0,0 +1,532 @@
+package com.example.mediaid.bl.emergency;
+
+import java.util.*;
+
+import static com.example.mediaid.constants.MedicalAnalysisConstants.IN_MEMORY_MAX_EXPANSION_STEPS;
+import static com.example.mediaid.neo4j.EntityTypes.*;
+import static com.example.mediaid.neo4j.RelationshipTypes.*;
+
+/**
+ * עותק בזיכרון של החלק הקליני בגרף הרפואי - לניתוח בלי סבב מול Neo4j
+ * הצמתים ממוספרים 0..n-1 והקשרים שמורים ב-CSR: לכל צומת טווח רציף במערכים הפרימיטיביים של היעדים,
+ * הסוגים והמשקלים, ובנוסף אינדקס של הקשרים הנכנסים. הגרף לא משתנה אחרי הבנייה - טעינה מחדש בונה גרף חדש.
+ * השאילתות מחקות את השאילתות של Neo4jMedicalRepository, עם ייחודיות צמתים במסלול (NODE_PATH).
+ * לכל צומת מסכת ביטים של התוויות מ-LABELS שלו (לצומת יכולות להיות כמה), כמו סיווג הסוגים ב-MrrelClassifier.
+ * צומת בלי אף אחת מהן נשמר רק כצומת ביניים להרחבת הסיכון, שב-Neo4j לא מסננת תוויות -
+ * ואליו נטענים רק קשרי הסיכון (RISK_TYPES).
+ */
+public final class MedicalGraph {
+
+    /** התווית של צמתי גורמי הסיכון (EntityTypes.RISK_FACTOR היא RiskFactorSer) */
+    public static final String RISK_FACTOR_LABEL = "RiskFactor";
+
+    /** התוויות שנטענות; המיקום ברשימה הוא הביט של התווית במסכה */
+    public static final List<String> LABELS = List.of(DISEASE, MEDICATION, SYMPTOM, RISK_FACTOR_LABEL, LABORATORY_TEST);
+
+    /** סוגי הקשרים שנטענים; המיקום ברשימה הוא קוד הסוג */
+    public static final List<String> RELATIONSHIP_TYPES = List.of(
+            TREATS, CAUSES_SIDE_EFFECT, SIDE_EFFECT_OF, INDICATES, CAUSES_SYMPTOM,
+            RISK_FACTOR_FOR, INFLUENCES, LEADS_TO, REQUIRES_TEST);
+
+    private static final int PATHWAY_TYPES = typeMask(TREATS, CAUSES_SIDE_EFFECT, INDICATES, CAUSES_SYMPTOM, RISK_FACTOR_FOR, INFLUENCES);
+    private static final int PATHWAY_LABELS = labelMask(DISEASE, MEDICATION, SYMPTOM, RISK_FACTOR_LABEL);
+
+    /** סוגי הקשרים של הרחבת הסיכון - נטענים גם לצמתים בלי תווית מ-LABELS */
+    public static final List<String> RISK_RELATIONSHIP_TYPES = List.of(RISK_FACTOR_FOR, CAUSES_SYMPTOM, CAUSES_SIDE_EFFECT, LEADS_TO);
+
+    private static final int RISK_TYPES = typeMask(RISK_RELATIONSHIP_TYPES.toArray(new String[0]));
+    private static final int ANY_LABEL = -1;
+
+    // הדעיכה לפי אורך המסלול, כמו ה-CASE בשאילתת המסלולים
+    private static final double[] PATHWAY_LENGTH_FACTORS = {0.85, 0.72, 0.61, 0.52, 0.44};
+    private static final double LONG_PATHWAY_FACTOR = 0.35;
+
+    private final String[] cuis;
+    private final String[] names;
+    private final byte[] labelMasks;
+    private final String[] displayLabels;
+    private final Map<String, Integer> ids;
+
+    // קשרים יוצאים: הקשרים של צומת v הם [outOffsets[v], outOffsets[v + 1])
+    private final int[] outOffsets;
+    private final int[] sources;
+    private final int[] targets;
+    private final byte[] types;
+    private final float[] weights;
+
+    // קשרים נכנסים: inEdges[inOffsets[v] .. inOffsets[v + 1]) הם האינדקסים של הקשרים שנכנסים ל-v
+    private final int[] inOffsets;
+    private final int[] inEdges;
+
+    /**
+     * מסלול מהמקור ליעד - הצמתים, הקשרים (אינדקסים בגרף) והציון
+     */
+    public record ScoredPath(int[] nodes, int[] edges, double score) {
+        public int length() {
+            return edges.length;
+        }
+
+        public int target() {
+            return nodes[nodes.length - 1];
+        }
+    }
+
+    /**
+     * קשר ישיר בין שתי ישויות
+     */
+    public record Connection(int from, int to, double confidence) {
+    }
+
+    /**
+     * תרופה שמטפלת במחלה שגורמת לסימפטום
+     */
+    public record Treatment(int medication, int disease, double confidence) {
+    }
+
+    @FunctionalInterface
+    private interface PathScorer {
+        /** @return הציון, או NaN אם המסלול לא נכנס לתוצאה */
+        double score(int[] nodes, int[] edges, int length);
+    }
+
+    private MedicalGraph(String[] cuis, String[] names, byte[] labelMasks, String[] displayLabels, Map<String, Integer> ids,
+                         int[] outOffsets, int[] sources, int[] targets, byte[] types, float[] weights,
+                         int[] inOffsets, int[] inEdges) {
+        this.cuis = cuis;
+        this.names = names;
+        this.labelMasks = labelMasks;
+        this.displayLabels = displayLabels;
+        this.ids = ids;
+        this.outOffsets = outOffsets;
+        this.sources = sources;
+        this.targets = targets;
+        this.types = types;
+        this.weights = weights;
+        this.inOffsets = inOffsets;
+        this.inEdges = inEdges;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public int nodeCount() {
+        return cuis.length;
+    }
+
+    public int relationshipCount() {
+        return targets.length;
+    }
+
+    public String cui(int node) {
+        return cuis[node];
+    }
+
+    public String name(int node) {
+        return names[node];
+    }
+
+    /**
+     * התווית שמוצגת לצומת - התווית הראשונה שלו מלבד Concept, כמו type בשאילתות Neo4j
+     */
+    public String label(int node) {
+        return displayLabels[node];
+    }
+
+    public boolean hasLabel(int node, String label) {
+        return (labelMasks[node] & labelMask(label)) != 0;
+    }
+
+    public String relationshipType(int edge) {
+        return RELATIONSHIP_TYPES.get(types[edge]);
+    }
+
+    public double weight(int edge) {
+        return weights[edge];
+    }
+
+    public int source(int edge) {
+        return sources[edge];
+    }
+
+    public int target(int edge) {
+        return targets[edge];
+    }
+
+    /**
+     * מסלולים רפואיים ממקור אחד לכל היעדים - כמו findMedicalPathwaysMultiTargetQuery
+     * ציון: ממוצע המשקלים * דעיכה לפי האורך; עד topK מסלולים לכל יעד
+     *
+     * @param expandLimit - מספר המסלולים שמגיעים ליעד שאחריו ההרחבה נעצרת (limit של apoc)
+     */
+    public List<ScoredPath> findPathways(String sourceCui, Collection<String> targetCuis,
+                                         int maxDepth, int expandLimit, int topK) {
+        return expand(sourceCui, targetCuis, PATHWAY_TYPES, PATHWAY_LABELS, maxDepth, expandLimit, topK,
+                (nodes, edges, length) -> {
+                    double total = 0;
+                    for (int i = 0; i < length; i++) {
+                        total += weights[edges[i]];
+                    }
+                    double factor = length <= PATHWAY_LENGTH_FACTORS.length
+                            ? PATHWAY_LENGTH_FACTORS[length - 1] : LONG_PATHWAY_FACTOR;
+                    return total / length * factor;
+                });
+    }
+
+    /**
+     * מסלולי סיכון ממקור אחד לכל היעדים - כמו findRiskPropagationBatchQuery
+     * ציון: initialRisk * מכפלת המשקלים * decay^length; מסלולים עד minRisk לא נספרים.
+     * בלי סינון תוויות - גם דרך צמתי הביניים שאין להם תווית מ-LABELS.
+     */
+    public List<ScoredPath> findRiskPaths(String sourceCui, double initialRisk, Collection<String> targetCuis,
+                                          double decay, int maxDepth, double minRisk, int expandLimit, int topK) {
+        return expand(sourceCui, targetCuis, RISK_TYPES, ANY_LABEL, maxDepth, expandLimit, topK,
+                (nodes, edges, length) -> {
+                    double risk = initialRisk;
+                    for (int i = 0; i < length; i++) {
+                        risk *= weights[edges[i]];
+                    }
+                    risk *= Math.pow(decay, length);
+                    return risk > minRisk ? risk : Double.NaN;
+                });
+    }
+
+    /**
+     * קשר בין תרופה לסימפטום - CAUSES_SIDE_EFFECT מהתרופה, או SIDE_EFFECT_OF בכל כיוון
+     */
+    public List<Connection> medicationSideEffects(String medCui, String sympCui) {
+        return directConnections(node(medCui, MEDICATION), node(sympCui, SYMPTOM),
+                typeMask(CAUSES_SIDE_EFFECT, SIDE_EFFECT_OF), typeMask(SIDE_EFFECT_OF));
+    }
+
+    /**
+     * קשר בין מחלה לסימפטום - CAUSES_SYMPTOM מהמחלה, או INDICATES מהסימפטום
+     */
+    public List<Connection> diseaseSymptoms(String disCui, String sympCui) {
+        return directConnections(node(disCui, DISEASE), node(sympCui, SYMPTOM),
+                typeMask(CAUSES_SYMPTOM), typeMask(INDICATES));
+    }
+
+    /**
+     * תרופות שמטפלות במחלות שגורמות לסימפטום, לפי ממוצע שני המשקלים
+     */
+    public List<Treatment> possibleTreatments(String sympCui, int limit) {
+        int symptom = node(sympCui, SYMPTOM);
+        if (symptom < 0) {
+            return List.of();
+        }
+        int causesSymptom = RELATIONSHIP_TYPES.indexOf(CAUSES_SYMPTOM);
+        int treats = RELATIONSHIP_TYPES.indexOf(TREATS);
+        int disease = labelMask(DISEASE);
+        int medication = labelMask(MEDICATION);
+
+        Set<Treatment> treatments = new LinkedHashSet<>();
+        for (int i = inOffsets[symptom]; i < inOffsets[symptom + 1]; i++) {
+            int cause = inEdges[i];
+            int dis = sources[cause];
+            if (types[cause] != causesSymptom || (labelMasks[dis] & disease) == 0) {
+                continue;
+            }
+            for (int j = inOffsets[dis]; j < inOffsets[dis + 1]; j++) {
+                int treatment = inEdges[j];
+                int med = sources[treatment];
+                if (types[treatment] == treats && (labelMasks[med] & medication) != 0) {
+                    treatments.add(new Treatment(med, dis, (weights[cause] + weights[treatment]) / 2.0));
+                }
+            }
+        }
+        return treatments.stream()
+                .sorted(Comparator.comparingDouble(Treatment::confidence).reversed())
+                .limit(limit)
+                .toList();
+    }
+
+    /**
+     * בדיקות מעבדה (REQUIRES_TEST) לישות מהתווית הנתונה, מהמשקל הגבוה לנמוך
+     */
+    public List<Connection> requiredTests(String cui, String label, int limit) {
+        int from = node(cui, label);
+        if (from < 0) {
+            return List.of();
+        }
+        int requiresTest = RELATIONSHIP_TYPES.indexOf(REQUIRES_TEST);
+        int laboratoryTest = labelMask(LABORATORY_TEST);
+
+        List<Connection> tests = new ArrayList<>();
+        for (int e = outOffsets[from]; e < outOffsets[from + 1]; e++) {
+            if (types[e] == requiresTest && (labelMasks[targets[e]] & laboratoryTest) != 0) {
+                tests.add(new Connection(from, targets[e], weights[e]));
+            }
+        }
+        return tests.stream()
+                .sorted(Comparator.comparingDouble(Connection::confidence).reversed())
+                .limit(limit)
+                .toList();
+    }
+
+    // צומת עם ה-CUI והתווית, או -1
+    private int node(String cui, String label) {
+        Integer id = cui != null ? ids.get(cui) : null;
+        return id != null && hasLabel(id, label) ? id : -1;
+    }
+
+    // קשרים from->to מהסוגים ב-forwardTypes, וקשרים to->from מהסוגים ב-backwardTypes; שורות זהות נספרות פעם אחת (כמו UNION)
+    private List<Connection> directConnections(int from, int to, int forwardTypes, int backwardTypes) {
+        if (from < 0 || to < 0) {
+            return List.of();
+        }
+        Set<Connection> connections = new LinkedHashSet<>();
+        for (int e = outOffsets[from]; e < outOffsets[from + 1]; e++) {
+            if (targets[e] == to && (forwardTypes & (1 << types[e])) != 0) {
+                connections.add(new Connection(from, to, weights[e]));
+            }
+        }
+        for (int e = outOffsets[to]; e < outOffsets[to + 1]; e++) {
+            if (targets[e] == from && (backwardTypes & (1 << types[e])) != 0) {
+                connections.add(new Connection(from, to, weights[e]));
+            }
+        }
+        return new ArrayList<>(connections);
+    }
+
+    private List<ScoredPath> expand(String sourceCui, Collection<String> targetCuis, int typeMask, int labelMask,
+                                    int maxDepth, int expandLimit, int topK, PathScorer scorer) {
+        Integer source = sourceCui != null ? ids.get(sourceCui) : null;
+        if (source == null || maxDepth < 1) {
+            return List.of();
+        }
+        int[] targetIds = targetCuis.stream()
+                .map(ids::get)
+                .filter(Objects::nonNull)
+                .mapToInt(Integer::intValue)
+                .distinct()
+                .sorted()
+                .toArray();
+        if (targetIds.length == 0) {
+            return List.of();
+        }
+
+        // העמקה הדרגתית - המסלולים הקצרים נמצאים קודם, כמו ב-BFS של apoc, בלי לשמור את כל החזית בזיכרון
+        Expansion expansion = new Expansion(targetIds, typeMask, labelMask, maxDepth, expandLimit, scorer);
+        for (int depth = 1; depth <= maxDepth && !expansion.done(); depth++) {
+            expansion.depth = depth;
+            expansion.visit(source, 0);
+        }
+
+        Map<Integer, List<ScoredPath>> byTarget = new HashMap<>();
+        for (ScoredPath path : expansion.results) {
+            byTarget.computeIfAbsent(path.target(), t -> new ArrayList<>()).add(path);
+        }
+        Comparator<ScoredPath> ranking = Comparator.comparingDouble(ScoredPath::score).reversed()
+                .thenComparingInt(ScoredPath::length);
+        List<ScoredPath> best = new ArrayList<>();
+        for (List<ScoredPath> paths : byTarget.values()) {
+            paths.sort(ranking);
+            best.addAll(paths.subList(0, Math.min(topK, paths.size())));
+        }
+        best.sort(ranking);
+        return best;
+    }
+
+    /**
+     * הרחבה אחת ממקור - DFS לעומק הנוכחי, עם המסלול הנוכחי במערכים קבועים
+     */
+    private final class Expansion {
+        private final int[] targetIds;
+        private final int typeMask;
+        private final int labelMask;
+        private final int limit;
+        private final PathScorer scorer;
+        private final int[] pathNodes;
+        private final int[] pathEdges;
+        private final List<ScoredPath> results = new ArrayList<>();
+        private int depth;
+        private int found;
+        private long steps;
+
+        private Expansion(int[] targetIds, int typeMask, int labelMask, int maxDepth, int limit, PathScorer scorer) {
+            this.targetIds = targetIds;
+            this.typeMask = typeMask;
+            this.labelMask = labelMask;
+            this.limit = limit;
+            this.scorer = scorer;
+            this.pathNodes = new int[maxDepth + 1];
+            this.pathEdges = new int[maxDepth];
+        }
+
+        private boolean done() {
+            return found >= limit || steps >= IN_MEMORY_MAX_EXPANSION_STEPS;
+        }
+
+        private void visit(int node, int level) {
+            pathNodes[level] = node;
+            if (level == depth) {
+                if (Arrays.binarySearch(targetIds, node) >= 0) {
+                    found++;
+                    double score = scorer.score(pathNodes, pathEdges, level);
+                    if (!Double.isNaN(score)) {
+                        results.add(new ScoredPath(Arrays.copyOf(pathNodes, level + 1), Arrays.copyOf(pathEdges, level), score));
+                    }
+                }
+                return;
+            }
+            for (int e = outOffsets[node]; e < outOffsets[node + 1] && !done(); e++) {
+                steps++;
+                int next = targets[e];
+                if ((typeMask & (1 << types[e])) == 0 || (labelMask != ANY_LABEL && (labelMask & labelMasks[next]) == 0) || onPath(next, level)) {
+                    continue;
+                }
+                pathEdges[level] = e;
+                visit(next, level + 1);
+            }
+        }
+
+        private boolean onPath(int node, int level) {
+            for (int i = 0; i <= level; i++) {
+                if (pathNodes[i] == node) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static int typeMask(String... relationshipTypes) {
+        int mask = 0;
+        for (String type : relationshipTypes) {
+            mask |= 1 << RELATIONSHIP_TYPES.indexOf(type);
+        }
+        return mask;
+    }
+
+    // תווית שלא ב-LABELS לא מוסיפה ביט
+    private static int labelMask(String... labelNames) {
+        int mask = 0;
+        for (String label : labelNames) {
+            int code = LABELS.indexOf(label);
+            if (code >= 0) {
+                mask |= 1 << code;
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * בניית הגרף: קודם כל הצמתים, ואחריהם הקשרים. קשר לצומת שלא נטען או מסוג לא מוכר מדולג,
+     * וכך גם קשר שאינו מ-RISK_TYPES אל צומת בלי תווית מ-LABELS.
+     */
+    public static final class Builder {
+
+        private final List<String> cuis = new ArrayList<>();
+        private final List<String> names = new ArrayList<>();
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final Map<String, String> labelNames = new HashMap<>();
+        private final List<String> displayLabels = new ArrayList<>();
+        private byte[] labelMasks = new byte[1024];
+
+        private int[] from = new int[1024];
+        private int[] to = new int[1024];
+        private byte[] types = new byte[1024];
+        private float[] weights = new float[1024];
+        private int edgeCount;
+
+        private Builder() {
+        }
+
+        /**
+         * @param nodeLabels - התוויות של הצומת מלבד Concept; הראשונה היא התווית שמוצגת.
+         *                   CUI שכבר נטען מקבל את התוויות הנוספות, והשם והתווית המוצגת נשארים מהראשון.
+         */
+        public Builder addNode(String cui, String name, String... nodeLabels) {
+            if (cui == null) {
+                return this;
+            }
+            byte mask = (byte) labelMask(nodeLabels);
+            Integer existing = ids.get(cui);
+            if (existing != null) {
+                labelMasks[existing] |= mask;
+                return this;
+            }
+            int id = cuis.size();
+            if (id == labelMasks.length) {
+                labelMasks = Arrays.copyOf(labelMasks, id * 2);
+            }
+            ids.put(cui, id);
+            cuis.add(cui);
+            names.add(name);
+            // התוויות חוזרות על עצמן בכל הצמתים - מחרוזת אחת לכל תווית
+            displayLabels.add(nodeLabels.length > 0 ? labelNames.computeIfAbsent(nodeLabels[0], l -> l) : null);
+            labelMasks[id] = mask;
+            return this;
+        }
+
+        public Builder addRelationship(String fromCui, String toCui, String type, double weight) {
+            Integer source = fromCui != null ? ids.get(fromCui) : null;
+            Integer target = toCui != null ? ids.get(toCui) : null;
+            int code = RELATIONSHIP_TYPES.indexOf(type);
+            if (source == null || target == null || code < 0) {
+                return this;
+            }
+            if ((RISK_TYPES & (1 << code)) == 0 && (labelMasks[source] == 0 || labelMasks[target] == 0)) {
+                return this;
+            }
+            if (edgeCount == from.length) {
+                int capacity = edgeCount * 2;
+                from = Arrays.copyOf(from, capacity);
+                to = Arrays.copyOf(to, capacity);
+                types = Arrays.copyOf(types, capacity);
+                weights = Arrays.copyOf(weights, capacity);
+            }
+            from[edgeCount] = source;
+            to[edgeCount] = target;
+            types[edgeCount] = (byte) code;
+            weights[edgeCount] = (float) weight;
+            edgeCount++;
+            return this;
+        }
+
+        public MedicalGraph build() {
+            int n = cuis.size();
+            int m = edgeCount;
+
+            // מיון מניה לפי צומת המקור
+            int[] outOffsets = new int[n + 1];
+            for (int e = 0; e < m; e++) {
+                outOffsets[from[e] + 1]++;
+            }
+            for (int v = 0; v < n; v++) {
+                outOffsets[v + 1] += outOffsets[v];
+            }
+            int[] cursor = Arrays.copyOf(outOffsets, n);
+            int[] edgeSources = new int[m];
+            int[] edgeTargets = new int[m];
+            byte[] edgeTypes = new byte[m];
+            float[] edgeWeights = new float[m];
+            for (int e = 0; e < m; e++) {
+                int position = cursor[from[e]]++;
+                edgeSources[position] = from[e];
+                edgeTargets[position] = to[e];
+                edgeTypes[position] = types[e];
+                edgeWeights[position] = weights[e];
+            }
+
+            // אינדקס הקשרים הנכנסים, לפי צומת היעד
+            int[] inOffsets = new int[n + 1];
+            for (int e = 0; e < m; e++) {
+                inOffsets[edgeTargets[e] + 1]++;
+            }
+            for (int v = 0; v < n; v++) {
+                inOffsets[v + 1] += inOffsets[v];
+            }
+            cursor = Arrays.copyOf(inOffsets, n);
+            int[] inEdges = new int[m];
+            for (int e = 0; e < m; e++) {
+                inEdges[cursor[edgeTargets[e]]++] = e;
+            }
+
+            return new MedicalGraph(cuis.toArray(new String[0]), names.toArray(new String[0]),
+                    Arrays.copyOf(labelMasks, n), displayLabels.toArray(new String[0]), new HashMap<>(ids),
+                    outOffsets, edgeSources, edgeTargets, edgeTypes, edgeWeights, inOffsets, inEdges);
+        }
+    }
+}
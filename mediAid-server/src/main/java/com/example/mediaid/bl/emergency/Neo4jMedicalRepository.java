@@ -10,6 +10,12 @@ import org.springframework.stereotype.Repository;
 
 import java.util.*;
 
+import static com.example.mediaid.constants.MedicalAnalysisConstants.GDS_GRAPH_NAME_PREFIX;
+import static com.example.mediaid.constants.MedicalAnalysisConstants.MAX_PATHWAYS_PER_SOURCE;
+import static com.example.mediaid.constants.MedicalAnalysisConstants.MAX_RISK_PROPAGATION_DEPTH;
+import static com.example.mediaid.constants.MedicalAnalysisConstants.MIN_RISK_PROPAGATION;
+import static com.example.mediaid.constants.MedicalAnalysisConstants.RISK_PROPAGATION_PATHS_PER_TARGET;
+
 /**
  * Repository לשאילתות Neo4j
  */
@@ -22,24 +28,34 @@ public class Neo4jMedicalRepository {
     private Driver neo4jDriver;
 
     /**
-     * מציאת מסלולים רפואיים עד 5 צעדים
+     * מציאת מסלולים רפואיים מכמה מקורות לכמה סימפטומים בשאילתה אחת
+     * כל מקור מורחב פעם אחת עם כל הסימפטומים כ-endNodes (במקום הרחבה לכל זוג מקור-סימפטום),
+     * ולכל זוג מקור-יעד חוזרים עד topK המסלולים הטובים.
+     * מקור אחד = רשימה עם CUI יחיד.
      */
-    public List<Record> findMedicalPathwaysQuery(String sourceCui, String targetCui, int maxDepth) {
+    public List<Record> findMedicalPathwaysMultiTargetQuery(List<String> sourceCuis, List<String> targetCuis,
+                                                            int maxDepth, int topK) {
+        if (sourceCuis.isEmpty() || targetCuis.isEmpty()) {
+            return new ArrayList<>();
+        }
         try (Session session = neo4jDriver.session()) {
-            String advancedPathQuery = """
-                MATCH (source {cui: $sourceCui})
-                MATCH (target {cui: $targetCui})
+            String multiTargetPathQuery = """
+                MATCH (target:Concept) WHERE target.cui IN $targetCuis
+                WITH collect(target) as targets
+                UNWIND $sourceCuis as sourceCui
+                MATCH (source:Concept {cui: sourceCui})
                 CALL apoc.path.expandConfig(source, {
                     relationshipFilter: "TREATS|CAUSES_SIDE_EFFECT|INDICATES|CAUSES_SYMPTOM|RISK_FACTOR_FOR|INFLUENCES>",
                     labelFilter: "+Disease|+Medication|+Symptom|+RiskFactor",
                     minLevel: 1,
                     maxLevel: $maxDepth,
-                    limit: 15,
-                    endNodes: [target]
+                    limit: $expandLimit,
+                    endNodes: targets
                 }) YIELD path
-                WHERE last(nodes(path)).cui = $targetCui
-                WITH path,
-                     reduce(pathWeight = 0.0, rel in relationships(path) | 
+                WITH sourceCui, last(nodes(path)) as target, path
+                WHERE target.cui IN $targetCuis
+                WITH sourceCui, target, path,
+                     reduce(pathWeight = 0.0, rel in relationships(path) |
                             pathWeight + rel.weight) / size(relationships(path)) *
                      CASE size(relationships(path))
                          WHEN 1 THEN 0.85
@@ -48,90 +64,117 @@ public class Neo4jMedicalRepository {
                          WHEN 4 THEN 0.52  // 0.85^4 מחושב מראש
                          WHEN 5 THEN 0.44  // 0.85^5 מחושב מראש
                          ELSE 0.35
-                     END as riskScore,
-                     [node in nodes(path) | {
-                         cui: node.cui, 
-                         name: node.name, 
-                         type: labels(node)[0]
-                     }] as pathNodes,
-                     [rel in relationships(path) | {
-                         type: type(rel), 
-                         weight: rel.weight,
-                         source: startNode(rel).name,
-                         target: endNode(rel).name
-                     }] as pathRelationships
-                RETURN pathNodes, pathRelationships, 
+                     END as riskScore
+                ORDER BY riskScore DESC, size(relationships(path)) ASC
+                WITH sourceCui, target.cui as targetCui,
+                     collect({path: path, riskScore: riskScore})[0..$topK] as topPaths
+                UNWIND topPaths as top
+                WITH sourceCui, targetCui, top.path as path, top.riskScore as riskScore
+                RETURN sourceCui, targetCui,
+                       [node in nodes(path) | {
+                           cui: node.cui,
+                           name: node.name,
+                           type: [l IN labels(node) WHERE l <> 'Concept'][0]
+                       }] as pathNodes,
+                       [rel in relationships(path) | {
+                           type: type(rel),
+                           weight: rel.weight,
+                           source: startNode(rel).name,
+                           target: endNode(rel).name
+                       }] as pathRelationships,
                        riskScore,
                        size(relationships(path)) as pathLength
-                ORDER BY riskScore DESC, pathLength ASC
-                LIMIT 10
                 """;
 
             return session.readTransaction(tx ->
-                    tx.run(advancedPathQuery, Map.of(
-                            "sourceCui", sourceCui,
-                            "targetCui", targetCui,
-                            "maxDepth", maxDepth
-                    )).list());
+                    tx.run(multiTargetPathQuery, Map.of(
+                            "sourceCuis", sourceCuis,
+                            "targetCuis", targetCuis,
+                            "maxDepth", maxDepth,
+                            // מגבלת ההרחבה של מקור אחד גדלה עם מספר היעדים, כמו ההרחבות הנפרדות שהיא מחליפה
+                            "expandLimit", MAX_PATHWAYS_PER_SOURCE * targetCuis.size(),
+                            "topK", topK
+                    )).list(), QueryDeadline.transactionConfig());
         } catch (Exception e) {
-            logger.error("Error in pathway query: {}", e.getMessage());
+            logger.error("Error in multi-target pathway query: {}", e.getMessage());
             return new ArrayList<>();
         }
     }
 
     /**
      * איתור קהילות עם GDS
+     * לכל קריאה הטלה בשם משלה, שנמחקת ב-finally - גם כשהשאילתה נכשלת, חורגת מה-timeout או כשהשלב מבוטל.
+     * שם קבוע היה נשאר בקטלוג אחרי כישלון באמצע, וכל הקריאות הבאות היו נכשלות עליו.
      */
     public List<Record> detectCommunitiesWithGDSQuery(List<String> userCuis) {
+        if (userCuis == null || userCuis.isEmpty()) {
+            logger.warn("No user CUIs provided for community detection");
+            return new ArrayList<>();
+        }
+        String graphName = GDS_GRAPH_NAME_PREFIX + UUID.randomUUID();
+
         try (Session session = neo4jDriver.session()) {
-            if (userCuis == null || userCuis.isEmpty()) {
-                logger.warn("No user CUIs provided for community detection");
-                return new ArrayList<>();
-            }
+            try {
+                // בניית השאילתה עם פרמטרים בטוחים במקום החדרת טקסט
+                String query = """
+                CALL gds.graph.project.cypher(
+                    $graphName,
+                    'MATCH (n:Concept) WHERE n.cui IN $userCuis
+                     RETURN id(n) AS id, [l IN labels(n) WHERE l <> "Concept"][0] AS type',
+                    'MATCH (n:Concept)-[r]-(m:Concept) WHERE n.cui IN $userCuis AND m.cui IN $userCuis
+                     RETURN id(n) AS source, id(m) AS target, coalesce(r.weight, 0.5) AS weight',
+                    {parameters: {userCuis: $userCuis}}
+                )
+                YIELD graphName
 
-            // בניית השאילתה עם פרמטרים בטוחים במקום החדרת טקסט
-            String query = """
-            CALL gds.graph.project.cypher(
-                'user-medical-network',
-                'MATCH (n) WHERE n.cui IN $userCuis RETURN id(n) AS id, labels(n)[0] AS type',
-                'MATCH (n)-[r]-(m) WHERE n.cui IN $userCuis AND m.cui IN $userCuis 
-                 RETURN id(n) AS source, id(m) AS target, coalesce(r.weight, 0.5) AS weight'
-            )
-            YIELD graphName
-
-            CALL gds.louvain.stream(graphName, {
-                relationshipWeightProperty: 'weight',
-                maxLevels: 3,
-                tolerance: 0.001
-            })
-            YIELD nodeId, communityId
-
-            WITH gds.util.asNode(nodeId) AS node, communityId
-            RETURN communityId, 
-                   collect({cui: node.cui, name: node.name, type: labels(node)[0]}) AS members,
-                   count(*) AS size
-            ORDER BY size DESC
-            LIMIT 10
-            """;
+                CALL gds.louvain.stream(graphName, {
+                    relationshipWeightProperty: 'weight',
+                    maxLevels: 3,
+                    tolerance: 0.001
+                })
+                YIELD nodeId, communityId
 
-            logger.debug("Running GDS community detection with {} CUIs", userCuis.size());
+                WITH gds.util.asNode(nodeId) AS node, communityId
+                RETURN communityId, 
+                       collect({cui: node.cui, name: node.name, type: [l IN labels(node) WHERE l <> 'Concept'][0]}) AS members,
+                       count(*) AS size
+                ORDER BY size DESC
+                LIMIT 10
+                """;
 
-            // העברת הפרמטרים בבטחה
-            Map<String, Object> params = new HashMap<>();
-            params.put("userCuis", userCuis);
+                logger.debug("Running GDS community detection with {} CUIs", userCuis.size());
 
-            List<Record> records = session.readTransaction(tx -> tx.run(query, params).list());
+                // העברת הפרמטרים בבטחה
+                Map<String, Object> params = new HashMap<>();
+                params.put("userCuis", userCuis);
+                params.put("graphName", graphName);
 
-            // ניקוי הגרף לאחר השימוש
+                return session.readTransaction(tx -> tx.run(query, params).list(), QueryDeadline.transactionConfig());
+            } finally {
+                dropGraphProjection(session, graphName);
+            }
+        } catch (Exception e) {
+            logger.warn("GDS community detection failed: {}", e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * מחיקת הטלת GDS (אם נוצרה). רצה גם אחרי interrupt של השלב - הדגל מנוקה לזמן המחיקה ומוחזר אחריה
+     */
+    private void dropGraphProjection(Session session, String graphName) {
+        boolean interrupted = Thread.interrupted();
+        try {
             session.writeTransaction(tx -> {
-                tx.run("CALL gds.graph.drop('user-medical-network', false)").consume();
+                tx.run("CALL gds.graph.drop($graphName, false)", Map.of("graphName", graphName)).consume();
                 return null;
             });
-
-            return records;
         } catch (Exception e) {
-            logger.warn("GDS community detection failed: {}", e.getMessage());
-            return new ArrayList<>();
+            logger.warn("Could not drop GDS graph projection {}: {}", graphName, e.getMessage());
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
         }
     }
 
@@ -141,20 +184,19 @@ public class Neo4jMedicalRepository {
     public List<Record> detectCommunitiesBasicQuery(List<String> userCuis) {
         try (Session session = neo4jDriver.session()) {
             String basicCommunityQuery = """
-            MATCH (n)-[r]-(m) 
+            MATCH (n:Concept)-[r]-(m:Concept)
             WHERE n.cui IN $userCuis AND m.cui IN $userCuis
             WITH n, collect(DISTINCT m) as connections, count(r) as connectionCount
             WHERE connectionCount >= 2
             RETURN n.cui as centerCui, n.name as centerName, 
-                   [conn in connections | {cui: conn.cui, name: conn.name, type: labels(conn)[0]}] as members,
+                   [conn in connections | {cui: conn.cui, name: conn.name, type: [l IN labels(conn) WHERE l <> 'Concept'][0]}] as members,
                    connectionCount as size
             ORDER BY connectionCount DESC
             LIMIT 5
             """;
 
             return session.readTransaction(tx ->
-                    tx.run(basicCommunityQuery, Map.of("userCuis", userCuis)).list()
-            );
+                    tx.run(basicCommunityQuery, Map.of("userCuis", userCuis)).list(), QueryDeadline.transactionConfig());
         } catch (Exception e) {
             logger.error("Error in basic community detection: {}", e.getMessage());
             return new ArrayList<>();
@@ -162,155 +204,196 @@ public class Neo4jMedicalRepository {
     }
 
     /**
-     * חישוב סיכונים
+     * חישוב סיכונים מכל גורמי הסיכון לכל הסימפטומים בשאילתה אחת
+     * כל מקור מורחב פעם אחת עם כל הסימפטומים כ-endNodes. הסיכון של מסלול הוא
+     * initialRisk * מכפלת המשקלים * decay^length, ולכל זוג מקור-סימפטום נספרים עד topK המסלולים החזקים.
+     * שורה אחת לכל סימפטום: symptomCui, totalRisk ו-paths (sourceIndex, sourceCui, finalRisk, pathLength).
+     *
+     * @param sources - [{source: cui, initialRisk: double}]; sourceIndex הוא המיקום ברשימה
      */
-    public List<Record> findRiskPropagationQuery(String sourceCui, String targetCui, double initialRisk, double decay) {
+    public List<Record> findRiskPropagationBatchQuery(List<Map<String, Object>> sources, List<String> symptomCuis,
+                                                      double decay, int topK) {
+        if (sources.isEmpty() || symptomCuis.isEmpty()) {
+            return new ArrayList<>();
+        }
         try (Session session = neo4jDriver.session()) {
-            String riskPropagationQuery = """
-                MATCH (source {cui: $sourceCui})
-                MATCH (target {cui: $targetCui})
+            String riskPropagationBatchQuery = """
+                MATCH (target:Concept) WHERE target.cui IN $symptomCuis
+                WITH collect(target) as targets
+                UNWIND range(0, size($sources) - 1) as sourceIndex
+                WITH targets, sourceIndex, $sources[sourceIndex] as src
+                MATCH (source:Concept {cui: src.source})
                 CALL apoc.path.expandConfig(source, {
                     relationshipFilter: "RISK_FACTOR_FOR|CAUSES_SYMPTOM|CAUSES_SIDE_EFFECT|LEADS_TO>",
-                    maxLevel: 4,
-                    limit: 20,
-                    endNodes: [target]
+                    maxLevel: $maxDepth,
+                    limit: $expandLimit,
+                    endNodes: targets
                 }) YIELD path
-                WHERE any(node in nodes(path) WHERE node.cui = $targetCui)
-                
-                WITH path,
-                     reduce(propagatedRisk = $initialRisk, rel in relationships(path) | 
-                            propagatedRisk * rel.weight * 
-                            CASE length(path)
-                                WHEN 1 THEN $decay
-                                WHEN 2 THEN $decay * $decay  
-                                WHEN 3 THEN $decay * $decay * $decay
-                                WHEN 4 THEN $decay * $decay * $decay * $decay
-                                ELSE 0.1
-                            END) as finalRisk
-                WHERE finalRisk > 0.05
-                
-                RETURN nodes(path) as pathNodes,
-                       relationships(path) as pathRels,
-                       finalRisk,
-                       length(path) as pathLength
+                WITH sourceIndex, src, last(nodes(path)).cui as symptomCui, length(path) as pathLength,
+                     src.initialRisk *
+                     reduce(weight = 1.0, rel in relationships(path) | weight * rel.weight) *
+                     $decay ^ length(path) as finalRisk
+                WHERE symptomCui IN $symptomCuis AND finalRisk > $minRisk
+
                 ORDER BY finalRisk DESC
-                LIMIT 5
+                WITH sourceIndex, src, symptomCui,
+                     collect({sourceIndex: sourceIndex, sourceCui: src.source,
+                              finalRisk: finalRisk, pathLength: pathLength})[0..$topK] as pairPaths
+                WITH symptomCui, pairPaths,
+                     reduce(pairRisk = 0.0, p in pairPaths | pairRisk + p.finalRisk) as pairRisk
+                WITH symptomCui, sum(pairRisk) as totalRisk, collect(pairPaths) as pathGroups
+                RETURN symptomCui, totalRisk,
+                       reduce(paths = [], pairPaths in pathGroups | paths + pairPaths) as paths
                 """;
 
-            return session.readTransaction(tx ->
-                    tx.run(riskPropagationQuery, Map.of(
-                            "sourceCui", sourceCui,
-                            "targetCui", targetCui,
-                            "initialRisk", initialRisk,
-                            "decay", decay
-                    )).list());
+            Map<String, Object> params = new HashMap<>();
+            params.put("sources", sources);
+            params.put("symptomCuis", symptomCuis);
+            params.put("decay", decay);
+            params.put("topK", topK);
+            params.put("maxDepth", MAX_RISK_PROPAGATION_DEPTH);
+            params.put("expandLimit", RISK_PROPAGATION_PATHS_PER_TARGET * symptomCuis.size());
+            params.put("minRisk", MIN_RISK_PROPAGATION);
+
+            return session.readTransaction(tx -> tx.run(riskPropagationBatchQuery, params).list(), QueryDeadline.transactionConfig());
         } catch (Exception e) {
-            logger.error("Error in risk propagation query: {}", e.getMessage());
+            logger.error("Error in batched risk propagation query: {}", e.getMessage());
             return new ArrayList<>();
         }
     }
 
     /**
-     * קשר בין תרופות לבין סימפטומים של המשתמש
+     * קשר בין תרופות לסימפטומים לכל הזוגות בשאילתה אחת
+     * כל שורה מסומנת בזוג שלה (fromCui, toCui)
+     *
+     * @param pairs - [{from: medCui, to: sympCui}]
      */
-    public List<Record> findMedicationSideEffectsQuery(String medCui, String sympCui) {
+    public List<Record> findMedicationSideEffectsBatchQuery(List<Map<String, Object>> pairs) {
+        if (pairs.isEmpty()) {
+            return new ArrayList<>();
+        }
         try (Session session = neo4jDriver.session()) {
             String query = """
-                MATCH (med:Medication {cui: $medCui})-[r:CAUSES_SIDE_EFFECT]->(symp:Symptom {cui: $sympCui})
-                RETURN med.name as medName, symp.name as sympName, r.weight as confidence, r.source as source
-                UNION
-                MATCH (med:Medication {cui: $medCui})-[r:SIDE_EFFECT_OF]-(symp:Symptom {cui: $sympCui})
-                RETURN med.name as medName, symp.name as sympName, r.weight as confidence, r.source as source
-            """;
+                UNWIND $pairs as pair
+                CALL {
+                    WITH pair
+                    MATCH (med:Medication {cui: pair.from})-[r:CAUSES_SIDE_EFFECT]->(symp:Symptom {cui: pair.to})
+                    RETURN med.name as medName, symp.name as sympName, r.weight as confidence, r.source as source
+                    UNION
+                    WITH pair
+                    MATCH (med:Medication {cui: pair.from})-[r:SIDE_EFFECT_OF]-(symp:Symptom {cui: pair.to})
+                    RETURN med.name as medName, symp.name as sympName, r.weight as confidence, r.source as source
+                }
+                RETURN pair.from as fromCui, pair.to as toCui, medName, sympName, confidence, source
+                """;
 
             return session.readTransaction(tx ->
-                    tx.run(query, Map.of("medCui", medCui, "sympCui", sympCui)).list()
-            );
+                    tx.run(query, Map.of("pairs", pairs)).list(), QueryDeadline.transactionConfig());
         } catch (Exception e) {
-            logger.error("Error in side effects query: {}", e.getMessage());
+            logger.error("Error in batched side effects query: {}", e.getMessage());
             return new ArrayList<>();
         }
     }
 
     /**
-     * קשר בין מחלה וסימפטומים
+     * קשר בין מחלות לסימפטומים לכל הזוגות בשאילתה אחת
+     * כל שורה מסומנת בזוג שלה (fromCui, toCui)
+     *
+     * @param pairs - [{from: disCui, to: sympCui}]
      */
-    public List<Record> findDiseaseSymptomsQuery(String disCui, String sympCui) {
+    public List<Record> findDiseaseSymptomsBatchQuery(List<Map<String, Object>> pairs) {
+        if (pairs.isEmpty()) {
+            return new ArrayList<>();
+        }
         try (Session session = neo4jDriver.session()) {
             String query = """
-                MATCH (dis:Disease {cui: $disCui})-[r:CAUSES_SYMPTOM]->(symp:Symptom {cui: $sympCui})
-                RETURN dis.name as disName, symp.name as sympName, r.weight as confidence, r.source as source
-                UNION
-                MATCH (dis:Disease {cui: $disCui})<-[r:INDICATES]-(symp:Symptom {cui: $sympCui})
-                RETURN dis.name as disName, symp.name as sympName, r.weight as confidence, r.source as source
+                UNWIND $pairs as pair
+                CALL {
+                    WITH pair
+                    MATCH (dis:Disease {cui: pair.from})-[r:CAUSES_SYMPTOM]->(symp:Symptom {cui: pair.to})
+                    RETURN dis.name as disName, symp.name as sympName, r.weight as confidence, r.source as source
+                    UNION
+                    WITH pair
+                    MATCH (dis:Disease {cui: pair.from})<-[r:INDICATES]-(symp:Symptom {cui: pair.to})
+                    RETURN dis.name as disName, symp.name as sympName, r.weight as confidence, r.source as source
+                }
+                RETURN pair.from as fromCui, pair.to as toCui, disName, sympName, confidence, source
                 """;
 
             return session.readTransaction(tx ->
-                    tx.run(query, Map.of("disCui", disCui, "sympCui", sympCui)).list());
+                    tx.run(query, Map.of("pairs", pairs)).list(), QueryDeadline.transactionConfig());
         } catch (Exception e) {
-            logger.error("Error in disease symptoms query: {}", e.getMessage());
+            logger.error("Error in batched disease symptoms query: {}", e.getMessage());
             return new ArrayList<>();
         }
     }
 
     /**
-     * חיפוש טיפול אפשרי לסימפטום
+     * חיפוש טיפולים אפשריים לכל הסימפטומים בשאילתה אחת
+     * עד 5 טיפולים לכל סימפטום, כל שורה מסומנת ב-sympCui שלה
      */
-    public List<Record> findPossibleTreatmentsQuery(String sympCui) {
+    public List<Record> findPossibleTreatmentsBatchQuery(List<String> sympCuis) {
+        if (sympCuis.isEmpty()) {
+            return new ArrayList<>();
+        }
         try (Session session = neo4jDriver.session()) {
-            // חיפוש תרופות שמטפלות בסימפטום
             String treatmentQuery = """
-            MATCH (symp:Symptom {cui: $sympCui})<-[r:CAUSES_SYMPTOM]-(dis:Disease)<-[t:TREATS]-(med:Medication)
-            RETURN DISTINCT med.name as medName, med.cui as medCui, dis.name as disName, 
-                   (r.weight + t.weight) / 2 as confidence
-            ORDER BY confidence DESC
-            LIMIT 5
+            UNWIND $sympCuis as sympCui
+            CALL {
+                WITH sympCui
+                MATCH (symp:Symptom {cui: sympCui})<-[r:CAUSES_SYMPTOM]-(dis:Disease)<-[t:TREATS]-(med:Medication)
+                RETURN DISTINCT med.name as medName, med.cui as medCui, dis.name as disName,
+                       (r.weight + t.weight) / 2 as confidence
+                ORDER BY confidence DESC
+                LIMIT 5
+            }
+            RETURN sympCui, medName, medCui, disName, confidence
             """;
 
             return session.readTransaction(tx ->
-                    tx.run(treatmentQuery, Map.of("sympCui", sympCui)).list());
+                    tx.run(treatmentQuery, Map.of("sympCuis", sympCuis)).list(), QueryDeadline.transactionConfig());
         } catch (Exception e) {
-            logger.error("Error in treatments query: {}", e.getMessage());
+            logger.error("Error in batched treatments query: {}", e.getMessage());
             return new ArrayList<>();
         }
     }
 
     /**
-     * חיפוש בדיקות לסימפטום
+     * חיפוש בדיקות לכל הסימפטומים בשאילתה אחת
      */
-    public List<Record> findTestsForSymptomQuery(String symptomCui) {
-        try (Session session = neo4jDriver.session()) {
-            String query = """
-            MATCH (s:Symptom {cui: $symptomCui})-[r:REQUIRES_TEST]->(t:LaboratoryTest)
-            RETURN t.name as testName, t.cui as testCui, r.weight as confidence
-            ORDER BY confidence DESC
-            LIMIT 5
-            """;
-
-            return session.readTransaction(tx ->
-                    tx.run(query, Map.of("symptomCui", symptomCui)).list());
-        } catch (Exception e) {
-            logger.error("Error finding tests for symptom: {}", e.getMessage());
-            return new ArrayList<>();
-        }
+    public List<Record> findTestsForSymptomsBatchQuery(List<String> symptomCuis) {
+        return findTestsBatchQuery("Symptom", symptomCuis);
     }
 
     /**
-     * חיפוש בדיקות למחלה
+     * חיפוש בדיקות לכל המחלות בשאילתה אחת
      */
-    public List<Record> findTestsForDiseaseQuery(String diseaseCui) {
+    public List<Record> findTestsForDiseasesBatchQuery(List<String> diseaseCuis) {
+        return findTestsBatchQuery("Disease", diseaseCuis);
+    }
+
+    // עד 5 בדיקות לכל ישות, כל שורה מסומנת ב-sourceCui שלה. label מגיע רק מהקוד, לא מהמשתמש
+    private List<Record> findTestsBatchQuery(String label, List<String> cuis) {
+        if (cuis.isEmpty()) {
+            return new ArrayList<>();
+        }
         try (Session session = neo4jDriver.session()) {
             String query = """
-            MATCH (d:Disease {cui: $diseaseCui})-[r:REQUIRES_TEST]->(t:LaboratoryTest)
-            RETURN t.name as testName, t.cui as testCui, r.weight as confidence
-            ORDER BY confidence DESC
-            LIMIT 5
-            """;
+            UNWIND $cuis as sourceCui
+            CALL {
+                WITH sourceCui
+                MATCH (n:%s {cui: sourceCui})-[r:REQUIRES_TEST]->(t:LaboratoryTest)
+                RETURN t.name as testName, t.cui as testCui, r.weight as confidence
+                ORDER BY confidence DESC
+                LIMIT 5
+            }
+            RETURN sourceCui, testName, testCui, confidence
+            """.formatted(label);
 
             return session.readTransaction(tx ->
-                    tx.run(query, Map.of("diseaseCui", diseaseCui)).list());
+                    tx.run(query, Map.of("cuis", cuis)).list(), QueryDeadline.transactionConfig());
         } catch (Exception e) {
-            logger.error("Error finding tests for disease: {}", e.getMessage());
+            logger.error("Error finding tests for {} batch: {}", label, e.getMessage());
             return new ArrayList<>();
         }
     }
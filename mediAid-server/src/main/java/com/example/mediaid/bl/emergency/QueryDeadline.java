@@ -0,0 +1,48 @@
+package com.example.mediaid.bl.emergency;
+
+import org.neo4j.driver.TransactionConfig;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+
+/**
+ * מועד הסיום של שלב ניתוח, עבור שאילתות Neo4j שרצות בתוכו
+ * ביטול ה-virtual thread של שלב לא עוצר שאילתה שכבר רצה בשרת, ולכן הזמן שנותר עובר לטרנזקציה
+ * כ-timeout - והשרת עוצר את השאילתה בעצמו. מחוץ לשלב (למשל RecommendationController) אין timeout.
+ */
+final class QueryDeadline {
+
+    // מינימום ל-timeout: Duration.ZERO פירושו "ללא timeout" בדרייבר
+    private static final Duration MIN_TIMEOUT = Duration.ofMillis(1);
+
+    private static final ThreadLocal<Long> DEADLINE_NANOS = new ThreadLocal<>();
+
+    private QueryDeadline() {
+    }
+
+    /**
+     * הרצת work כשכל שאילתה בתוכו מוגבלת עד deadlineNanos (לפי System.nanoTime)
+     */
+    static <T> T within(long deadlineNanos, Supplier<T> work) {
+        DEADLINE_NANOS.set(deadlineNanos);
+        try {
+            return work.get();
+        } finally {
+            DEADLINE_NANOS.remove();
+        }
+    }
+
+    /**
+     * הגדרות הטרנזקציה - timeout לפי הזמן שנותר לשלב, או ברירת המחדל של השרת מחוץ לשלב
+     */
+    static TransactionConfig transactionConfig() {
+        Long deadline = DEADLINE_NANOS.get();
+        if (deadline == null) {
+            return TransactionConfig.empty();
+        }
+        Duration remaining = Duration.ofNanos(deadline - System.nanoTime());
+        return TransactionConfig.builder()
+                .withTimeout(remaining.compareTo(MIN_TIMEOUT) > 0 ? remaining : MIN_TIMEOUT)
+                .build();
+    }
+}
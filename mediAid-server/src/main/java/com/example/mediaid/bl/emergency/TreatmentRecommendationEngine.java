@@ -1,12 +1,15 @@
 package com.example.mediaid.bl.emergency;
 
 import com.example.mediaid.dto.emergency.*;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import static com.example.mediaid.constants.MedicalAnalysisConstants.*;
@@ -22,6 +25,9 @@ public class TreatmentRecommendationEngine {
     @Autowired
     private UserMedicalContextService medicalContextService;
 
+    // שלבי הניתוח ממתינים בעיקר ל-Neo4j - thread וירטואלי לכל שלב
+    private final ExecutorService stageExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
 
     public TreatmentPlan analyzeSituation(UUID userId, Set<ExtractedSymptom> symptoms) {
         logger.info("Starting medical analysis for user {} with {} symptoms", userId, symptoms.size());
@@ -34,56 +40,43 @@ public class TreatmentRecommendationEngine {
                     userContext.getActiveDiseases().size(),
                     userContext.getRiskFactors().size());
 
-            // שלב 2: Community Detection - עם טיפול בשגיאות
-            List<MedicalAnalysisService.MedicalCommunity> medicalCommunities = new ArrayList<>();
-            try {
-                medicalCommunities = analysisService.detectMedicalCommunities(getAllUserEntities(userContext));
-                logger.debug("Loaded {} medical communities", medicalCommunities.size());
-            } catch (Exception e) {
-                logger.warn("Community detection failed: {}", e.getMessage());
-                // ממשיכים עם רשימה ריקה
-            }
+            // שלבים 2-6 לא תלויים זה בזה - רצים במקביל, כל אחד עם תקציב זמן ותוצאת fallback משלו
+            long analysisStart = System.nanoTime();
+            List<UserMedicalEntity> userEntities = getAllUserEntities(userContext);
+            Map<String, Object> stageTimings = new ConcurrentHashMap<>();
 
-            // שלב 3: חיפוש קשרים רפואיים - עם טיפול בשגיאות
-            List<MedicalAnalysisService.MedicalPathway> detectedPathways = new ArrayList<>();
-            try {
-                for (UserMedicalEntity entity : getAllUserEntities(userContext)) {
-                    try {
-                        List<MedicalAnalysisService.MedicalPathway> pathways =
-                                analysisService.findMedicalPathways(entity.getCui(), symptoms, MAX_PATH_DEPTH);
-                        detectedPathways.addAll(pathways);
-                    } catch (Exception e) {
-                        logger.debug("Pathway analysis failed for entity {}: {}", entity.getCui(), e.getMessage());
-                        // ממשיכים לישות הבאה
-                    }
-                }
-                logger.debug("Found {} advanced pathways", detectedPathways.size());
-            } catch (Exception e) {
-                logger.warn("Pathway analysis completely failed: {}", e.getMessage());
-            }
+            // שלב 2: Community Detection
+            AnalysisStage<List<MedicalAnalysisService.MedicalCommunity>> communityStage = startStage(
+                    "communities", COMMUNITY_STAGE_TIMEOUT_MS, ArrayList::new, stageTimings,
+                    () -> analysisService.detectMedicalCommunities(userEntities));
 
-            // שלב 4: חישוב הסיכונים - עם טיפול בשגיאות
-            MedicalAnalysisService.RiskPropagationResult riskPropagation = null;
-            try {
-                riskPropagation = analysisService.calculateRiskPropagation(userContext.getRiskFactors(), symptoms, RISK_DECAY_FACTOR);
-                logger.info("Risk propagation analysis complete. Total risk: {:.3f}",
-                        riskPropagation.getTotalRiskScore());
-            } catch (Exception e) {
-                logger.warn("Risk propagation analysis failed: {}", e.getMessage());
-                // יצירת תוצאה בסיסית
-                riskPropagation = createFallbackRiskPropagation();
-            }
+            // שלב 3: חיפוש קשרים רפואיים - כל הישויות כמקורות בשאילתה אחת
+            AnalysisStage<List<MedicalAnalysisService.MedicalPathway>> pathwayStage = startStage(
+                    "pathways", PATHWAY_STAGE_TIMEOUT_MS, ArrayList::new, stageTimings,
+                    () -> analysisService.findMedicalPathwaysFromEntities(userEntities, symptoms, MAX_PATH_DEPTH));
 
+            // שלב 4: חישוב הסיכונים
+            AnalysisStage<MedicalAnalysisService.RiskPropagationResult> riskStage = startStage(
+                    "riskPropagation", RISK_STAGE_TIMEOUT_MS, this::createFallbackRiskPropagation, stageTimings,
+                    () -> analysisService.calculateRiskPropagation(userContext.getRiskFactors(), symptoms, RISK_DECAY_FACTOR));
 
             // שלב 6: קשרים בסיסיים
-            List<MedicalConnection> basicConnections = new ArrayList<>();
-            try {
-                basicConnections = findBasicConnections(userContext, new ArrayList<>(symptoms));
-                logger.debug("Found {} basic connections", basicConnections.size());
-            } catch (Exception e) {
-                logger.error("Even basic connections failed: {}", e.getMessage());
-                // זה באמת בעייתי, אבל נמשיך
-            }
+            AnalysisStage<List<MedicalConnection>> connectionStage = startStage(
+                    "basicConnections", CONNECTIONS_STAGE_TIMEOUT_MS, ArrayList::new, stageTimings,
+                    () -> findBasicConnections(userContext, new ArrayList<>(symptoms)));
+
+            List<MedicalAnalysisService.MedicalCommunity> medicalCommunities = communityStage.await();
+            logger.debug("Loaded {} medical communities", medicalCommunities.size());
+            List<MedicalAnalysisService.MedicalPathway> detectedPathways = pathwayStage.await();
+            logger.debug("Found {} advanced pathways", detectedPathways.size());
+            MedicalAnalysisService.RiskPropagationResult riskPropagation = riskStage.await();
+            logger.info("Risk propagation analysis complete. Total risk: {:.3f}",
+                    riskPropagation.getTotalRiskScore());
+            List<MedicalConnection> basicConnections = connectionStage.await();
+            logger.debug("Found {} basic connections", basicConnections.size());
+
+            stageTimings.put("graphAnalysis", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - analysisStart));
+            logger.info("Graph analysis stages finished: {}", stageTimings);
 
             // שלב 7: קביעת רמת הדחיפות
             TreatmentPlan.UrgencyLevel urgencyLevel;
@@ -117,6 +110,12 @@ public class TreatmentRecommendationEngine {
                 treatmentPlan.setMainConcern(generateFallbackMainConcern(symptoms, userContext, basicConnections));
             }
 
+            // זמני השלבים - גם כשהתוכנית נבנתה כ-fallback
+            Map<String, Object> additionalInfo = treatmentPlan.getAdditionalInfo() != null
+                    ? new HashMap<>(treatmentPlan.getAdditionalInfo()) : new HashMap<>();
+            additionalInfo.put("stageTimingsMs", new TreeMap<>(stageTimings));
+            treatmentPlan.setAdditionalInfo(additionalInfo);
+
             return treatmentPlan;
 
         } catch (Exception e) {
@@ -370,6 +369,54 @@ public class TreatmentRecommendationEngine {
         return visits;
     }
 
+    /**
+     * הפעלת שלב ניתוח על virtual thread
+     * הזמן של כל שלב נרשם ב-timings; שלב שנכשל או חורג מהתקציב נרשם כ-"failed"/"timeout" ומחזיר את ה-fallback
+     */
+    private <T> AnalysisStage<T> startStage(String name, long timeoutMs, Supplier<T> fallback,
+                                            Map<String, Object> timings, Supplier<T> work) {
+        long start = System.nanoTime();
+        long deadlineNanos = start + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        // cancel(true) לא עוצר שאילתה שכבר רצה בשרת - התקציב עובר גם לטרנזקציות עצמן
+        Future<T> future = stageExecutor.submit(() -> {
+            try {
+                return QueryDeadline.within(deadlineNanos, work);
+            } finally {
+                timings.putIfAbsent(name, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            }
+        });
+        return new AnalysisStage<>(name, future, deadlineNanos, fallback, timings);
+    }
+
+    private record AnalysisStage<T>(String name, Future<T> future, long deadlineNanos,
+                                    Supplier<T> fallback, Map<String, Object> timings) {
+
+        // ההמתנה נמדדת מתחילת השלב, כך שכל השלבים יחד לא מחכים יותר מהתקציב הגדול ביותר
+        T await() {
+            try {
+                T result = future.get(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+                return result != null ? result : fallback.get();
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                timings.put(name, "timeout");
+                logger.warn("Analysis stage {} timed out", name);
+            } catch (ExecutionException e) {
+                timings.put(name, "failed");
+                logger.warn("Analysis stage {} failed: {}", name, e.getCause().getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.cancel(true);
+                timings.put(name, "interrupted");
+            }
+            return fallback.get();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        stageExecutor.shutdownNow();
+    }
+
     private MedicalAnalysisService.RiskPropagationResult createFallbackRiskPropagation() {
         MedicalAnalysisService.RiskPropagationResult result = new MedicalAnalysisService.RiskPropagationResult();
         result.setSymptomRiskScores(new HashMap<>());
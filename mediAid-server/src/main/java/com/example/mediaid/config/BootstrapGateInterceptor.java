@@ -0,0 +1,41 @@
+package com.example.mediaid.config;
+
+import com.example.mediaid.bl.bootstrap.BootstrapPhase;
+import com.example.mediaid.bl.bootstrap.BootstrapStatus;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import static com.example.mediaid.constants.ApiConstants.BOOTSTRAP_RETRY_AFTER_SECONDS;
+
+/**
+ * חסימת endpoints שתלויים בנתונים שעדיין נטענים - מחזיר 503 עם סטטוס "warming" במקום תוצאות חלקיות
+ */
+public class BootstrapGateInterceptor implements HandlerInterceptor {
+
+    private final BootstrapStatus status;
+    private final BootstrapPhase requiredPhase;
+
+    public BootstrapGateInterceptor(BootstrapStatus status, BootstrapPhase requiredPhase) {
+        this.status = status;
+        this.requiredPhase = requiredPhase;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        if (status.isAvailable(requiredPhase)) {
+            return true;
+        }
+
+        BootstrapPhase current = status.currentPhase();
+        response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(BOOTSTRAP_RETRY_AFTER_SECONDS));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.getWriter().write("{\"status\":\"warming\",\"phase\":\"" +
+                (current != null ? current.name().toLowerCase() : "") + "\"}");
+        return false;
+    }
+}
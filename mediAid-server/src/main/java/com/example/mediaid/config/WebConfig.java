@@ -0,0 +1,25 @@
+package com.example.mediaid.config;
+
+import com.example.mediaid.bl.bootstrap.BootstrapPhase;
+import com.example.mediaid.bl.bootstrap.BootstrapStatus;
+import com.example.mediaid.constants.ApiConstants;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+public class WebConfig implements WebMvcConfigurer {
+
+    @Autowired
+    private BootstrapStatus bootstrapStatus;
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        // endpoints של מונחים וגרף מחזירים "warming" עד שהנתונים שלהם נטענו
+        registry.addInterceptor(new BootstrapGateInterceptor(bootstrapStatus, BootstrapPhase.TERMS))
+                .addPathPatterns(ApiConstants.TERM_ENDPOINTS);
+        registry.addInterceptor(new BootstrapGateInterceptor(bootstrapStatus, BootstrapPhase.GRAPH_RELATIONSHIPS))
+                .addPathPatterns(ApiConstants.GRAPH_ENDPOINTS);
+    }
+}
@@ -27,6 +27,28 @@ public class ApiConstants {
     public static final int MAX_SEARCH_RESULTS = 100;
     // סיבה: מספיק גם לצרכים מיוחדים
 
+    // =============== טעינת נתונים ברקע ===============
+
+    /** endpoints שדורשים את טבלאות המונחים */
+    public static final String[] TERM_ENDPOINTS = {
+            "/api/medications/search",
+            "/api/diseases/search",
+            "/api/searchTerms/**",
+            "/api/demo-terms"
+    };
+    // סיבה: חיפוש בטבלה חלקית מחזיר תוצאות חסרות בלי שהמשתמש יודע על כך
+
+    /** endpoints שדורשים את הגרף ב-Neo4j */
+    public static final String[] GRAPH_ENDPOINTS = {
+            "/api/upload-data",
+            "/api/advanced-graph-analysis"
+    };
+    // סיבה: ניתוח על גרף חלקי נותן המלצות שגויות
+
+    /** זמן המתנה מומלץ (שניות) לפני ניסיון חוזר בזמן טעינה */
+    public static final int BOOTSTRAP_RETRY_AFTER_SECONDS = 30;
+    // סיבה: ייבוא מלא נמשך דקות, ואין טעם שהלקוח יציף את השרת בבקשות
+
     /** קוד שגיאה לניתוח נתונים */
     public static final String DATA_ANALYSIS_ERROR = "DATA_ANALYSIS_ERROR";
     // סיבה: קוד ספציפי לבעיות בניתוח רפואי
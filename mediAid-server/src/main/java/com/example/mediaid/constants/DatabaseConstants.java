@@ -12,13 +12,45 @@ public class DatabaseConstants {
     // סיבה: איזון בין זיכרון לביצועים - 5000 רשומות לא יגרמו ל-OutOfMemory
 
     /** גודל אצווה לייבוא קשרים ל-Neo4j */
-    public static final int RELATIONSHIP_BATCH_SIZE = 1000;
-    // סיבה: קשרים צורכים יותר זיכרון מישויות, לכן אצווה קטנה יותר
+    public static final int RELATIONSHIP_BATCH_SIZE = 5000;
+    // סיבה: כל אצווה נשלחת כמה שאילתות UNWIND (אחת לכל צירוף תוויות וסוג קשר), כך שאלפי שורות עוברות בסבב אחד
 
     /** גודל אצווה קטנה למניעת timeout */
     public static final int SMALL_BATCH_SIZE = 50;
     // סיבה: למניעת timeout בחיבורים איטיים
 
+    /** גודל בלוק בכתיבת COPY ל-PostgreSQL (בתים) */
+    public static final int COPY_BUFFER_SIZE_BYTES = 1024 * 1024;
+    // סיבה: בלוקים של 1MB מקטינים את מספר הקריאות לדרייבר בלי להחזיק את כל הטבלה בזיכרון כבייטים
+
+    /** גודל אצווה להחלת שינויי גרסת UMLS (הוספות, שינויי שם, ביטולים) */
+    public static final int DELTA_BATCH_SIZE = 1000;
+    // סיבה: מספר השינויים בין גרסאות קטן יחסית, אצווה של 1000 מספיקה לסבב אחד ברוב המקרים
+
+    /** מספר תהליכוני הכתיבה ל-Neo4j בייבוא הקשרים (כותב אחד לכל מחיצה של צמתי התחלה) */
+    public static final int RELATIONSHIP_WRITER_THREADS = Math.max(4, Runtime.getRuntime().availableProcessors());
+    // סיבה: המחיצות זרות בצמתי ההתחלה, ולכן רוב הנעילות לא משותפות בין כותבים (צמתי סיום מרכזיים כן) - אפשר לנצל את כל הליבות ואת מאגר החיבורים
+
+    /** מספר אצוות מקסימלי בתורים שבין הסיווג לכתיבה (מתחלק בין המחיצות, לפחות 2 לכל מחיצה) */
+    public static final int RELATIONSHIP_QUEUE_CAPACITY = 16;
+    // סיבה: לחץ חוזר - הסיווג נעצר כשהכתיבה מפגרת, בלי להחזיק בזיכרון יותר מ-16 אצוות בסך הכול
+
+    /** זמן commit יעד לאצווה בגרף (מילישניות) - מעליו הייבוא מאט (AIMD) */
+    public static final long IMPORT_TARGET_COMMIT_MS = 1000;
+    // סיבה: טרנזקציה של עד שנייה לא מחזיקה נעילות מספיק זמן כדי לפגוע בזמני התגובה של שאילתות המשתמשים
+
+    /** החלק המינימלי מגודל האצווה המוגדר כשהייבוא מאט */
+    public static final double IMPORT_MIN_BATCH_SCALE = 0.05;
+    // סיבה: 5% מ-5000 הן 250 שורות - עדיין סבב יעיל, ו-commit קצר גם כשהמסד עמוס
+
+    /** תוספת לחלק של גודל האצווה אחרי חלון של commit-ים מהירים */
+    public static final double IMPORT_BATCH_SCALE_STEP = 0.1;
+    // סיבה: עלייה הדרגתית (חיבורית) שחוזרת לגודל המלא תוך כעשרה חלונות, לעומת ירידה כפלית מיידית
+
+    /** מרווח בין דיווחי התקדמות של צינור ייבוא הקשרים (שניות) */
+    public static final int PIPELINE_REPORT_INTERVAL_SECONDS = 30;
+    // סיבה: מספיק תכוף כדי לזהות שלב תקוע, בלי להציף את הלוג
+
     /** גודל עמוד לקריאה מ-PostgreSQL */
     public static final int PAGE_SIZE = 1000;
     // סיבה: מספר רשומות סביר לעמוד אחד ללא עומס יתר על הזיכרון
@@ -47,6 +79,22 @@ public class DatabaseConstants {
     public static final int MIN_MRREL_FIELDS = 15;
     // סיבה: פורמט קובץ MRREL דורש לפחות 15 שדות לשורה תקינה
 
+    /** גודל קטע בקריאה ממופת זיכרון של קבצי RRF (בתים) */
+    public static final long RRF_CHUNK_SIZE_BYTES = 64L * 1024 * 1024;
+    // סיבה: קטעים גדולים מספיק כדי שהתקורה של המשימות תהיה זניחה, וקטנים מספיק לחלוקת עומס בין ליבות
+
+    /** גודל בלוק של תוכן לא דחוס שעובר מתהליכון הפריסה למפענחים בקריאת קבצי RRF דחוסים (בתים) */
+    public static final int RRF_DECOMPRESS_BLOCK_BYTES = 8 * 1024 * 1024;
+    // סיבה: בלוק של אלפי שורות - מספיק כדי שהמעבר בין התהליכונים יהיה זניח, ומעט בלוקים כאלה בטבעת תופסים מעט זיכרון
+
+    /** גודל הבאפר של הקלט הדחוס (בתים) */
+    public static final int RRF_DECOMPRESS_INPUT_BUFFER_BYTES = 256 * 1024;
+    // סיבה: קריאות גדולות מהדיסק ומהתהליך החיצוני של zstd, בלי מחיר זיכרון משמעותי
+
+    /** מספר תהליכונים לקריאת קבצי RRF */
+    public static final int RRF_READER_PARALLELISM = Runtime.getRuntime().availableProcessors();
+    // סיבה: הפענוח מוגבל ב-CPU אחרי שהקובץ ממופה לזיכרון
+
     /** תדירות דיווח התקדמות עיבוד */
     public static final int PROGRESS_REPORT_INTERVAL = 1000000;
     // סיבה: מיליון שורות = דיווח שלא יספם את הלוג אבל יתן מידע על התקדמות
@@ -82,6 +130,18 @@ public class DatabaseConstants {
     };
     // סיבה: הישויות המרכזיות שצריכות אינדקסים לחיפוש מהיר
 
+    /** שם אילוץ הייחודיות של cui על התווית Concept */
+    public static final String CONCEPT_CUI_CONSTRAINT = "concept_cui";
+    // סיבה: שם קבוע מאפשר ל-IF NOT EXISTS לזהות את האילוץ בין הפעלות
+
+    /** שם האינדקס החלופי על Concept(cui) כשאי אפשר ליצור את האילוץ */
+    public static final String CONCEPT_CUI_INDEX = "concept_cui_index";
+    // סיבה: גרף ישן עם צמתים כפולים לאותו CUI חוסם את האילוץ, אבל עדיין צריך חיפוש מהיר
+
+    /** מספר צמתים שמקבלים את התווית Concept בכל טרנזקציה בהשלמה לגרף קיים */
+    public static final int CONCEPT_BACKFILL_BATCH_SIZE = 10000;
+    // סיבה: טרנזקציה אחת על כל הגרף עלולה למלא את זיכרון הטרנזקציות של Neo4j
+
     /** ערך ברירת מחדל לקשר לא ידוע */
     public static final String DEFAULT_RELATIONSHIP_TYPE = "RELATED_TO";
     // סיבה: קשר כללי כשלא מצליחים לזהות את הסוג הספציפי
@@ -93,6 +153,7 @@ public class DatabaseConstants {
     // סיבה: סף נמוך מספיק שיאפשר תוצאות, אבל לא יכלול רעש רב
 
     // =============== נתיבי קבצים של UMLS ===============
+    // כל אחד מנתיבי ה-RRF יכול להצביע גם על קובץ דחוס (.gz, .zst) או על רשומה בתוך zip (ראה RrfSource)
 
     /** נתיב לקובץ MRCONSO של UMLS */
     public static final String MRCONSO_FILE_PATH = "D:\\MediAid\\umls-2024AB-full\\2024AB-full\\2024AB\\META\\MRCONSO.RRF";
@@ -102,6 +163,42 @@ public class DatabaseConstants {
     public static final String MRSTY_FILE_PATH = "D:\\MediAid\\umls-2024AB-full\\2024AB-full\\2024AB\\META\\MRSTY.RRF";
     // סיבה: נתיב קבוע לקובץ הסוגים הסמנטיים של UMLS
 
+    /** נתיב לקובץ MRCUI של UMLS */
+    public static final String MRCUI_FILE_PATH = "D:\\MediAid\\umls-2024AB-full\\2024AB-full\\2024AB\\META\\MRCUI.RRF";
+    // סיבה: היסטוריית CUI שמוזגו או בוטלו בין גרסאות - לעדכון הפניות בהיסטוריית המשתמשים
+
+    /** נתיב לתמונת המצב הבינארית של מונחי UMLS */
+    public static final String UMLS_SNAPSHOT_FILE_PATH = "D:\\MediAid\\umls-cache\\umls-terms.snapshot";
+    // סיבה: תמונת מצב של המונחים שנבחרו - מחוץ לתיקיית META כדי לא לערבב קבצים שנוצרו עם קבצי ההפצה
+
+    /** תיקייה לקובץ הזמני של מפתחות הקשרים הקיימים בגרף (בדיקת כפילויות בייבוא MRREL) */
+    public static final String RELATIONSHIP_KEYS_DIR = "D:\\MediAid\\umls-cache\\relationship-keys";
+    // סיבה: מאות מיליוני מפתחות לא נכנסים ל-heap, ולכן הם ממופים מקובץ על דיסק הנתונים ולא על כונן המערכת
+
+    /** תיקייה לקבצי השורות שנכשלו בייבוא לגרף (dead-letter) */
+    public static final String IMPORT_DEAD_LETTER_DIR = "D:\\MediAid\\umls-cache\\dead-letter";
+    // סיבה: הקבצים נשמרים בין ריצות כדי שאפשר יהיה לתקן ולהריץ אותם שוב, ולכן לא בתיקייה זמנית
+
+    /** אורך מקסימלי של סיבת הכישלון שנרשמת לכל שורה בקובץ ה-dead-letter */
+    public static final int DEAD_LETTER_REASON_MAX_LENGTH = 500;
+    // סיבה: הודעות השגיאה של Neo4j כוללות לפעמים את כל השאילתה - מספיק תחילת ההודעה כדי להבין את הבעיה
+
+    /** תיקיית ברירת המחדל לקבצי ה-CSV של neo4j-admin */
+    public static final String NEO4J_ADMIN_EXPORT_DIR = "D:\\MediAid\\neo4j-import";
+    // סיבה: הקבצים נטענים בפקודה אחת למסד ריק, ולכן הם נשמרים במקום קבוע שאפשר להפנות אליו
+
+    /** תחילית שם קובץ צמתים (אחריה התווית) */
+    public static final String NEO4J_ADMIN_NODE_FILE_PREFIX = "nodes-";
+    // סיבה: קובץ לכל תווית - neo4j-admin קורא כמה קבצים במקביל
+
+    /** תחילית שם קובץ קשרים (אחריה סוג הקשר) */
+    public static final String NEO4J_ADMIN_RELATIONSHIP_FILE_PREFIX = "relationships-";
+    // סיבה: קובץ לכל סוג קשר - קל לבדוק ולטעון מחדש סוג בודד
+
+    /** גודל החוצץ בכתיבת קבצי CSV דחוסים */
+    public static final int NEO4J_ADMIN_CSV_BUFFER_SIZE = 64 * 1024;
+    // סיבה: פחות קריאות למערכת ולדחיסה על שורות קצרות
+
     /** נתיב לקובץ config.properties */
     public static final String CONFIG_FILE_PATH = "D:\\MediAid\\mediAid-server\\src\\main\\resources\\config.properties";
     // סיבה: נתיב קבוע לקובץ ההגדרות של האפליקציה
@@ -160,4 +257,46 @@ public class DatabaseConstants {
             "ICD10CM"     // ICD-10 Clinical Modification
     };
     // סיבה: מקורות המידע המהימנים ביותר לסימפטומים ב-UMLS
+
+    // =============== סוגים נוספים לגרף (ללא טבלה ב-PostgreSQL) ===============
+
+    /** סוגים סמנטיים לפרוצדורות ב-UMLS */
+    public static final String[] PROCEDURE_SEMANTIC_TYPES = {
+            "T060", // Diagnostic Procedure
+            "T061"  // Therapeutic or Preventive Procedure
+    };
+    // סיבה: פרוצדורות אבחון וטיפול שמופיעות בקשרי REQUIRES_TEST ו-TREATS
+
+    /** סוגים סמנטיים לבדיקות מעבדה ב-UMLS */
+    public static final String[] LAB_TEST_SEMANTIC_TYPES = {
+            "T059", // Laboratory Procedure
+            "T034"  // Laboratory or Test Result
+    };
+    // סיבה: בדיקות מעבדה ותוצאותיהן
+
+    /** סוגים סמנטיים למבנים אנטומיים ב-UMLS */
+    public static final String[] ANATOMY_SEMANTIC_TYPES = {
+            "T017", // Anatomical Structure
+            "T023", // Body Part, Organ, or Organ Component
+            "T029", // Body Location or Region
+            "T030"  // Body Space or Junction
+    };
+    // סיבה: יעדי קשרי LOCATED_IN
+
+    /** סוגים סמנטיים לפונקציות ביולוגיות ב-UMLS */
+    public static final String[] BIOLOGICAL_FUNCTION_SEMANTIC_TYPES = {
+            "T038", // Biologic Function
+            "T039", // Physiologic Function
+            "T042"  // Organ or Tissue Function
+    };
+    // סיבה: מנגנונים ביולוגיים שמקשרים בין תרופות למחלות
+
+    /** מקורות מידע מועדפים לסוגי הגרף הנוספים */
+    public static final String[] GRAPH_TYPE_PREFERRED_SOURCES = {
+            "SNOMEDCT_US", // SNOMED CT
+            "MSH",        // Medical Subject Headings
+            "LNC",        // LOINC
+            "NCI"         // National Cancer Institute
+    };
+    // סיבה: המקורות עם הכיסוי הרחב ביותר לפרוצדורות, בדיקות ואנטומיה
 }
\ No newline at end of file
@@ -21,6 +21,10 @@ public class MedicalAnalysisConstants {
     public static final int MAX_PATHWAYS_PER_SOURCE = 15;
     // סיבה: מספיק מסלולים לניתוח מבלי להציף את המערכת
 
+    /** מספר מקסימלי של מסלולים לכל סימפטום יעד ממקור אחד */
+    public static final int MAX_PATHWAYS_PER_TARGET = 10;
+    // סיבה: בחיפוש מרובה יעדים כל סימפטום מקבל את המסלולים הטובים שלו, ולא רק הסימפטום עם הציונים הגבוהים
+
     /** רמת ביטחון מינימלית למסלול רפואי */
     public static final double MIN_PATHWAY_CONFIDENCE = 0.1;
     // סיבה: סף נמוך מספיק שלא יפסיד מידע, אבל יסנן רעש
@@ -51,6 +55,18 @@ public class MedicalAnalysisConstants {
     public static final double MIN_RISK_PROPAGATION = 0.05;
     // סיבה: מתחת לזה הסיכון זניח מבחינה קלינית
 
+    /** עומק מקסימלי לפרופגציית סיכון */
+    public static final int MAX_RISK_PROPAGATION_DEPTH = 4;
+    // סיבה: אחרי 4 צעדים הדעיכה (0.85^4) והמשקלים משאירים סיכון זניח
+
+    /** מספר המסלולים שנבדקים בהרחבה לכל סימפטום יעד */
+    public static final int RISK_PROPAGATION_PATHS_PER_TARGET = 20;
+    // סיבה: מגביל את ההרחבה מגורם סיכון אחד, וגדל עם מספר הסימפטומים שהיא מכסה
+
+    /** מספר המסלולים הטובים שנספרים לכל זוג גורם סיכון-סימפטום */
+    public static final int MAX_RISK_PATHS_PER_PAIR = 5;
+    // סיבה: המסלולים החזקים קובעים את הסיכון; הרבה מסלולים חלשים היו מנפחים את הסכום
+
     // =============== רמות חומרה וציוני סיכון ===============
 
     /** ציון סיכון למחלה חמורה - מבוסס על סטנדרט WHO */
@@ -100,6 +116,10 @@ public class MedicalAnalysisConstants {
     public static final int MAX_COMMUNITY_DETECTION_ITERATIONS = 100;
     // סיבה: מספיק איטרציות להתכנסות מבלי לתקוע את המערכת
 
+    /** קידומת לשם הטלת GDS לזיהוי קהילות - לכל קריאה מתווסף מזהה ייחודי */
+    public static final String GDS_GRAPH_NAME_PREFIX = "user-medical-network-";
+    // סיבה: שם קבוע מתנגש בין בקשות במקביל, והטלה שנשארה אחרי כישלון חוסמת את כל הבאות
+
     /** בסיס לחישוב cohesion score - מנורמל לפי גודל קהילה */
     public static final double COHESION_BASE_NORMALIZER = 10.0;
     // סיבה: נורמליזציה של cohesion score לפי גודל הקהילה
@@ -207,6 +227,34 @@ public class MedicalAnalysisConstants {
     /** תיאור fallback לקהילה */
     public static final String FALLBACK_COMMUNITY_DESCRIPTION = "User medical profile community (fallback)";
 
+    // =============== זמני שלבי הניתוח ===============
+
+    /** זמן מקסימלי לשלב איתור הקהילות (מילישניות) */
+    public static final long COMMUNITY_STAGE_TIMEOUT_MS = 3000;
+    // סיבה: GDS יוצר ומוחק גרף זמני - השלב האיטי ביותר, והתוכנית נבנית גם בלי קהילות
+
+    /** זמן מקסימלי לשלב חיפוש המסלולים (מילישניות) */
+    public static final long PATHWAY_STAGE_TIMEOUT_MS = 4000;
+    // סיבה: הרחבה עד 5 צעדים מכל הישויות; המסלולים הם עיקר ההסבר ולכן מקבלים את התקציב הגדול ביותר
+
+    /** זמן מקסימלי לשלב חישוב הסיכונים (מילישניות) */
+    public static final long RISK_STAGE_TIMEOUT_MS = 3000;
+    // סיבה: הרחבה עד 4 צעדים מגורמי הסיכון בלבד
+
+    /** זמן מקסימלי לשלב הקשרים הבסיסיים (מילישניות) */
+    public static final long CONNECTIONS_STAGE_TIMEOUT_MS = 2000;
+    // סיבה: שלוש שאילתות של קשר ישיר, בלי הרחבה - אמורות להסתיים מהר
+
+    // =============== גרף רפואי בזיכרון ===============
+
+    /** מספר מקסימלי של קשרים שנבדקים בהרחבה אחת בגרף שבזיכרון */
+    public static final int IN_MEMORY_MAX_EXPANSION_STEPS = 1_000_000;
+    // סיבה: צומת עם אלפי שכנים בעומק 5 מתפוצץ; התקציב שומר על תשובה בתוך מילישניות בודדות
+
+    /** מספר מקסימלי של טיפולים או בדיקות שמוחזרים לכל סימפטום או מחלה */
+    public static final int MAX_LOOKUP_RESULTS_PER_ENTITY = 5;
+    // סיבה: זהה ל-LIMIT 5 בשאילתות הטיפולים והבדיקות ב-Neo4j, כדי ששני המסלולים יחזירו אותן תוצאות
+
     // =============== הגדרות למצב Demo ===============
 
     /** מספר מקסימלי של CUIs במצב Demo */
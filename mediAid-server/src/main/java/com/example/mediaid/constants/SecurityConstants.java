@@ -161,7 +161,12 @@ public class SecurityConstants {
             "/api/public/**",
             "/api/admin/**",
             "/api/medications/search",
-            "/api/diseases/search"
+            "/api/diseases/search",
+            "/actuator/health",
+            "/actuator/health/**",
+            "/livez",
+            "/readyz",
+            "/bootstrapz"
     };
     // סיבה: endpoints שצריכים להיות פתוחים לגישה ללא אימות
 }
\ No newline at end of file
@@ -11,6 +11,9 @@ import java.util.List;
 @NoRepositoryBean
 public interface BaseUmlsRepository<T extends BaseUmlsEntity> extends JpaRepository<T, Long> {
     T findByCui(String cui);
+
+    // קריאה לפי מפתח (id > lastId) - עלות קבועה לכל עמוד, בניגוד ל-OFFSET שסורק את כל העמודים הקודמים
+    List<T> findByIdGreaterThanOrderByIdAsc(Long lastId, Pageable pageable);
     List<T> findByNameContainingIgnoreCaseOrderByNameAsc(String query, Pageable pageable);
 
     // חיפוש במונחי Demo (לפי CUI + שם)
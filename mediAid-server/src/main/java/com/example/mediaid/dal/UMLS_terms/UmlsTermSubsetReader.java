@@ -0,0 +1,66 @@
+package com.example.mediaid.dal.UMLS_terms;
+
+import jakarta.persistence.Table;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.*;
+import java.util.Collection;
+import java.util.function.BiConsumer;
+
+import static com.example.mediaid.constants.DatabaseConstants.PAGE_SIZE;
+
+/**
+ * קריאת תת-קבוצה של מונחים לפי רשימת CUI מותרים
+ * הסינון נעשה במסד (cui = ANY(מערך) על העמודה הייחודית והמאונדקסת), והתוצאה נקראת בזרימה עם cursor,
+ * כך שגם טבלה של מאות אלפי מונחים לא נטענת לזיכרון כדי לבחור ממנה כמה עשרות.
+ */
+@Component
+public class UmlsTermSubsetReader {
+
+    private final DataSource dataSource;
+
+    @Autowired
+    public UmlsTermSubsetReader(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * מעבר על המונחים של הישות שה-CUI שלהם ברשימה
+     * @param entityClass - מחלקת הישות (Disease / Medication / Symptom) - ממנה נלקח שם הטבלה
+     * @param action - מקבל (cui, name)
+     * @return מספר המונחים שנמצאו
+     */
+    public long forEachTerm(Class<? extends BaseUmlsEntity> entityClass, Collection<String> cuis,
+                            BiConsumer<String, String> action) throws SQLException {
+        if (cuis.isEmpty()) {
+            return 0;
+        }
+        String tableName = entityClass.getAnnotation(Table.class).name();
+        long count = 0;
+
+        try (Connection connection = dataSource.getConnection()) {
+            // ה-driver של PostgreSQL מזרים בעזרת cursor רק בתוך טרנזקציה
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "SELECT cui, name FROM " + tableName + " WHERE cui = ANY(?) ORDER BY id")) {
+                Array cuiArray = connection.createArrayOf("varchar", cuis.toArray(new String[0]));
+                statement.setArray(1, cuiArray);
+                statement.setFetchSize(PAGE_SIZE);
+                try (ResultSet rows = statement.executeQuery()) {
+                    while (rows.next()) {
+                        action.accept(rows.getString(1), rows.getString(2));
+                        count++;
+                    }
+                }
+                cuiArray.free();
+                connection.commit();
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.mediaid.neo4j;
+
+import org.neo4j.driver.exceptions.ServiceUnavailableException;
+import org.neo4j.driver.exceptions.SessionExpiredException;
+import org.neo4j.driver.exceptions.TransientException;
+
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * כתיבת אצווה עם בידוד השורות הפגומות בחציה חוזרת
+ * אם האצווה נכשלת היא מתחלקת לשני חצאים שכל אחד מהם נכתב (ובמקרה של כישלון מתחלק שוב) בנפרד,
+ * עד ששורה בודדת שנכשלת נמסרת ל-dead-letter. כך שורה פגומה אחת עולה O(log n) טרנזקציות,
+ * ורוב האצווה עדיין נכתבת בטרנזקציות גדולות.
+ * שגיאה שאינה קשורה לשורות (מסד לא זמין וכדומה) לא מפוצלת - כל האצווה נמסרת ל-dead-letter עם הסיבה.
+ */
+public final class BatchBisector {
+
+    /**
+     * כתיבת קבוצת שורות בטרנזקציה אחת
+     */
+    @FunctionalInterface
+    public interface BatchWriter<T> {
+        int write(List<T> rows) throws Exception;
+    }
+
+    /**
+     * קבלת שורה שלא נכתבה, עם סיבת הכישלון
+     */
+    @FunctionalInterface
+    public interface DeadLetterSink<T> {
+        void reject(T row, Exception cause);
+    }
+
+    private BatchBisector() {
+    }
+
+    /**
+     * האם כישלון של כתיבה ל-Neo4j יכול לנבוע משורה מסוימת - שגיאות חיבור ושגיאות זמניות
+     * (שה-driver כבר ניסה שוב בטרנזקציה המנוהלת) לא ייעלמו מפיצול האצווה
+     */
+    public static boolean isRowFailure(Exception e) {
+        return !(e instanceof ServiceUnavailableException
+                || e instanceof SessionExpiredException
+                || e instanceof TransientException);
+    }
+
+    /**
+     * @param splittable - האם הכישלון יכול לנבוע משורה מסוימת (ולכן שווה לפצל)
+     * @return סכום מה שהכתיבות המוצלחות החזירו
+     */
+    public static <T> int write(List<T> rows, BatchWriter<T> writer, Predicate<Exception> splittable,
+                                DeadLetterSink<T> deadLetters) {
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        try {
+            return writer.write(rows);
+        } catch (Exception e) {
+            if (rows.size() == 1 || !splittable.test(e)) {
+                rows.forEach(row -> deadLetters.reject(row, e));
+                return 0;
+            }
+            int middle = rows.size() / 2;
+            return write(rows.subList(0, middle), writer, splittable, deadLetters)
+                    + write(rows.subList(middle, rows.size()), writer, splittable, deadLetters);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.mediaid.neo4j;
+
+import org.neo4j.driver.Driver;
+import org.neo4j.driver.Record;
+import org.neo4j.driver.Session;
+import org.neo4j.driver.Values;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static com.example.mediaid.constants.DatabaseConstants.*;
+
+/**
+ * הסכמה של התווית המשותפת Concept
+ * כל צומת עם CUI נושא גם את התווית Concept, ואילוץ ייחודיות על Concept(cui)
+ * מאפשר לשאילתות לחפש צומת לפי cui ב-index seek במקום סריקה של כל הצמתים.
+ * בנוסף - אינדקס על cui לכל תווית סוג, לשאילתות שמתחילות מתווית הסוג.
+ */
+@Component
+public class ConceptSchema {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConceptSchema.class);
+
+    private final Driver neo4jDriver;
+
+    //הסכמה נבדקת פעם אחת לכל הפעלה של השרת
+    private volatile boolean ensured = false;
+
+    @Autowired
+    public ConceptSchema(Driver neo4jDriver) {
+        this.neo4jDriver = neo4jDriver;
+    }
+
+    /**
+     * פקודות ה-Cypher של הסכמה - האילוץ על Concept(cui) ואינדקס cui לכל תווית סוג.
+     * neo4j-admin import לא יוצר סכמה, ולכן הן מודפסות גם ליד פקודת הטעינה.
+     */
+    public static List<String> schemaStatements() {
+        List<String> statements = new ArrayList<>();
+        statements.add(conceptConstraintStatement());
+        for (String entityType : INDEXED_ENTITY_TYPES) {
+            statements.add(labelIndexStatement(entityType));
+        }
+        return statements;
+    }
+
+    /**
+     * השלמת התווית Concept לצמתים קיימים ויצירת האילוץ (או אינדקס חלופי) והאינדקסים לפי תווית
+     */
+    public synchronized void ensureConceptSchema() {
+        if (ensured) {
+            return;
+        }
+        try {
+            backfillConceptLabel();
+            createConstraintOrIndex();
+            createLabelIndexes();
+            ensured = true;
+        } catch (Exception e) {
+            logger.warn("Could not set up the {} schema: {}", EntityTypes.CONCEPT, e.getMessage());
+        }
+    }
+
+    /**
+     * יצירת הסכמה רק אם חסר בה משהו - למשל אחרי טעינה ב-neo4j-admin, כשהשרת עולה בלי ייבוא
+     */
+    public synchronized void ensureConceptSchemaIfMissing() {
+        if (ensured) {
+            return;
+        }
+        try {
+            if (isSchemaInPlace()) {
+                ensured = true;
+                return;
+            }
+        } catch (Exception e) {
+            logger.warn("Could not inspect the graph schema: {}", e.getMessage());
+            return;
+        }
+        logger.info("Graph schema is incomplete - creating the {} constraint and cui indexes", EntityTypes.CONCEPT);
+        ensureConceptSchema();
+    }
+
+    // האם יש אינדקס (או אילוץ, שיוצר אינדקס) על cui ל-Concept ולכל תווית סוג
+    private boolean isSchemaInPlace() {
+        Set<String> indexedLabels = new HashSet<>();
+        try (Session session = neo4jDriver.session()) {
+            for (Record record : session.run("SHOW INDEXES YIELD labelsOrTypes, properties, entityType " +
+                    "WHERE entityType = 'NODE' AND properties = ['cui'] RETURN labelsOrTypes").list()) {
+                indexedLabels.addAll(record.get("labelsOrTypes").asList(value -> value.asString()));
+            }
+        }
+        return indexedLabels.contains(EntityTypes.CONCEPT) && indexedLabels.containsAll(List.of(INDEXED_ENTITY_TYPES));
+    }
+
+    /**
+     * הוספת Concept לצמתים שנוצרו לפני שהתווית הייתה קיימת, באצוות לפי תווית הסוג
+     */
+    private void backfillConceptLabel() {
+        long total = 0;
+        try (Session session = neo4jDriver.session()) {
+            for (String entityType : INDEXED_ENTITY_TYPES) {
+                String query = "MATCH (n:`" + entityType + "`) " +
+                        "WHERE n.cui IS NOT NULL AND NOT n:" + EntityTypes.CONCEPT + " " +
+                        "WITH n LIMIT $limit " +
+                        "SET n:" + EntityTypes.CONCEPT;
+
+                int labelled;
+                do {
+                    labelled = session.writeTransaction(tx -> tx.run(query,
+                                    Values.parameters("limit", CONCEPT_BACKFILL_BATCH_SIZE))
+                            .consume().counters().labelsAdded());
+                    total += labelled;
+                } while (labelled == CONCEPT_BACKFILL_BATCH_SIZE);
+            }
+        }
+        if (total > 0) {
+            logger.info("Added the {} label to {} existing nodes", EntityTypes.CONCEPT, total);
+        }
+    }
+
+    /**
+     * אילוץ ייחודיות על cui. אם בגרף כבר יש כמה צמתים לאותו CUI האילוץ נכשל,
+     * ואז נוצר אינדקס רגיל כדי שהחיפוש עדיין יתחיל ב-index seek
+     */
+    private void createConstraintOrIndex() {
+        try (Session session = neo4jDriver.session()) {
+            try {
+                session.run(conceptConstraintStatement()).consume();
+                logger.info("Uniqueness constraint on {}(cui) is in place", EntityTypes.CONCEPT);
+            } catch (Exception e) {
+                logger.warn("Could not create uniqueness constraint on {}(cui), duplicate CUIs in graph? {}",
+                        EntityTypes.CONCEPT, e.getMessage());
+                session.run("CREATE INDEX " + CONCEPT_CUI_INDEX + " IF NOT EXISTS " +
+                        "FOR (n:" + EntityTypes.CONCEPT + ") ON (n.cui)").consume();
+                logger.info("Created fallback index on {}(cui)", EntityTypes.CONCEPT);
+            }
+        }
+    }
+
+    /**
+     * אינדקס על cui לכל תווית סוג
+     */
+    private void createLabelIndexes() {
+        try (Session session = neo4jDriver.session()) {
+            for (String entityType : INDEXED_ENTITY_TYPES) {
+                session.run(labelIndexStatement(entityType)).consume();
+            }
+        }
+        logger.info("Indexes on cui are in place for {} entity types", INDEXED_ENTITY_TYPES.length);
+    }
+
+    private static String conceptConstraintStatement() {
+        return "CREATE CONSTRAINT " + CONCEPT_CUI_CONSTRAINT + " IF NOT EXISTS " +
+                "FOR (n:" + EntityTypes.CONCEPT + ") REQUIRE n.cui IS UNIQUE";
+    }
+
+    private static String labelIndexStatement(String entityType) {
+        return "CREATE INDEX IF NOT EXISTS FOR (n:" + entityType + ") ON (n.cui)";
+    }
+}
@@ -1,18 +1,29 @@
 package com.example.mediaid.neo4j;
 
 import com.example.mediaid.bl.DemoMode;
+import com.example.mediaid.bl.bootstrap.BootstrapPhase;
+import com.example.mediaid.bl.bootstrap.BootstrapStatus;
+import com.example.mediaid.constants.DatabaseConstants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.boot.context.event.ApplicationReadyEvent;
-import org.springframework.context.event.EventListener;
 import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * רכיב  המריץ את תהליך ייבוא הנתונים הרפואיים
+ * מופעל ברקע על ידי DataBootstrapService אחרי טעינת טבלאות המונחים
  */
 @Component
 public class DataImportRunner {
@@ -22,25 +33,36 @@ public class DataImportRunner {
     private final UmlsEntityImporter entityImporter;
     private final UmlsRelationshipImporter relationshipImporter;
     private final RiskFactorSer riskFactorSer;
+    private final Neo4jAdminCsvExporter csvExporter;
     private final Environment environment;
+    private final BootstrapStatus bootstrapStatus;
+    private final ImportJobController importJob;
+    private final ConceptSchema conceptSchema;
 
     @Autowired
     public DataImportRunner(
             UmlsEntityImporter entityImporter,
             UmlsRelationshipImporter relationshipImporter,
             RiskFactorSer riskFactorSer,
-            Environment environment) {
+            Neo4jAdminCsvExporter csvExporter,
+            Environment environment,
+            BootstrapStatus bootstrapStatus,
+            ImportJobController importJob,
+            ConceptSchema conceptSchema) {
 
         this.entityImporter = entityImporter;
         this.relationshipImporter = relationshipImporter;
         this.riskFactorSer = riskFactorSer;
+        this.csvExporter = csvExporter;
         this.environment = environment;
+        this.bootstrapStatus = bootstrapStatus;
+        this.importJob = importJob;
+        this.conceptSchema = conceptSchema;
     }
 
     /**
      * נקודת כניסה עיקרית לתהליך הייבוא המלא
      */
-    @EventListener(ApplicationReadyEvent.class)
     public void runDataImport() {
         boolean importEnabled = Boolean.parseBoolean(
                 environment.getProperty("mediaid.data.import.enabled", "false"));
@@ -51,6 +73,21 @@ public class DataImportRunner {
         boolean importRelationships = Boolean.parseBoolean(
                 environment.getProperty("mediaid.data.import.relationships", "false"));
 
+        // bolt - כתיבה לגרף החי; neo4j-admin - ייצוא קבצים לטעינה לא מקוונת
+        String importMode = environment.getProperty("mediaid.data.import.mode", "bolt");
+
+        if (importEnabled && "neo4j-admin".equalsIgnoreCase(importMode)) {
+            runCsvExport(importRelationships);
+            return;
+        }
+
+        if (importEnabled && !importJob.begin()) {
+            // רענון שהופעל דרך /actuator/importjob כבר כותב לגרף
+            logger.warn("Graph import job already running - skipping bootstrap import");
+            bootstrapStatus.skip(BootstrapPhase.GRAPH_ENTITIES);
+            bootstrapStatus.skip(BootstrapPhase.GRAPH_RELATIONSHIPS);
+            return;
+        }
 
         if (importEnabled) {
             try {
@@ -62,22 +99,12 @@ public class DataImportRunner {
                 // שלב 1: ייבוא ישויות מ-PostgreSQL ל-Neo4j
                 if (importEntities) {
                     logger.info("Starting entity import from PostgreSQL to Neo4j");
-
-                    if (DemoMode.MODE) {
-                        logger.info("Using demo-specific import method");
-                        entityImporter.importDemoEntitiesFromDB();
-                    } else {
-                        logger.info("Using full import method");
-                        entityImporter.importAllEntitiesFromDB();
-                    }
-
-                    // הצגת סטטיסטיקות ישויות
-                    Map<String, Long> entityStats = entityImporter.getImportStatistics();
-                    logger.info("Entity import statistics:");
-                    entityStats.forEach((type, count) ->
-                            logger.info("  {}: {} entities", type, count));
+                    bootstrapStatus.start(BootstrapPhase.GRAPH_ENTITIES);
+                    importEntities();
+                    bootstrapStatus.complete(BootstrapPhase.GRAPH_ENTITIES);
                 } else {
                     logger.info("Entity import disabled");
+                    bootstrapStatus.skip(BootstrapPhase.GRAPH_ENTITIES);
                 }
 
                 // שלב 2: ייבוא קשרים ישירות מ-MRREL
@@ -90,32 +117,150 @@ public class DataImportRunner {
                                 DemoMode.MODE ? "ENABLED" : "DISABLED");
 
                         // ייבוא ישיר מ-MRREL ל- Neo4j
+                        bootstrapStatus.start(BootstrapPhase.GRAPH_RELATIONSHIPS);
                         relationshipImporter.importRelationships(mrrelPath);
+                        bootstrapStatus.complete(BootstrapPhase.GRAPH_RELATIONSHIPS);
 
                     } else {
                         logger.warn("MRREL file path not configured - skipping relationship import");
                         logger.info("To enable relationship import, set mediaid.umls.mrrel.path in application.properties");
+                        bootstrapStatus.skip(BootstrapPhase.GRAPH_RELATIONSHIPS);
                     }
                 } else {
                     logger.info("Relationship import disabled");
+                    bootstrapStatus.skip(BootstrapPhase.GRAPH_RELATIONSHIPS);
                 }
 
 
                 logger.info("=== Data import completed successfully ===");
+                importJob.complete();
                 printFinalSummary();
 
             } catch (Exception e) {
-                logger.error("Critical error in data import: {}", e.getMessage(), e);
-                logger.error("Import process failed - system may not function properly");
+                if (e instanceof CancellationException) {
+                    logger.warn("Data import cancelled through the import job endpoint");
+                } else {
+                    logger.error("Critical error in data import: {}", e.getMessage(), e);
+                    logger.error("Import process failed - system may not function properly");
+                }
+                importJob.fail(e);
+                BootstrapPhase phase = bootstrapStatus.currentPhase();
+                if (phase != null) {
+                    bootstrapStatus.fail(phase, e instanceof CancellationException ? "Import cancelled" : e.getMessage());
+                }
+                // שלבים שלא הגיעו אליהם בגלל הכישלון
+                for (BootstrapPhase remaining : BootstrapPhase.values()) {
+                    if (!bootstrapStatus.getState(remaining).isFinished()) {
+                        bootstrapStatus.skip(remaining);
+                    }
+                }
             }
         } else {
             logger.info("Data import disabled");
             logger.info("To enable data import, set mediaid.data.import.enabled=true in application.properties");
+            // גרף שנטען ב-neo4j-admin מגיע בלי אילוצים ואינדקסים
+            conceptSchema.ensureConceptSchemaIfMissing();
+            bootstrapStatus.skip(BootstrapPhase.GRAPH_ENTITIES);
+            bootstrapStatus.skip(BootstrapPhase.GRAPH_RELATIONSHIPS);
             logger.info("Demo mode status: {}", DemoMode.getDemoStats());
         }
     }
 
 
+    /**
+     * רענון הגרף בזמן שהמערכת פעילה (מופעל דרך /actuator/importjob)
+     * אותם שלבים ואותן הגדרות כמו בטעינה הראשונית, אבל בלי לסמן את שלבי ה-bootstrap - ה-API ממשיך לשרת,
+     * וקצב הכתיבה מותאם לעומס על המסד על ידי ImportThrottle.
+     */
+    public void refreshGraph() {
+        boolean importEntities = Boolean.parseBoolean(
+                environment.getProperty("mediaid.data.import.entities", "true"));
+        boolean importRelationships = Boolean.parseBoolean(
+                environment.getProperty("mediaid.data.import.relationships", "false"));
+
+        logger.info("=== Starting graph refresh (entities: {}, relationships: {}) ===", importEntities, importRelationships);
+        if (importEntities) {
+            try {
+                importEntities();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        if (importRelationships) {
+            String mrrelPath = environment.getProperty("mediaid.umls.mrrel.path");
+            if (mrrelPath != null && !mrrelPath.isEmpty()) {
+                relationshipImporter.importRelationships(mrrelPath);
+            } else {
+                logger.warn("MRREL file path not configured - skipping relationship refresh");
+            }
+        }
+        logger.info("=== Graph refresh completed ===");
+        printFinalSummary();
+    }
+
+    /**
+     * ייבוא הישויות מ-PostgreSQL - רשימת CUI מותרים, Demo או ייבוא מלא
+     */
+    private void importEntities() throws IOException {
+        String allowListFile = environment.getProperty("mediaid.data.import.cui-allow-list");
+        if (allowListFile != null && !allowListFile.isBlank()) {
+            logger.info("Using CUI allow-list import from {}", allowListFile);
+            entityImporter.importEntitySubsetFromDB(readCuiAllowList(Path.of(allowListFile)));
+        } else if (DemoMode.MODE) {
+            logger.info("Using demo-specific import method");
+            entityImporter.importDemoEntitiesFromDB();
+        } else {
+            logger.info("Using full import method");
+            entityImporter.importAllEntitiesFromDB();
+        }
+
+        // הצגת סטטיסטיקות ישויות
+        Map<String, Long> entityStats = entityImporter.getImportStatistics();
+        logger.info("Entity import statistics:");
+        entityStats.forEach((type, count) ->
+                logger.info("  {}: {} entities", type, count));
+    }
+
+    /**
+     * קובץ רשימת CUI מותרים - CUI אחד בכל שורה, שורות ריקות ושורות שמתחילות ב-# מדולגות
+     */
+    private static Set<String> readCuiAllowList(Path file) throws IOException {
+        try (Stream<String> lines = Files.lines(file)) {
+            return lines.map(String::trim)
+                    .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                    .collect(Collectors.toCollection(LinkedHashSet::new));
+        }
+    }
+
+    /**
+     * ייצוא הגרף לקבצי CSV של neo4j-admin. הגרף עצמו לא משתנה, ולכן שלבי הגרף מסומנים כמדולגים,
+     * או כנכשלים אם הייצוא נכשל
+     */
+    private void runCsvExport(boolean includeRelationships) {
+        String outputDir = environment.getProperty("mediaid.data.import.csv-dir", DatabaseConstants.NEO4J_ADMIN_EXPORT_DIR);
+        String database = environment.getProperty("mediaid.data.import.csv-database", "neo4j");
+        String mrrelPath = includeRelationships ? environment.getProperty("mediaid.umls.mrrel.path") : null;
+
+        try {
+            logger.info("=== Starting neo4j-admin CSV export ===");
+            logger.info("Demo mode status: {}", DemoMode.getDemoStats());
+            csvExporter.export(Path.of(outputDir), mrrelPath, database);
+            logger.info("=== CSV export completed - run the import command above on a stopped database ===");
+        } catch (Exception e) {
+            logger.error("Error exporting neo4j-admin CSV files: {}", e.getMessage(), e);
+            String error = "neo4j-admin CSV export failed: " + e.getMessage();
+            bootstrapStatus.fail(BootstrapPhase.GRAPH_ENTITIES, error);
+            if (includeRelationships) {
+                bootstrapStatus.fail(BootstrapPhase.GRAPH_RELATIONSHIPS, error);
+            } else {
+                bootstrapStatus.skip(BootstrapPhase.GRAPH_RELATIONSHIPS);
+            }
+            return;
+        }
+        bootstrapStatus.skip(BootstrapPhase.GRAPH_ENTITIES);
+        bootstrapStatus.skip(BootstrapPhase.GRAPH_RELATIONSHIPS);
+    }
+
     /**
      * הצגת סיכום מערכת מפורט
      */
@@ -0,0 +1,81 @@
+package com.example.mediaid.neo4j;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+import static com.example.mediaid.constants.DatabaseConstants.DEAD_LETTER_REASON_MAX_LENGTH;
+
+/**
+ * קובץ השורות שנכשלו בריצת ייבוא אחת
+ * הקובץ נוצר רק בשורה הראשונה שנכשלת (ריצה נקייה לא משאירה קבצים ריקים), והכתיבה אליו בטוחה מכמה תהליכונים.
+ */
+public class DeadLetterFile implements AutoCloseable {
+
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private final Path path;
+    private BufferedWriter writer;
+    private long count;
+
+    /**
+     * @param prefix - תחילת שם הקובץ; אחריה חותמת הזמן של הריצה
+     * @param extension - סיומת הקובץ (RRF לקשרים שאפשר להריץ שוב, txt לרשימת CUI)
+     */
+    public DeadLetterFile(Path dir, String prefix, String extension) {
+        this.path = dir.resolve(prefix + "-" + LocalDateTime.now().format(TIMESTAMP) + "." + extension);
+    }
+
+    public synchronized void write(String... lines) {
+        try {
+            if (writer == null) {
+                Files.createDirectories(path.getParent());
+                writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+            }
+            for (String line : lines) {
+                writer.write(line);
+                writer.newLine();
+            }
+            count++;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write dead-letter file " + path, e);
+        }
+    }
+
+    /**
+     * מספר הרשומות שנכתבו
+     */
+    public synchronized long count() {
+        return count;
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    /**
+     * סיבת הכישלון בשורה אחת, בלי התווים שמפרידים שדות ושורות
+     */
+    public static String reason(Exception cause) {
+        String message = cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
+        message = message.replaceAll("[|\\r\\n]+", " ").trim();
+        return message.length() > DEAD_LETTER_REASON_MAX_LENGTH
+                ? message.substring(0, DEAD_LETTER_REASON_MAX_LENGTH) : message;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not close dead-letter file " + path, e);
+            }
+        }
+    }
+}
@@ -21,6 +21,9 @@ public class EntityTypes {
 
     public static final String LABORATORY_TEST = "LaboratoryTest";
 
+    // תווית משותפת לכל צומת שיש לו CUI - מאפשרת חיפוש לפי cui בלי לדעת את הסוג
+    public static final String CONCEPT = "Concept";
+
     // מקורות נתונים מועדפים - לסינון
     public static final Set<String> PREFERRED_SOURCES = new HashSet<>(Arrays.asList(
             "SNOMEDCT_US",  // המקור האמין ביותר לקשרים קליניים
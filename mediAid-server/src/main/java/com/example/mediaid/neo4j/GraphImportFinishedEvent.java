@@ -0,0 +1,7 @@
+package com.example.mediaid.neo4j;
+
+/**
+ * ריצת ייבוא לגרף הסתיימה (גם בביטול או בכישלון - ייתכן שחלק מהגרף כבר השתנה)
+ */
+public record GraphImportFinishedEvent(ImportJobController.JobState state) {
+}
@@ -0,0 +1,205 @@
+package com.example.mediaid.neo4j;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.example.mediaid.constants.DatabaseConstants.IMPORT_TARGET_COMMIT_MS;
+import static com.example.mediaid.constants.DatabaseConstants.RELATIONSHIP_WRITER_THREADS;
+
+/**
+ * ניהול ריצת ייבוא לגרף: התחלה, השהיה, המשך, ביטול ומצב (נחשף ב-/actuator/importjob)
+ * לכל ריצה נוצר ImportThrottle חדש, שהמייבאים מבקשים ממנו אישור לפני כל כתיבה - כך ההשהיה והביטול
+ * נכנסים לתוקף בין אצוות, והקצב מותאם לזמני ה-commit בלי הפסקות קבועות.
+ */
+@Component
+public class ImportJobController {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImportJobController.class);
+
+    public enum JobState {
+        IDLE, RUNNING, PAUSED, CANCELLING, CANCELLED, COMPLETED, FAILED;
+
+        /** האם ריצה פעילה (כולל מושהית או בתהליך ביטול) */
+        public boolean isActive() {
+            return this == RUNNING || this == PAUSED || this == CANCELLING;
+        }
+    }
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "mediaid-import-job");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${mediaid.data.import.target-commit-ms:" + IMPORT_TARGET_COMMIT_MS + "}")
+    private long targetCommitMs; //זמן commit שמעליו הייבוא מאט
+
+    private volatile ImportThrottle throttle = new ImportThrottle(IMPORT_TARGET_COMMIT_MS, RELATIONSHIP_WRITER_THREADS);
+    private JobState state = JobState.IDLE;
+    private Instant startedAt;
+    private Instant finishedAt;
+    private String error;
+
+    @Autowired
+    public ImportJobController(ApplicationEventPublisher eventPublisher) {
+        this.eventPublisher = eventPublisher;
+    }
+
+    /**
+     * הוויסות של הריצה הנוכחית (או האחרונה)
+     */
+    public ImportThrottle throttle() {
+        return throttle;
+    }
+
+    /**
+     * תחילת ריצה בתהליכון הנוכחי
+     * @return false אם כבר יש ריצה פעילה
+     */
+    public synchronized boolean begin() {
+        if (state.isActive()) {
+            return false;
+        }
+        throttle = new ImportThrottle(targetCommitMs, RELATIONSHIP_WRITER_THREADS);
+        state = JobState.RUNNING;
+        startedAt = Instant.now();
+        finishedAt = null;
+        error = null;
+        logger.info("Import job started (target commit {} ms, up to {} writers)", targetCommitMs, RELATIONSHIP_WRITER_THREADS);
+        return true;
+    }
+
+    public synchronized void complete() {
+        finish(throttle.isCancelled() ? JobState.CANCELLED : JobState.COMPLETED, null);
+    }
+
+    /**
+     * סיום ריצה בשגיאה - ביטול שהגיע כחריגה נרשם כ-CANCELLED
+     */
+    public synchronized void fail(Throwable cause) {
+        if (isCancellation(cause) || throttle.isCancelled()) {
+            finish(JobState.CANCELLED, null);
+        } else {
+            finish(JobState.FAILED, cause.getMessage());
+        }
+    }
+
+    private void finish(JobState finalState, String message) {
+        if (!state.isActive()) {
+            return;
+        }
+        state = finalState;
+        finishedAt = Instant.now();
+        error = message;
+        logger.info("Import job {} after {} ms", finalState.name().toLowerCase(),
+                Duration.between(startedAt, finishedAt).toMillis());
+        eventPublisher.publishEvent(new GraphImportFinishedEvent(finalState));
+    }
+
+    /**
+     * הפעלת ריצה ברקע
+     * @return false אם כבר יש ריצה פעילה
+     */
+    public synchronized boolean start(Runnable job) {
+        if (!begin()) {
+            return false;
+        }
+        executor.execute(() -> {
+            try {
+                job.run();
+                complete();
+            } catch (RuntimeException e) {
+                if (isCancellation(e)) {
+                    logger.info("Import job stopped after cancel request");
+                } else {
+                    logger.error("Import job failed: {}", e.getMessage(), e);
+                }
+                fail(e);
+            }
+        });
+        return true;
+    }
+
+    public synchronized boolean pause() {
+        if (state != JobState.RUNNING) {
+            return false;
+        }
+        throttle.pause();
+        state = JobState.PAUSED;
+        logger.info("Import job paused - writers stop after their current batch");
+        return true;
+    }
+
+    public synchronized boolean resume() {
+        if (state != JobState.PAUSED) {
+            return false;
+        }
+        throttle.resume();
+        state = JobState.RUNNING;
+        logger.info("Import job resumed");
+        return true;
+    }
+
+    public synchronized boolean cancel() {
+        if (state != JobState.RUNNING && state != JobState.PAUSED) {
+            return false;
+        }
+        throttle.cancel();
+        state = JobState.CANCELLING;
+        logger.info("Import job cancel requested - stopping after the batches in flight");
+        return true;
+    }
+
+    public synchronized JobState state() {
+        return state;
+    }
+
+    /**
+     * מצב הריצה והוויסות לתצוגה
+     */
+    public synchronized Map<String, Object> details() {
+        Map<String, Object> details = new LinkedHashMap<>();
+        details.put("state", state);
+        if (startedAt != null) {
+            details.put("startedAt", startedAt.toString());
+            Instant end = finishedAt != null ? finishedAt : Instant.now();
+            details.put(finishedAt != null ? "durationMs" : "runningForMs", Duration.between(startedAt, end).toMillis());
+        }
+        if (error != null) {
+            details.put("error", error);
+        }
+        details.put("throttle", throttle.details());
+        return details;
+    }
+
+    // ביטול יכול להגיע עטוף בחריגה של המייבא
+    private static boolean isCancellation(Throwable cause) {
+        for (Throwable t = cause; t != null; t = t.getCause()) {
+            if (t instanceof CancellationException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        throttle.cancel();
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.mediaid.neo4j;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.InvalidEndpointRequestException;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * שליטה בריצת ייבוא הגרף דרך Actuator
+ * GET /actuator/importjob - מצב הריצה והוויסות
+ * POST /actuator/importjob/{start|pause|resume|cancel}
+ * start מריץ רענון של הגרף (ישויות וקשרים לפי ההגדרות) בלי לחסום את ה-API, כך שאפשר לרענן גרף פעיל.
+ * ה-endpoint נחשף רק בפורט הניהול (management.server.port) שמאזין ל-localhost - לא בפורט של ה-API,
+ * שבו כל משתמש רשום עובר authenticated().
+ */
+@Component
+@Endpoint(id = "importjob")
+public class ImportJobEndpoint {
+
+    private final ImportJobController jobController;
+    private final DataImportRunner dataImportRunner;
+
+    @Autowired
+    public ImportJobEndpoint(ImportJobController jobController, DataImportRunner dataImportRunner) {
+        this.jobController = jobController;
+        this.dataImportRunner = dataImportRunner;
+    }
+
+    @ReadOperation
+    public Map<String, Object> status() {
+        return jobController.details();
+    }
+
+    @WriteOperation
+    public Map<String, Object> control(@Selector String action) {
+        boolean accepted = switch (action.toLowerCase()) {
+            case "start" -> jobController.start(dataImportRunner::refreshGraph);
+            case "pause" -> jobController.pause();
+            case "resume" -> jobController.resume();
+            case "cancel" -> jobController.cancel();
+            default -> throw new InvalidEndpointRequestException("Unknown import job action: " + action,
+                    "Unknown action - use start, pause, resume or cancel");
+        };
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("action", action.toLowerCase());
+        response.put("accepted", accepted);
+        response.putAll(jobController.details());
+        return response;
+    }
+}
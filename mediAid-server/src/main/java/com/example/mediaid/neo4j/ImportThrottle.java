@@ -0,0 +1,161 @@
+package com.example.mediaid.neo4j;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+
+import static com.example.mediaid.constants.DatabaseConstants.*;
+
+/**
+ * ויסות כתיבות הייבוא לגרף לפי זמן ה-commit שנמדד (AIMD), במקום הפסקות קבועות בין אצוות
+ * - commit מהיר מהיעד: אחרי חלון של commit-ים כאלה (כמספר הכותבים המותרים) נוסף כותב, וגודל האצווה גדל בצעד קבוע
+ * - commit איטי או כושל: מספר הכותבים וגודל האצווה יורדים בחצי - פעם אחת לכל גל של commit-ים שהתחילו לפני הירידה הקודמת
+ * בנוסף מחזיק את מצב ההשהיה והביטול של הריצה: כותב שמבקש אישור ממתין בזמן השהיה ומקבל CancellationException אחרי ביטול.
+ */
+public class ImportThrottle {
+
+    private final long targetCommitNanos;
+    private final int maxWriters;
+
+    private int writerLimit;
+    // נקרא בכל מועמד ב-BatchCollector, ולכן volatile ולא תחת הנעילה
+    private volatile double batchScale = 1.0;
+    private int inFlight;
+    private int fastCommits;
+    private long lastDecreaseNanos;
+    private boolean decreased;
+
+    private boolean paused;
+    private boolean cancelled;
+
+    private long commits;
+    private long slowCommits;
+    private long failedCommits;
+    private long lastCommitNanos;
+    private double averageCommitNanos;
+
+    /**
+     * @param targetCommitMs - זמן ה-commit שמעליו הייבוא מאט
+     * @param maxWriters - מספר הכותבים המקסימלי במקביל
+     */
+    public ImportThrottle(long targetCommitMs, int maxWriters) {
+        this.targetCommitNanos = targetCommitMs * 1_000_000L;
+        this.maxWriters = Math.max(1, maxWriters);
+        this.writerLimit = this.maxWriters;
+    }
+
+    /**
+     * אישור לכתיבת אצווה אחת - ממתין כל עוד הריצה מושהית או שכל הכותבים המותרים תפוסים
+     * @throws CancellationException אם הריצה בוטלה
+     */
+    public synchronized void acquire() throws InterruptedException {
+        while (true) {
+            if (cancelled) {
+                throw new CancellationException("Import cancelled");
+            }
+            if (!paused && inFlight < writerLimit) {
+                inFlight++;
+                return;
+            }
+            wait();
+        }
+    }
+
+    /**
+     * סיום כתיבת אצווה ועדכון הקצב לפי זמן ה-commit
+     * @param commitNanos - משך הטרנזקציה
+     * @param success - האם ה-commit הצליח (כישלון נחשב לעומס)
+     */
+    public synchronized void release(long commitNanos, boolean success) {
+        inFlight--;
+        commits++;
+        lastCommitNanos = commitNanos;
+        averageCommitNanos = commits == 1 ? commitNanos : averageCommitNanos * 0.9 + commitNanos * 0.1;
+
+        if (!success || commitNanos > targetCommitNanos) {
+            if (success) {
+                slowCommits++;
+            } else {
+                failedCommits++;
+            }
+            // טרנזקציה שהתחילה לפני הירידה האחרונה כבר נלקחה בחשבון
+            long now = System.nanoTime();
+            if (!decreased || now - commitNanos - lastDecreaseNanos > 0) {
+                writerLimit = Math.max(1, writerLimit / 2);
+                batchScale = Math.max(IMPORT_MIN_BATCH_SCALE, batchScale / 2);
+                lastDecreaseNanos = now;
+                decreased = true;
+            }
+            fastCommits = 0;
+        } else if (++fastCommits >= writerLimit) {
+            writerLimit = Math.min(maxWriters, writerLimit + 1);
+            batchScale = Math.min(1.0, batchScale + IMPORT_BATCH_SCALE_STEP);
+            fastCommits = 0;
+        }
+        notifyAll();
+    }
+
+    /**
+     * נקודת עצירה לתהליכונים שאינם כותבים (קוראים, מסווגים) - ממתין בזמן השהיה
+     * @throws CancellationException אם הריצה בוטלה
+     */
+    public synchronized void checkpoint() throws InterruptedException {
+        while (paused && !cancelled) {
+            wait();
+        }
+        if (cancelled) {
+            throw new CancellationException("Import cancelled");
+        }
+    }
+
+    /**
+     * גודל האצווה הנוכחי מתוך הגודל המוגדר
+     */
+    public int batchSize(int configuredSize) {
+        return Math.max(1, (int) Math.round(configuredSize * batchScale));
+    }
+
+    public synchronized int writerLimit() {
+        return writerLimit;
+    }
+
+    public synchronized void pause() {
+        paused = true;
+    }
+
+    public synchronized void resume() {
+        paused = false;
+        notifyAll();
+    }
+
+    public synchronized void cancel() {
+        cancelled = true;
+        notifyAll();
+    }
+
+    public synchronized boolean isPaused() {
+        return paused;
+    }
+
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * מצב הוויסות לתצוגה
+     */
+    public synchronized Map<String, Object> details() {
+        Map<String, Object> details = new LinkedHashMap<>();
+        details.put("writerLimit", writerLimit);
+        details.put("maxWriters", maxWriters);
+        details.put("writersInFlight", inFlight);
+        details.put("batchScale", Math.round(batchScale * 100) / 100.0);
+        details.put("targetCommitMs", targetCommitNanos / 1_000_000);
+        details.put("lastCommitMs", lastCommitNanos / 1_000_000);
+        details.put("averageCommitMs", Math.round(averageCommitNanos / 1_000_000));
+        details.put("commits", commits);
+        details.put("slowCommits", slowCommits);
+        details.put("failedCommits", failedCommits);
+        return details;
+    }
+}
@@ -0,0 +1,306 @@
+package com.example.mediaid.neo4j;
+
+import com.example.mediaid.bl.build_UMLS_terms.RrfReader;
+import com.example.mediaid.constants.ImportConstants;
+import com.example.mediaid.utils.IntHashSet;
+import com.example.mediaid.utils.IntIntHashMap;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.example.mediaid.constants.DatabaseConstants.*;
+
+/**
+ * מסווג שורות MRREL "מקומפל"
+ * במקום לבדוק כל CUI מול סט לכל סוג ולחשב את סוג הקשר והמשקל מהמחרוזות בכל שורה:
+ * - מפה אחת CUI -> מסכת סוגים (ביט לכל תווית לפי סדר INDEXED_ENTITY_TYPES)
+ * - מילון של צירופי (REL, RELA, SAB) - יש רק כמה מאות כאלה בכל MRREL - שכל אחד מהם מחושב פעם אחת
+ *   ומחזיק את סוג הקשר, המזהה המספרי שלו והמשקל.
+ * שורה שהצירוף שלה כבר במילון מסווגת בלי יצירת אובייקטים.
+ * בטוח לשימוש מכמה תהליכונים: המסכות לקריאה בלבד, והמילון מתעדכן בהעתקה (copy-on-write).
+ */
+public class MrrelClassifier {
+
+    private static final int INITIAL_DICTIONARY_CAPACITY = 1024;
+
+    private final int relField;
+    private final int relaField;
+    private final int sabField;
+
+    private final IntIntHashMap typeMasks;
+    private final IntHashSet nodeCuis = new IntHashSet();
+
+    // טבלת פיזור של צירופי (REL, RELA, SAB); מוחלפת כולה בכל הוספה
+    private volatile RelationEntry[] dictionary = new RelationEntry[INITIAL_DICTIONARY_CAPACITY];
+    private int dictionarySize;
+
+    // מזהה מספרי לכל סוג קשר - לאריזת מפתחות הכפילויות ב-long
+    private final Map<String, Integer> relationshipTypeIds = new ConcurrentHashMap<>();
+    private final AtomicInteger nextRelationshipTypeId = new AtomicInteger();
+
+    /**
+     * @param cuisByType - ה-CUI הקיימים לכל סוג ישות
+     * @param relField - אינדקס השדה REL בשורה (וכן RELA, SAB)
+     */
+    public MrrelClassifier(Map<String, IntHashSet> cuisByType, int relField, int relaField, int sabField) {
+        this.relField = relField;
+        this.relaField = relaField;
+        this.sabField = sabField;
+
+        int expected = cuisByType.values().stream().mapToInt(IntHashSet::size).sum();
+        this.typeMasks = new IntIntHashMap(expected);
+        for (int typeIndex = 0; typeIndex < INDEXED_ENTITY_TYPES.length; typeIndex++) {
+            IntHashSet cuis = cuisByType.get(INDEXED_ENTITY_TYPES[typeIndex]);
+            if (cuis == null) {
+                continue;
+            }
+            int bit = 1 << typeIndex;
+            cuis.forEach(cui -> {
+                typeMasks.put(cui, typeMasks.get(cui, 0) | bit);
+                nodeCuis.add(cui);
+            });
+        }
+    }
+
+    /**
+     * מסכת הסוגים של CUI, או 0 אם אין לו צומת
+     */
+    public int typeMask(int cui) {
+        return typeMasks.get(cui, 0);
+    }
+
+    /**
+     * התווית שבה מעגנים את הצומת - הראשונה לפי סדר INDEXED_ENTITY_TYPES
+     */
+    public static String primaryLabel(int typeMask) {
+        return INDEXED_ENTITY_TYPES[Integer.numberOfTrailingZeros(typeMask)];
+    }
+
+    /**
+     * כל ה-CUI שיש להם צומת (לסינון בקורא)
+     */
+    public IntHashSet nodeCuis() {
+        return nodeCuis;
+    }
+
+    public int dictionarySize() {
+        return dictionarySize;
+    }
+
+    /**
+     * הרשומה המחושבת של צירוף (REL, RELA, SAB) בשורה
+     */
+    public RelationEntry relation(RrfReader.RrfRow row) {
+        int hash = hash(row);
+        RelationEntry[] table = dictionary;
+        int mask = table.length - 1;
+        for (int slot = hash & mask; table[slot] != null; slot = (slot + 1) & mask) {
+            RelationEntry entry = table[slot];
+            if (entry.hash == hash && entry.matches(row, relField, relaField, sabField)) {
+                return entry;
+            }
+        }
+        return intern(row, hash);
+    }
+
+    public int relationshipTypeId(String relationshipType) {
+        return relationshipTypeIds.computeIfAbsent(relationshipType, type -> nextRelationshipTypeId.getAndIncrement());
+    }
+
+    /**
+     * צירוף חדש - חישוב מלא פעם אחת והוספה לעותק חדש של הטבלה
+     */
+    private synchronized RelationEntry intern(RrfReader.RrfRow row, int hash) {
+        RelationEntry[] table = dictionary;
+        int mask = table.length - 1;
+        for (int slot = hash & mask; table[slot] != null; slot = (slot + 1) & mask) {
+            RelationEntry entry = table[slot];
+            if (entry.hash == hash && entry.matches(row, relField, relaField, sabField)) {
+                return entry;
+            }
+        }
+
+        RelationEntry entry = createEntry(row, hash);
+        RelationEntry[] next = new RelationEntry[(dictionarySize + 1) * 2 > table.length ? table.length * 2 : table.length];
+        for (RelationEntry existing : table) {
+            if (existing != null) {
+                insert(next, existing);
+            }
+        }
+        insert(next, entry);
+        dictionarySize++;
+        dictionary = next;
+        return entry;
+    }
+
+    private RelationEntry createEntry(RrfReader.RrfRow row, int hash) {
+        String rel = row.getString(relField);
+        String rela = row.getString(relaField);
+        String sab = row.getString(sabField);
+        String relationshipType = relationshipType(rel, rela);
+        boolean excluded = relationshipType == null ||
+                ImportConstants.EXCLUDED_RELATIONSHIP_TYPES.contains(relationshipType.toLowerCase());
+        double weight = RelationshipTypes.calculateRelationshipWeight(
+                rela != null && !rela.trim().isEmpty() ? rela : rel, sab);
+        int typeId = excluded ? -1 : relationshipTypeId(relationshipType);
+        // מפתח ההשוואה נבנה מאותם תווים שה-hash נבנה מהם (בית לתו), כך שגם ערך שאינו ASCII יימצא בפעם הבאה
+        String key = new StringBuilder()
+                .append(row.field(relField)).append('|')
+                .append(row.field(relaField)).append('|')
+                .append(row.field(sabField)).toString();
+        return new RelationEntry(hash, key, rel, rela, sab, relationshipType, typeId, weight, excluded);
+    }
+
+    private static void insert(RelationEntry[] table, RelationEntry entry) {
+        int mask = table.length - 1;
+        int slot = entry.hash & mask;
+        while (table[slot] != null) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = entry;
+    }
+
+    private int hash(RrfReader.RrfRow row) {
+        int h = hashField(row.field(relField), 1);
+        h = hashField(row.field(relaField), h * 31 + '|');
+        h = hashField(row.field(sabField), h * 31 + '|');
+        return h ^ (h >>> 16);
+    }
+
+    private static int hashField(CharSequence field, int h) {
+        for (int i = 0; i < field.length(); i++) {
+            h = h * 31 + field.charAt(i);
+        }
+        return h;
+    }
+
+    /**
+     * קביעת סוג הקשר מ-REL ו-RELA
+     */
+    static String relationshipType(String rel, String rela) {
+        // בדיקת RELA תחילה (ספציפי יותר)
+        if (rela != null && !rela.trim().isEmpty()) {
+            String normalized = rela.trim().toLowerCase();
+            if (ImportConstants.UMLS_TO_NEO4J_RELATIONSHIPS.containsKey(normalized)) {
+                return ImportConstants.UMLS_TO_NEO4J_RELATIONSHIPS.get(normalized);
+            }
+            return normalizeRelationshipName(normalized);
+        }
+
+        // אם אין RELA, השתמש ב- REL
+        if (rel != null && !rel.trim().isEmpty()) {
+            String normalized = rel.trim().toUpperCase();
+            if (ImportConstants.REL_TO_RELATIONSHIP.containsKey(normalized)) {
+                return ImportConstants.REL_TO_RELATIONSHIP.get(normalized);
+            }
+            return normalizeRelationshipName(rel.trim().toLowerCase());
+        }
+
+        return null;
+    }
+
+    /**
+     * נרמול שם קשר לפורמט תקין של Neo4j
+     */
+    static String normalizeRelationshipName(String name) {
+        if (name == null || name.trim().isEmpty()) {
+            return DEFAULT_RELATIONSHIP_TYPE;
+        }
+
+        String normalized = name.toUpperCase()
+                .replace(" ", "_")
+                .replace("-", "_")
+                .replaceAll("[^A-Z0-9_]", "")
+                .replaceAll("_+", "_")
+                .replaceAll("^_+|_+$", "");
+
+        if (normalized.isEmpty() || !Character.isLetter(normalized.charAt(0))) {
+            return DEFAULT_RELATIONSHIP_TYPE;
+        }
+
+        if (normalized.length() > MAX_RELATIONSHIP_NAME_LENGTH) {
+            normalized = normalized.substring(0, MAX_RELATIONSHIP_NAME_LENGTH);
+        }
+
+        return normalized;
+    }
+
+    /**
+     * צירוף (REL, RELA, SAB) מחושב מראש
+     */
+    public static final class RelationEntry {
+        final int hash;
+        final String key;
+        final String rel;
+        final String rela;
+        final String sab;
+        final String relationshipType;
+        final int relationshipTypeId;
+        final double weight;
+        final boolean excluded;
+
+        RelationEntry(int hash, String key, String rel, String rela, String sab, String relationshipType,
+                      int relationshipTypeId, double weight, boolean excluded) {
+            this.hash = hash;
+            this.key = key;
+            this.rel = rel;
+            this.rela = rela;
+            this.sab = sab;
+            this.relationshipType = relationshipType;
+            this.relationshipTypeId = relationshipTypeId;
+            this.weight = weight;
+            this.excluded = excluded;
+        }
+
+        boolean matches(RrfReader.RrfRow row, int relField, int relaField, int sabField) {
+            CharSequence rel = row.field(relField);
+            CharSequence rela = row.field(relaField);
+            CharSequence sab = row.field(sabField);
+            if (key.length() != rel.length() + rela.length() + sab.length() + 2) {
+                return false;
+            }
+            int offset = regionMatches(rel, 0);
+            offset = offset < 0 ? -1 : regionMatches(rela, offset);
+            return offset >= 0 && regionMatches(sab, offset) == key.length() + 1;
+        }
+
+        // השוואת השדה לקטע המפתח שמתחיל ב-offset; מחזיר את תחילת הקטע הבא או -1
+        private int regionMatches(CharSequence field, int offset) {
+            for (int i = 0; i < field.length(); i++) {
+                if (key.charAt(offset + i) != field.charAt(i)) {
+                    return -1;
+                }
+            }
+            return offset + field.length() + 1;
+        }
+
+        public String relationshipType() {
+            return relationshipType;
+        }
+
+        public int relationshipTypeId() {
+            return relationshipTypeId;
+        }
+
+        public double weight() {
+            return weight;
+        }
+
+        public String source() {
+            return sab;
+        }
+
+        public String rel() {
+            return rel;
+        }
+
+        public String rela() {
+            return rela;
+        }
+
+        public boolean isExcluded() {
+            return excluded;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.mediaid.neo4j;
+
+import com.example.mediaid.bl.DemoMode;
+import com.example.mediaid.dal.UMLS_terms.BaseUmlsEntity;
+import com.example.mediaid.dal.UMLS_terms.BaseUmlsRepository;
+import com.example.mediaid.dal.UMLS_terms.DiseaseRepository;
+import com.example.mediaid.dal.UMLS_terms.MedicationRepository;
+import com.example.mediaid.dal.UMLS_terms.SymptomRepository;
+import com.example.mediaid.utils.CuiCodec;
+import com.example.mediaid.utils.IntHashSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.Consumer;
+
+import static com.example.mediaid.constants.DatabaseConstants.*;
+
+/**
+ * מצב ייבוא לא מקוון: במקום לכתוב לגרף דרך Bolt, מייצא קבצי CSV ש-neo4j-admin database import טוען למסד ריק
+ * בפקודה אחת. הצמתים נקראים מטבלאות המונחים, והקשרים מסווגים באותו קוד של UmlsRelationshipImporter.
+ */
+@Service
+public class Neo4jAdminCsvExporter {
+
+    private static final Logger logger = LoggerFactory.getLogger(Neo4jAdminCsvExporter.class);
+
+    private final DiseaseRepository diseaseRepository;
+    private final MedicationRepository medicationRepository;
+    private final SymptomRepository symptomRepository;
+    private final UmlsRelationshipImporter relationshipImporter;
+
+    @Autowired
+    public Neo4jAdminCsvExporter(DiseaseRepository diseaseRepository,
+                                 MedicationRepository medicationRepository,
+                                 SymptomRepository symptomRepository,
+                                 UmlsRelationshipImporter relationshipImporter) {
+        this.diseaseRepository = diseaseRepository;
+        this.medicationRepository = medicationRepository;
+        this.symptomRepository = symptomRepository;
+        this.relationshipImporter = relationshipImporter;
+    }
+
+    /**
+     * ייצוא הצמתים ו(אם יש נתיב MRREL) הקשרים
+     * @return פקודת neo4j-admin שטוענת את הקבצים
+     */
+    public String export(Path outputDir, String mrrelPath, String database) throws IOException {
+        logger.info("Exporting graph to neo4j-admin CSV files in {}", outputDir);
+
+        Map<String, BaseUmlsRepository<? extends BaseUmlsEntity>> repositories = new LinkedHashMap<>();
+        repositories.put(EntityTypes.DISEASE, diseaseRepository);
+        repositories.put(EntityTypes.MEDICATION, medicationRepository);
+        repositories.put(EntityTypes.SYMPTOM, symptomRepository);
+
+        // מעבר ראשון: אילו CUI שייכים לכל סוג, כדי שצומת שמופיע בכמה טבלאות ייכתב פעם אחת עם כל התוויות
+        Map<String, IntHashSet> cuisByType = new LinkedHashMap<>();
+        repositories.forEach((entityType, repository) -> {
+            IntHashSet cuis = new IntHashSet();
+            forEachEntity(repository, entity -> {
+                int code = exportableCode(entity);
+                if (code != CuiCodec.INVALID) {
+                    cuis.add(code);
+                }
+            });
+            cuisByType.put(entityType, cuis);
+            logger.info("Found {} {} nodes to export", cuis.size(), entityType);
+        });
+
+        try (Neo4jAdminCsvWriter writer = new Neo4jAdminCsvWriter(outputDir)) {
+            // מעבר שני: כתיבת הצמתים - כל CUI בקובץ של התווית הראשונה שלו
+            long nodeCount = 0;
+            for (Map.Entry<String, BaseUmlsRepository<? extends BaseUmlsEntity>> entry : repositories.entrySet()) {
+                String entityType = entry.getKey();
+                long[] written = {0};
+                forEachEntity(entry.getValue(), entity -> {
+                    int code = exportableCode(entity);
+                    if (code == CuiCodec.INVALID || !entityType.equals(primaryLabel(code, cuisByType))) {
+                        return;
+                    }
+                    writer.writeNode(entity.getCui(), entity.getName(), entityType, labelsOf(code, cuisByType));
+                    written[0]++;
+                });
+                nodeCount += written[0];
+            }
+            logger.info("Wrote {} nodes in {} files", nodeCount, writer.nodeFileCount());
+
+            if (mrrelPath != null && !mrrelPath.isEmpty()) {
+                long relationshipCount = relationshipImporter.exportRelationshipsToCsv(mrrelPath, cuisByType, writer);
+                logger.info("Wrote {} relationships in {} files", relationshipCount, writer.relationshipFileCount());
+            } else {
+                logger.warn("MRREL file path not configured - exporting nodes only");
+            }
+
+            String command = writer.importCommand(database);
+            logger.info("Load the files into an empty database with:\n{}", command);
+            logger.info("neo4j-admin import creates no schema. MediAid creates it on its next startup, " +
+                    "or run after starting the database:\n{}", String.join(";\n", ConceptSchema.schemaStatements()) + ";");
+            return command;
+        }
+    }
+
+    /**
+     * קוד ה-CUI של ישות שצריך לייצא, או INVALID אם היא לא תקינה או לא רלוונטית למצב Demo
+     */
+    private int exportableCode(BaseUmlsEntity entity) {
+        if (DemoMode.MODE && !DemoMode.isRelevantForDemo(entity.getCui())) {
+            return CuiCodec.INVALID;
+        }
+        return CuiCodec.encode(entity.getCui());
+    }
+
+    private static String primaryLabel(int code, Map<String, IntHashSet> cuisByType) {
+        for (Map.Entry<String, IntHashSet> entry : cuisByType.entrySet()) {
+            if (entry.getValue().contains(code)) {
+                return entry.getKey();
+            }
+        }
+        return null;
+    }
+
+    private static List<String> labelsOf(int code, Map<String, IntHashSet> cuisByType) {
+        List<String> labels = new ArrayList<>();
+        labels.add(EntityTypes.CONCEPT);
+        cuisByType.forEach((entityType, cuis) -> {
+            if (cuis.contains(code)) {
+                labels.add(entityType);
+            }
+        });
+        return labels;
+    }
+
+    //קריאה לפי מפתח (id > lastId) - סדר יציב ועלות קבועה לכל עמוד, ורק עמוד אחד בזיכרון
+    private static <T extends BaseUmlsEntity> void forEachEntity(BaseUmlsRepository<T> repository, Consumer<BaseUmlsEntity> action) {
+        long lastId = 0;
+        List<T> page;
+        do {
+            page = repository.findByIdGreaterThanOrderByIdAsc(lastId, PageRequest.ofSize(ENTITY_IMPORT_BATCH_SIZE));
+            page.forEach(action);
+            if (!page.isEmpty()) {
+                lastId = page.get(page.size() - 1).getId();
+            }
+        } while (page.size() == ENTITY_IMPORT_BATCH_SIZE);
+    }
+}
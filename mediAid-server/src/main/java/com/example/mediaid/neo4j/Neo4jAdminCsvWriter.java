@@ -0,0 +1,139 @@
+package com.example.mediaid.neo4j;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import static com.example.mediaid.constants.DatabaseConstants.*;
+
+/**
+ * כתיבת קבצי CSV דחוסים בפורמט של neo4j-admin database import
+ * קובץ נפרד לכל תווית צמתים ולכל סוג קשר, עם שורת כותרת בכל קובץ.
+ * כל הצמתים באותו מרחב מזהים (Concept), כך שה-CUI הוא המזהה גם בקבצי הקשרים.
+ * בטוח לכתיבה מכמה תהליכונים - כל קובץ ננעל בנפרד.
+ */
+public class Neo4jAdminCsvWriter implements AutoCloseable {
+
+    private static final String NODE_HEADER = "cui:ID(" + EntityTypes.CONCEPT + "),name,:LABEL";
+    private static final String RELATIONSHIP_HEADER = ":START_ID(" + EntityTypes.CONCEPT + "),:END_ID(" +
+            EntityTypes.CONCEPT + "),:TYPE,weight:double,source";
+
+    private final Path outputDir;
+    private final Map<String, Writer> nodeFiles = new LinkedHashMap<>();
+    private final Map<String, Writer> relationshipFiles = new LinkedHashMap<>();
+    private final List<Path> nodePaths = new ArrayList<>();
+    private final List<Path> relationshipPaths = new ArrayList<>();
+
+    public Neo4jAdminCsvWriter(Path outputDir) throws IOException {
+        this.outputDir = Files.createDirectories(outputDir);
+    }
+
+    /**
+     * @param primaryLabel - התווית שלפיה נבחר הקובץ
+     * @param labels - כל התוויות של הצומת (כולל Concept)
+     */
+    public void writeNode(String cui, String name, String primaryLabel, List<String> labels) {
+        Writer writer = fileFor(nodeFiles, nodePaths, NEO4J_ADMIN_NODE_FILE_PREFIX, primaryLabel, NODE_HEADER);
+        String row = cui + "," + quote(name) + "," + String.join(";", labels) + "\n";
+        write(writer, row);
+    }
+
+    public void writeRelationship(String cui1, String cui2, String relationshipType, double weight, String source) {
+        Writer writer = fileFor(relationshipFiles, relationshipPaths, NEO4J_ADMIN_RELATIONSHIP_FILE_PREFIX,
+                relationshipType, RELATIONSHIP_HEADER);
+        String row = cui1 + "," + cui2 + "," + relationshipType + "," + weight + "," + quote(source) + "\n";
+        write(writer, row);
+    }
+
+    /**
+     * הפקודה שטוענת את הקבצים שנכתבו למסד ריק
+     */
+    public String importCommand(String database) {
+        StringBuilder command = new StringBuilder("neo4j-admin database import full");
+        for (Path path : nodePaths) {
+            command.append(" --nodes=").append(path.toAbsolutePath());
+        }
+        for (Path path : relationshipPaths) {
+            command.append(" --relationships=").append(path.toAbsolutePath());
+        }
+        return command.append(" ").append(database).toString();
+    }
+
+    public int nodeFileCount() {
+        return nodePaths.size();
+    }
+
+    public int relationshipFileCount() {
+        return relationshipPaths.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (Map<String, Writer> files : List.of(nodeFiles, relationshipFiles)) {
+            synchronized (files) {
+                for (Writer writer : files.values()) {
+                    try {
+                        synchronized (writer) {
+                            writer.close();
+                        }
+                    } catch (IOException e) {
+                        failure = e;
+                    }
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private Writer fileFor(Map<String, Writer> files, List<Path> paths, String prefix, String key, String header) {
+        synchronized (files) {
+            Writer writer = files.get(key);
+            if (writer == null) {
+                Path path = outputDir.resolve(prefix + key + ".csv.gz");
+                try {
+                    writer = new BufferedWriter(new OutputStreamWriter(
+                            new GZIPOutputStream(Files.newOutputStream(path), NEO4J_ADMIN_CSV_BUFFER_SIZE),
+                            StandardCharsets.UTF_8), NEO4J_ADMIN_CSV_BUFFER_SIZE);
+                    writer.write(header + "\n");
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Could not create " + path, e);
+                }
+                files.put(key, writer);
+                paths.add(path);
+            }
+            return writer;
+        }
+    }
+
+    private static void write(Writer writer, String row) {
+        synchronized (writer) {
+            try {
+                writer.write(row);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    // שדה טקסט תמיד במירכאות, מירכאות פנימיות מוכפלות, ושבירות שורה מוחלפות ברווח (אחרת נדרש --multiline-fields)
+    static String quote(String value) {
+        if (value == null) {
+            return "";
+        }
+        String singleLine = value.replace('\n', ' ').replace('\r', ' ');
+        return "\"" + singleLine.replace("\"", "\"\"") + "\"";
+    }
+}
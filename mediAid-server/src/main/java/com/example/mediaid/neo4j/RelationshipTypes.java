@@ -35,6 +35,11 @@ public class RelationshipTypes {
     public static final String ACTIVE_INGREDIENT_OF = "ACTIVE_INGREDIENT_OF";
     public static final String REQUIRES_TEST = "REQUIRES_TEST";
 
+    // קשרים ששאילתות הניתוח עוברות דרכם
+    public static final String CAUSES_SYMPTOM = "CAUSES_SYMPTOM";     // מחלה → סימפטום
+    public static final String INFLUENCES = "INFLUENCES";
+    public static final String LEADS_TO = "LEADS_TO";
+
     // מיפוי מקשרי UMLS לקשרים שלנו
     public static final Map<String, String> UMLS_TO_NEO4J_RELATIONSHIPS = new HashMap<>();
     static {
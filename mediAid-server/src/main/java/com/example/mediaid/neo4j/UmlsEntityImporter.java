@@ -1,25 +1,28 @@
 package com.example.mediaid.neo4j;
 
 import com.example.mediaid.bl.DemoMode;
+import com.example.mediaid.dal.UMLS_terms.BaseUmlsEntity;
+import com.example.mediaid.dal.UMLS_terms.BaseUmlsRepository;
 import com.example.mediaid.dal.UMLS_terms.Disease;
 import com.example.mediaid.dal.UMLS_terms.DiseaseRepository;
 import com.example.mediaid.dal.UMLS_terms.Medication;
 import com.example.mediaid.dal.UMLS_terms.MedicationRepository;
 import com.example.mediaid.dal.UMLS_terms.Symptom;
 import com.example.mediaid.dal.UMLS_terms.SymptomRepository;
+import com.example.mediaid.dal.UMLS_terms.UmlsTermSubsetReader;
 
 import org.neo4j.driver.Driver;
 import org.neo4j.driver.Session;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
-import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Service;
 
+import java.nio.file.Path;
+import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.CancellationException;
 import java.util.function.Function;
 
 import static com.example.mediaid.constants.DatabaseConstants.*;
@@ -34,22 +37,35 @@ public class UmlsEntityImporter{
     private final DiseaseRepository diseaseRepository;
     private final MedicationRepository medicationRepository;
     private final SymptomRepository symptomRepository;
+    private final ConceptSchema conceptSchema;
+    private final UmlsTermSubsetReader subsetReader;
+    private final ImportJobController importJob;
 
     @Autowired
     public UmlsEntityImporter(Driver neo4jDriver,
                               DiseaseRepository diseaseRepository,
                               MedicationRepository medicationRepository,
-                              SymptomRepository symptomRepository) {
+                              SymptomRepository symptomRepository,
+                              ConceptSchema conceptSchema,
+                              UmlsTermSubsetReader subsetReader,
+                              ImportJobController importJob) {
         this.neo4jDriver = neo4jDriver;
         this.diseaseRepository = diseaseRepository;
         this.medicationRepository = medicationRepository;
         this.symptomRepository = symptomRepository;
+        this.conceptSchema = conceptSchema;
+        this.subsetReader = subsetReader;
+        this.importJob = importJob;
     }
 
     //ייבוא כל הישויות מהפוסטגרס ל-NEO4J
     public void importAllEntitiesFromDB(){
         logger.info("Start importing all entities from PostGreSQL");
+        DeadLetterFile deadLetters = entityDeadLetters();
         try{
+            //האילוץ על Concept(cui) צריך להתקיים לפני ה-MERGE כדי שכל MERGE יהיה index seek
+            conceptSchema.ensureConceptSchema();
+
             List<EntityImportConfig<?>> importConfig = Arrays.asList(
                     new EntityImportConfig<>("Diseases",diseaseRepository, EntityTypes.DISEASE, this::mapDisease),
                     new EntityImportConfig<>("Medications", medicationRepository, EntityTypes.MEDICATION, this::mapMedication),
@@ -59,101 +75,135 @@ public class UmlsEntityImporter{
             //ייבוא כל סוגי הישויות
             for (EntityImportConfig<?> config : importConfig){
                 if (config.repository!=null){
-                    importEntitiesGeneric(config);
+                    importEntitiesGeneric(config, deadLetters);
                 }else{
                     logger.info("The repository does not exist for {}", config.displayName);
                 }
             }
 
             logger.info("End importing all entities ");
+        }catch (CancellationException e){
+            logger.info("Entity import cancelled");
+            throw e;
         }catch (Exception e){
             logger.error("Error while importing all entities");
             e.printStackTrace();
+        }finally {
+            closeDeadLetters(deadLetters);
         }
     }
 
     //מתודה גנרית לייבוא ישויות
-    private <T> void importEntitiesGeneric(EntityImportConfig<T> config){
+    private <T extends BaseUmlsEntity> void importEntitiesGeneric(EntityImportConfig<T> config, DeadLetterFile deadLetters){
         logger.info("Start importing {}", config.displayName);
 
         long total = config.repository.count();
         logger.info("Total entities to import: {}", total);
 
-        int pageNumber = 0;
         int importedCount = 0;
-        List<Map<String, Object>> batch = new ArrayList<>();
-
-        Page<T> page;
+        long lastId = 0;
+        int pageSize;
+        List<T> page;
         do{
-            //דפדוף לחיסכון בזיכרון
-            Pageable pageable = PageRequest.of(pageNumber, PAGE_SIZE);
-            page = config.repository.findAll(pageable);
+            //קריאה לפי מפתח - כל עמוד הוא אצווה אחת לגרף, בגודל שהוויסות מאפשר כרגע
+            pageSize = importJob.throttle().batchSize(ENTITY_IMPORT_BATCH_SIZE);
+            page = config.repository.findByIdGreaterThanOrderByIdAsc(lastId, PageRequest.ofSize(pageSize));
+            if (page.isEmpty()) {
+                break;
+            }
 
-            for(T entity : page.getContent()){
+            List<Map<String, Object>> batch = new ArrayList<>(page.size());
+            for(T entity : page){
                 try{
                     //פונקציית מיפוי שממירה את ה־entity מה־PostgreSQL (כמו מחלה או תרופה) למבנה שמתאים לשמירה ב־Neo4j
                     Map<String, Object> mappedEntity = config.mapper.apply(entity);
                     if(mappedEntity != null && mappedEntity.containsKey("cui")){
                         batch.add(mappedEntity);
-                        importedCount++;
-                    }
-
-                    //עיבוד האצווה
-                    if (batch.size() >= ENTITY_IMPORT_BATCH_SIZE){
-                        createEntitiesInBatch(batch);
-                        batch.clear();
-                        logger.info("Imported {} entities from {}", importedCount, total);
                     }
-
                 } catch (Exception e) {
                     logger.error("Error while processing entity {}", entity, e);
                 }
             }
-            pageNumber++;
-
-        }while (page.hasNext());
+            lastId = page.get(page.size() - 1).getId();
 
-        // עיבוד האצווה האחרונה
-        if (!batch.isEmpty()) {
-            createEntitiesInBatch(batch);
+            createEntitiesInBatch(batch, deadLetters);
+            importedCount += batch.size();
             logger.info("Imported {} entities from {}", importedCount, total);
+
+        }while (page.size() == pageSize);
+    }
+
+    /**
+     * יצירת ישויות במקבץ אצוות בגרף - שאילתת UNWIND אחת לכל תווית במקום שאילתה לכל ישות
+     * צומת אחד לכל CUI: ה-MERGE נעשה על Concept (עם אילוץ הייחודיות) ותווית הסוג מתווספת עליו
+     * הכתיבה עוברת דרך הוויסות של ריצת הייבוא - ממתינה בזמן השהיה, וזמן ה-commit מעדכן את גודל העמוד הבא.
+     * אצווה שנכשלת מחולקת בחצאים עד לבידוד הישויות הפגומות, שנרשמות לקובץ ה-dead-letter.
+     */
+    private void createEntitiesInBatch(List<Map<String, Object>> entities, DeadLetterFile deadLetters) {
+        ImportThrottle throttle = importJob.throttle();
+        try {
+            throttle.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while waiting to write entities");
+        }
+
+        long start = System.nanoTime();
+        int[] rejected = {0};
+        try {
+            BatchBisector.write(entities, this::writeEntities, BatchBisector::isRowFailure, (entity, cause) -> {
+                deadLetters.write("# " + entity.get("type") + " \"" + entity.get("name") + "\": " + DeadLetterFile.reason(cause),
+                        String.valueOf(entity.get("cui")));
+                rejected[0]++;
+            });
+        } finally {
+            throttle.release(System.nanoTime() - start, rejected[0] == 0);
+        }
+
+        if (rejected[0] > 0) {
+            logger.warn("{} of {} entities failed and were written to {}", rejected[0], entities.size(), deadLetters.path());
         }
     }
 
-    //יצירת ישויות במקבץ אצוות בגרף
-    private void createEntitiesInBatch(List<Map<String, Object>> entities) {
+    private int writeEntities(List<Map<String, Object>> entities) {
+        Map<String, List<Map<String, Object>>> rowsByType = new LinkedHashMap<>();
+        for (Map<String, Object> entity : entities) {
+            Map<String, Object> row = new HashMap<>(entity);
+            String entityType = (String) row.remove("type");
+            rowsByType.computeIfAbsent(entityType, type -> new ArrayList<>()).add(row);
+        }
+
         try (Session session = neo4jDriver.session()) {
             session.writeTransaction(tx -> {
-                for (Map<String, Object> entity : entities) {
-                    String entityType = (String) entity.get("type");
-
-                    StringBuilder queryBuilder = new StringBuilder();
-                    queryBuilder.append("MERGE (n:").append(entityType).append(" {cui: $cui}) ");
-                    // אם צומת חדשה
-                    queryBuilder.append("ON CREATE SET n.name = $name");
-
-                    //ערכים נוספים אם מוגדרים
-                    for (String key : entity.keySet()) {
-                        if (!key.equals("cui") && !key.equals("name") && !key.equals("type")) {
-                            queryBuilder.append(", n.").append(key).append(" = $").append(key);
-                        }
-                    }
-
-                    // הוספת מאפיין updated_at
-                    queryBuilder.append(", n.updated_at = datetime()");
-
-                    try {
-                        tx.run(queryBuilder.toString(), entity);
-                    } catch (Exception e) {
-                        logger.warn("Error creating {}: {}", entity.get("cui"),e.getMessage());
-                    }
-                }
+                rowsByType.forEach((entityType, rows) ->
+                        tx.run(mergeQuery(entityType), Map.of("rows", rows)).consume());
                 return null;
             });
-        } catch (Exception e) {
-            logger.warn("Error creating batch: {}", e.getMessage());
-            e.printStackTrace();
         }
+        return entities.size();
+    }
+
+    /**
+     * קובץ הישויות שנכשלו - בפורמט של רשימת CUI מותרים (mediaid.data.import.cui-allow-list), כך שאפשר לייבא רק אותן שוב
+     */
+    private static DeadLetterFile entityDeadLetters() {
+        return new DeadLetterFile(Path.of(IMPORT_DEAD_LETTER_DIR), "entities-failed", "txt");
+    }
+
+    private static void closeDeadLetters(DeadLetterFile deadLetters) {
+        deadLetters.close();
+        if (deadLetters.count() > 0) {
+            logger.warn("{} entities could not be written - saved to {} (usable as a CUI allow-list to retry them)",
+                    deadLetters.count(), deadLetters.path());
+        }
+    }
+
+    // תוויות לא ניתנות לפרמטר ב-Cypher, ולכן הן חלק מהטקסט - שאילתה קבועה לכל סוג
+    private static String mergeQuery(String entityType) {
+        return "UNWIND $rows AS r " +
+                "MERGE (n:" + EntityTypes.CONCEPT + " {cui: r.cui}) " +
+                "ON CREATE SET n.name = r.name, n.updated_at = datetime() " +
+                "SET n:`" + entityType + "`";
     }
 
     //פונקציות מיפוי לכל הסוגים
@@ -224,64 +274,59 @@ public class UmlsEntityImporter{
         }
 
         logger.info("Demo mode ON - importing only demo-relevant entities");
+        importEntitySubsetFromDB(DemoMode.DEMO_CUIS);
+        logger.info("Demo entity import completed successfully");
+    }
 
-        try {
-            // ייבוא מחלות רלוונטיות לדמו
-            List<Disease> demoRelevantDiseases = diseaseRepository.findAll().stream()
-                    .filter(d -> DemoMode.isRelevantForDemo(d.getCui()))
-                    .toList();
-            logger.info("Found {} demo-relevant diseases", demoRelevantDiseases.size());
-
-            if (!demoRelevantDiseases.isEmpty()) {
-                List<Map<String, Object>> diseaseBatch = demoRelevantDiseases.stream()
-                        .map(this::mapDisease)
-                        .toList();
-                createEntitiesInBatch(diseaseBatch);
-            }
+    /**
+     * ייבוא רק של הישויות שה-CUI שלהן ברשימה (CUI של Demo או כל רשימה מוגדרת אחרת)
+     * הסינון נעשה ב-PostgreSQL והתוצאות נקראות בזרימה - הטבלאות לא נטענות לזיכרון
+     */
+    public void importEntitySubsetFromDB(Collection<String> allowedCuis) {
+        logger.info("Importing entities for {} allowed CUIs", allowedCuis.size());
+        conceptSchema.ensureConceptSchema();
 
-            // ייבוא תרופות רלוונטיות לדמו
-            List<Medication> demoRelevantMedications = medicationRepository.findAll().stream()
-                    .filter(m -> DemoMode.isRelevantForDemo(m.getCui()))
-                    .toList();
-            logger.info("Found {} demo-relevant medications", demoRelevantMedications.size());
-
-            if (!demoRelevantMedications.isEmpty()) {
-                List<Map<String, Object>> medicationBatch = demoRelevantMedications.stream()
-                        .map(this::mapMedication)
-                        .toList();
-                createEntitiesInBatch(medicationBatch);
-            }
+        Map<Class<? extends BaseUmlsEntity>, String> entityTypes = new LinkedHashMap<>();
+        entityTypes.put(Disease.class, EntityTypes.DISEASE);
+        entityTypes.put(Medication.class, EntityTypes.MEDICATION);
+        entityTypes.put(Symptom.class, EntityTypes.SYMPTOM);
 
-            // ייבוא סימפטומים רלוונטיים לדמו
-            List<Symptom> demoRelevantSymptoms = symptomRepository.findAll().stream()
-                    .filter(s -> DemoMode.isRelevantForDemo(s.getCui()))
-                    .toList();
-            logger.info("Found {} demo-relevant symptoms", demoRelevantSymptoms.size());
-
-            if (!demoRelevantSymptoms.isEmpty()) {
-                List<Map<String, Object>> symptomBatch = demoRelevantSymptoms.stream()
-                        .map(this::mapSymptom)
-                        .toList();
-                createEntitiesInBatch(symptomBatch);
+        DeadLetterFile deadLetters = entityDeadLetters();
+        try {
+            for (Map.Entry<Class<? extends BaseUmlsEntity>, String> entry : entityTypes.entrySet()) {
+                String entityType = entry.getValue();
+                List<Map<String, Object>> batch = new ArrayList<>();
+
+                long found = subsetReader.forEachTerm(entry.getKey(), allowedCuis, (cui, name) -> {
+                    batch.add(Map.of("cui", cui, "name", name, "type", entityType));
+                    if (batch.size() >= importJob.throttle().batchSize(ENTITY_IMPORT_BATCH_SIZE)) {
+                        createEntitiesInBatch(batch, deadLetters);
+                        batch.clear();
+                    }
+                });
+                if (!batch.isEmpty()) {
+                    createEntitiesInBatch(batch, deadLetters);
+                }
+                logger.info("Imported {} {} entities from the allowed CUIs", found, entityType);
             }
-
-            logger.info("Demo entity import completed successfully");
-
-        } catch (Exception e) {
-            logger.error("Error in demo entity import: {}", e.getMessage(), e);
-            throw e;
+        } catch (SQLException e) {
+            logger.error("Error in subset entity import: {}", e.getMessage(), e);
+            throw new IllegalStateException("Subset entity import failed", e);
+        } finally {
+            closeDeadLetters(deadLetters);
         }
     }
+
     /**
      * מחלקה לאחסון הגדרות ייבוא לכל סוג ישות
      */
-    private static class EntityImportConfig<T>{
+    private static class EntityImportConfig<T extends BaseUmlsEntity>{
         final String displayName;
-        final JpaRepository<T, Long> repository;
+        final BaseUmlsRepository<T> repository;
         final String entityType;
         final Function<T, Map<String, Object>> mapper;
 
-        EntityImportConfig(String displayName, JpaRepository<T, Long> repository, String entityType, Function<T, Map<String, Object>> mapper){
+        EntityImportConfig(String displayName, BaseUmlsRepository<T> repository, String entityType, Function<T, Map<String, Object>> mapper){
             this.displayName = displayName;
             this.repository = repository;
             this.entityType = entityType;
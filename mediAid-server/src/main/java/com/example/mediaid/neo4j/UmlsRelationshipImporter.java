@@ -1,7 +1,12 @@
 package com.example.mediaid.neo4j;
 
 import com.example.mediaid.bl.DemoMode;
+import com.example.mediaid.bl.build_UMLS_terms.RrfReader;
 import com.example.mediaid.constants.ImportConstants;
+import com.example.mediaid.utils.CuiCodec;
+import com.example.mediaid.utils.IntHashSet;
+import com.example.mediaid.utils.LongHashSet;
+import com.example.mediaid.utils.MappedLongSet;
 import org.neo4j.driver.Driver;
 import org.neo4j.driver.Session;
 import org.slf4j.Logger;
@@ -9,10 +14,12 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static com.example.mediaid.constants.DatabaseConstants.*;
 import static com.example.mediaid.constants.MedicalAnalysisConstants.*;
@@ -26,20 +33,31 @@ public class UmlsRelationshipImporter{
     private static final Logger logger = LoggerFactory.getLogger(UmlsRelationshipImporter.class);
 
     protected final Driver neo4jDriver;
+    private final ConceptSchema conceptSchema;
+    private final ImportJobController importJob;
 
-    // סטים של CUI עבור כל סוג ישות
-    private Set<String> diseaseCuis = new HashSet<>();
-    private Set<String> medicationCuis = new HashSet<>();
-    private Set<String> symptomCuis = new HashSet<>();
-    private Set<String> riskFactorCuis = new HashSet<>();
-    private Set<String> procedureCuis = new HashSet<>();
-    private Set<String> anatomicalCuis = new HashSet<>();
-    private Set<String> labTestCuis = new HashSet<>();
-    private Set<String> biologicalFunctionCuis = new HashSet<>();
+    // אינדקסי שדות בקובץ MRREL
+    private static final int MRREL_CUI1 = 0;
+    private static final int MRREL_REL = 3;
+    private static final int MRREL_CUI2 = 4;
+    private static final int MRREL_RELA = 7;
+    private static final int MRREL_SAB = 10;
+
+    // מסווג השורות - נבנה מחדש לכל ייבוא לפי הצמתים הקיימים
+    private volatile MrrelClassifier classifier = new MrrelClassifier(Map.of(), MRREL_REL, MRREL_RELA, MRREL_SAB);
+
+    // שאילתות UNWIND לפי (תווית התחלה, תווית סוף, סוג קשר)
+    private final Map<String, String> unwindQueries = new ConcurrentHashMap<>();
+
+    // סימן סיום לתהליכוני הכתיבה
+    private static final List<Map<String, Object>> END_OF_STREAM = new ArrayList<>();
 
     @Autowired
-    public UmlsRelationshipImporter(Driver driver, Driver neo4jDriver) {
+    public UmlsRelationshipImporter(Driver driver, Driver neo4jDriver, ConceptSchema conceptSchema,
+                                    ImportJobController importJob) {
         this.neo4jDriver = neo4jDriver;
+        this.conceptSchema = conceptSchema;
+        this.importJob = importJob;
     }
 
     /**
@@ -59,6 +77,9 @@ public class UmlsRelationshipImporter{
 
             logger.info(ImportConstants.Messages.IMPORT_COMPLETED);
 
+        } catch (CancellationException e) {
+            logger.info("Relationship import cancelled");
+            throw e;
         } catch (Exception e) {
             logger.error("Critical error in relationship import: {}", e.getMessage(), e);
             throw new RuntimeException("Relationship import failed", e);
@@ -66,306 +87,286 @@ public class UmlsRelationshipImporter{
     }
 
     /**
-     * עיבוד קובץ MRREL וייבוא הקשרים
+     * עיבוד קובץ MRREL וייבוא הקשרים כצינור:
+     * סיווג שורות במקביל -> מחיצה לפי צומת ההתחלה -> תור חסום לכל מחיצה (לחץ חוזר) -> כותב אחד לכל מחיצה.
+     * כל כותב הוא הבעלים היחיד של צמתי ההתחלה שלו, כך שעל צומת התחלה אין תחרות בין כותבים.
+     * CREATE נועל גם את צומת הסיום, וצמתים מרכזיים הם צומת סיום בכל המחיצות - ולכן deadlock בין מחיצות
+     * עדיין אפשרי. Neo4j מבטל אחת הטרנזקציות (DeadlockDetected הוא TransientException) ו-writeTransaction מריץ אותה שוב.
+     * הקריאה והכתיבה חופפות, כך שהקורא לא ממתין לכל אצווה שנכתבת.
+     * מספר הכותבים הפעילים וגודל האצווה מותאמים לזמני ה-commit (ImportThrottle), וההשהיה/הביטול נבדקים בין אצוות.
      */
     private void importRelationshipsFromMrrel(String mrrelPath) throws IOException {
         logger.info("Processing MRREL file for relationship extraction");
 
         // הגדרת משתני מעקב
         RelationshipImportTracker tracker = new RelationshipImportTracker();
-        List<Map<String, Object>> relationshipBatch = new ArrayList<>();
-        Set<String> existingRelationships = loadExistingRelationships();
+        ImportThrottle throttle = importJob.throttle();
+        MappedLongSet existingRelationships = loadExistingRelationships();
 
         logger.info("Loaded {} existing relationships to prevent duplicates", existingRelationships.size());
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(mrrelPath))) {
-            String line;
-            logger.info("Starting relationship processing");
-
-            while ((line = reader.readLine()) != null) {
-                tracker.totalLines++;
-
-                // דיווח התקדמות
-                if (tracker.totalLines % PROGRESS_REPORT_INTERVAL == 0) {
-                    reportProgress(tracker);
-                }
-
-                // עיבוד השורה
-                RelationshipCandidate candidate = processLine(line, tracker, existingRelationships);
+        BatchCollector collector = new BatchCollector(existingRelationships, RELATIONSHIP_WRITER_THREADS, tracker, throttle);
+        DeadLetterFile deadLetters = new DeadLetterFile(Path.of(IMPORT_DEAD_LETTER_DIR), "mrrel-failed", "RRF");
 
-                if (candidate != null) {
-                    relationshipBatch.add(candidate.toMap());
-                    tracker.acceptedRelationships++;
-                    existingRelationships.add(candidate.getRelationshipKey());
+        ExecutorService writers = Executors.newFixedThreadPool(RELATIONSHIP_WRITER_THREADS, namedThreads("mrrel-writer-"));
+        for (BlockingQueue<List<Map<String, Object>>> partitionQueue : collector.queues()) {
+            writers.submit(() -> writeLoop(partitionQueue, tracker, throttle, deadLetters));
+        }
 
-                    // יצירת אצווה כשמגיעים לגודל המטרה
-                    if (relationshipBatch.size() >= RELATIONSHIP_BATCH_SIZE) {
-                        int created = createRelationshipsBatch(relationshipBatch);
-                        tracker.totalCreated += created;
-                        relationshipBatch.clear();
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(namedThreads("mrrel-progress-"));
+        PipelineMeter meter = new PipelineMeter();
+        reporter.scheduleAtFixedRate(() -> meter.report(tracker, collector, throttle),
+                PIPELINE_REPORT_INTERVAL_SECONDS, PIPELINE_REPORT_INTERVAL_SECONDS, TimeUnit.SECONDS);
 
-                        if (tracker.batchCount % BATCH_REPORT_INTERVAL == 0) {
-                            logger.info("Processed {} batches, created {} relationships total",
-                                    tracker.batchCount, tracker.totalCreated);
+        try {
+            logger.info("Starting relationship processing with {} classifier threads and {} partitioned writer threads",
+                    RRF_READER_PARALLELISM, RELATIONSHIP_WRITER_THREADS);
+
+            // שורות שאחד הצמתים שלהן לא קיים בגרף נזרקות כבר בקורא, בלי ליצור מחרוזות
+            IntHashSet graphCuis = classifier.nodeCuis();
+            RrfReader.ScanResult scan = new RrfReader(mrrelPath,
+                    MRREL_CUI1, MRREL_REL, MRREL_CUI2, MRREL_RELA, MRREL_SAB, MIN_MRREL_FIELDS - 1)
+                    .cuiFilter(MRREL_CUI1, graphCuis)
+                    .cuiFilter(MRREL_CUI2, graphCuis)
+                    .forEach(row -> {
+                        tracker.classifiedRows.incrementAndGet();
+
+                        // סיווג השורה (רץ במקביל בתהליכוני הקורא)
+                        RelationshipCandidate candidate = processLine(row, tracker);
+                        if (candidate != null) {
+                            collector.offer(candidate);
                         }
-                        tracker.batchCount++;
-                    }
-                }
-            }
+                    });
 
-            // עיבוד אצווה אחרונה
-            if (!relationshipBatch.isEmpty()) {
-                int created = createRelationshipsBatch(relationshipBatch);
-                tracker.totalCreated += created;
-                tracker.batchCount++;
-            }
+            // האצווה האחרונה של כל מחיצה
+            collector.flush();
 
-            // הצגת סיכום מפורט
-            printImportSummary(tracker);
+            // שורות שנזרקו בקורא
+            tracker.skippedInvalidFormat.set(scan.invalidLines);
+            tracker.skippedMissingNodes.addAndGet(scan.totalLines - scan.invalidLines - scan.deliveredRows);
+            tracker.totalLines.set(scan.totalLines);
 
         } catch (IOException e) {
             logger.error(ImportConstants.Messages.ERROR_FILE_READ + ": {}", e.getMessage());
             throw e;
+        } finally {
+            // סיום הכותבים אחרי שירוקנו את התורים
+            stopWriters(writers, collector);
+            reporter.shutdownNow();
+            existingRelationships.close();
+            deadLetters.close();
+        }
+
+        // הצגת סיכום מפורט
+        printImportSummary(tracker);
+        if (deadLetters.count() > 0) {
+            logger.warn("{} relationships could not be written - saved with their failure reason to {} " +
+                    "(the file is in MRREL format and can be imported again)", deadLetters.count(), deadLetters.path());
+        }
+        if (tracker.lostRelationships.get() > 0) {
+            throw new IOException(tracker.lostRelationships.get() +
+                    " relationships were neither written nor saved to the dead-letter file " + deadLetters.path());
         }
     }
 
     /**
-     * עיבוד שורה בודדת מקובץ MRREL
+     * לולאת תהליכון כתיבה - לוקח אצוות מהתור עד לסימן הסיום
+     * כל אצווה ממתינה לאישור מהוויסות; אחרי ביטול האצוות נזרקות (ולא נכתבות) כדי שהתור יתרוקן והקוראים ישתחררו.
      */
-    private RelationshipCandidate processLine(String line, RelationshipImportTracker tracker,
-                                              Set<String> existingRelationships) {
+    private void writeLoop(BlockingQueue<List<Map<String, Object>>> writeQueue, RelationshipImportTracker tracker,
+                           ImportThrottle throttle, DeadLetterFile deadLetters) {
+        try {
+            while (true) {
+                List<Map<String, Object>> batch = writeQueue.take();
+                if (batch == END_OF_STREAM) {
+                    return;
+                }
+                try {
+                    throttle.acquire();
+                } catch (CancellationException e) {
+                    continue;
+                }
+                long start = System.nanoTime();
+                boolean success = false;
+                try {
+                    int created = createRelationshipsBatch(batch, deadLetters);
+                    tracker.totalCreated.addAndGet(created);
+                    success = true;
+                } catch (Exception e) {
+                    // כותב לא מת באמצע - אחרת הקוראים ייחסמו על תור מלא.
+                    // שורות כושלות כבר נרשמות ב-dead-letter, כך שכאן מגיעים רק כשגם הרישום נכשל - השורות אבודות
+                    tracker.lostRelationships.addAndGet(batch.size());
+                    logger.error("Relationship batch of {} rows was neither written nor saved to {}: {}",
+                            batch.size(), deadLetters.path(), e.getMessage());
+                } finally {
+                    throttle.release(System.nanoTime() - start, success);
+                }
+                long batches = tracker.batchCount.incrementAndGet();
+                if (batches % BATCH_REPORT_INTERVAL == 0) {
+                    logger.info("Processed {} batches, created {} relationships total",
+                            batches, tracker.totalCreated.get());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
 
-        String[] fields = line.split("\\|");
-        if (fields.length < MIN_MRREL_FIELDS) {
-            tracker.skippedInvalidFormat++;
-            return null;
+    /**
+     * שליחת סימן סיום לכותב של כל מחיצה והמתנה שיסיימו את האצוות שכבר בתור
+     */
+    private void stopWriters(ExecutorService writers, BatchCollector collector) {
+        try {
+            for (BlockingQueue<List<Map<String, Object>>> partitionQueue : collector.queues()) {
+                partitionQueue.put(END_OF_STREAM);
+            }
+            writers.shutdown();
+            while (!writers.awaitTermination(PIPELINE_REPORT_INTERVAL_SECONDS, TimeUnit.SECONDS)) {
+                logger.info("Waiting for relationship writers to drain {} queued batches", collector.queuedBatches());
+            }
+        } catch (InterruptedException e) {
+            writers.shutdownNow();
+            Thread.currentThread().interrupt();
         }
+    }
 
-        String cui1 = fields[0];
-        String cui2 = fields[4];
-        String rel = fields[3];
-        String rela = fields[7];
-        String sab = fields[10];
+    private static ThreadFactory namedThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * עיבוד שורה בודדת מקובץ MRREL (נקרא מכמה תהליכונים במקביל)
+     */
+    private RelationshipCandidate processLine(RrfReader.RrfRow row, RelationshipImportTracker tracker) {
 
         // בדיקות סינון
 
+        int cui1 = row.cuiCode(MRREL_CUI1);
+        int cui2 = row.cuiCode(MRREL_CUI2);
+
         // 1. מניעת לולאות עצמיות
-        if (cui1.equals(cui2)) {
-            tracker.skippedSelfLoops++;
+        if (cui1 == cui2) {
+            tracker.skippedSelfLoops.incrementAndGet();
             return null;
         }
 
         // 2. בדיקת מצב Demo
         if (DemoMode.MODE && !DemoMode.isRelationshipRelevantForDemo(cui1, cui2)) {
-            tracker.skippedNonDemo++;
+            tracker.skippedNonDemo.incrementAndGet();
             return null;
         }
 
-        // 3. קביעת סוג הקשר
-        String relationshipType = determineRelationshipType(rel, rela);
-        if (relationshipType == null ||
-                ImportConstants.EXCLUDED_RELATIONSHIP_TYPES.contains(relationshipType.toLowerCase())) {
-            tracker.skippedInvalidRelType++;
+        // 3. סוג הקשר והמשקל - מחושבים פעם אחת לכל צירוף (REL, RELA, SAB)
+        MrrelClassifier.RelationEntry relation = classifier.relation(row);
+        if (relation.isExcluded()) {
+            tracker.skippedInvalidRelType.incrementAndGet();
             return null;
         }
 
         // 4. בדיקת קיום צמתים
-        if (!nodeCuiExists(cui1) || !nodeCuiExists(cui2)) {
-            tracker.skippedMissingNodes++;
+        int startTypes = classifier.typeMask(cui1);
+        int endTypes = classifier.typeMask(cui2);
+        if (startTypes == 0 || endTypes == 0) {
+            tracker.skippedMissingNodes.incrementAndGet();
             return null;
         }
 
-        // 5. בדיקת כפילויות
-        String relationshipKey = createRelationshipKey(cui1, cui2, relationshipType);
-        if (existingRelationships.contains(relationshipKey)) {
-            tracker.skippedDuplicates++;
-            return null;
-        }
+        // בדיקת הכפילויות נעשית ב-BatchCollector (משותף לכל התהליכונים)
+        long relationshipKey = CuiCodec.relationshipKey(cui1, cui2, relation.relationshipTypeId());
 
         // יצירת מועמד קשר
-        double weight = RelationshipTypes.calculateRelationshipWeight(
-                rela != null && !rela.trim().isEmpty() ? rela : rel, sab);
-
-        return new RelationshipCandidate(cui1, cui2, relationshipType, weight, sab, rel, rela);
+        return new RelationshipCandidate(cui1, cui2,
+                MrrelClassifier.primaryLabel(startTypes), MrrelClassifier.primaryLabel(endTypes),
+                relation.relationshipType(), relationshipKey, relation.weight(), relation.source(), relation.rel(), relation.rela());
     }
 
     /**
-     * קביעת סוג הקשר מ-REL ו-RELA
+     * יצירת אצווה של קשרים ב-Neo4j
+     * המועמדים מקובצים לפי (תווית התחלה, תווית סוף, סוג קשר), וכל קבוצה נשלחת כשאילתת UNWIND אחת עם פרמטרים.
+     * ה-MATCH לפי תווית משתמש באינדקס ה-CUI של התווית, וטקסט השאילתה זהה לכל הקבוצות מאותו סוג - כך שהתוכנית נשמרת במטמון.
      */
-    private String determineRelationshipType(String rel, String rela) {
-        // בדיקת RELA תחילה (ספציפי יותר)
-        if (rela != null && !rela.trim().isEmpty()) {
-            String normalized = rela.trim().toLowerCase();
-            if (ImportConstants.UMLS_TO_NEO4J_RELATIONSHIPS.containsKey(normalized)) {
-                return ImportConstants.UMLS_TO_NEO4J_RELATIONSHIPS.get(normalized);
-            }
-            return normalizeRelationshipName(normalized);
+    private int createRelationshipsBatch(List<Map<String, Object>> relationships, DeadLetterFile deadLetters) {
+        if (relationships.isEmpty()) return 0;
+
+        logger.debug(ImportConstants.Messages.CREATING_BATCH + " of {} relationships", relationships.size());
+
+        Map<String, List<Map<String, Object>>> groups = new LinkedHashMap<>();
+        for (Map<String, Object> rel : relationships) {
+            String query = unwindQuery((String) rel.get("startLabel"), (String) rel.get("endLabel"), (String) rel.get("relType"));
+            groups.computeIfAbsent(query, q -> new ArrayList<>()).add(rel);
         }
 
-        // אם אין RELA, השתמש ב- REL
-        if (rel != null && !rel.trim().isEmpty()) {
-            String normalized = rel.trim().toUpperCase();
-            if (ImportConstants.REL_TO_RELATIONSHIP.containsKey(normalized)) {
-                return ImportConstants.REL_TO_RELATIONSHIP.get(normalized);
-            }
-            return normalizeRelationshipName(rel.trim().toLowerCase());
+        int successCount = 0;
+        for (Map.Entry<String, List<Map<String, Object>>> group : groups.entrySet()) {
+            successCount += createRelationshipGroup(group.getKey(), group.getValue(), deadLetters);
         }
 
-        return null;
+        logger.debug(ImportConstants.Messages.BATCH_COMPLETED + " - {} relationships created in {} statements",
+                successCount, groups.size());
+        return successCount;
     }
 
     /**
-     * נרמול שם קשר לפורמט תקין של Neo4j
+     * שאילתת UNWIND לקבוצה - תוויות וסוג קשר לא ניתנים לפרמטר ב-Cypher, ולכן הם חלק מהטקסט (מטמון לפי צירוף)
      */
-    private String normalizeRelationshipName(String name) {
-        if (name == null || name.trim().isEmpty()) {
-            return DEFAULT_RELATIONSHIP_TYPE;
-        }
-
-        String normalized = name.toUpperCase()
-                .replace(" ", "_")
-                .replace("-", "_")
-                .replaceAll("[^A-Z0-9_]", "")
-                .replaceAll("_+", "_")
-                .replaceAll("^_+|_+$", "");
-
-        if (normalized.isEmpty() || !Character.isLetter(normalized.charAt(0))) {
-            return DEFAULT_RELATIONSHIP_TYPE;
-        }
-
-        if (normalized.length() > MAX_RELATIONSHIP_NAME_LENGTH) {
-            normalized = normalized.substring(0, MAX_RELATIONSHIP_NAME_LENGTH);
-        }
-
-        return normalized;
+    private String unwindQuery(String startLabel, String endLabel, String relType) {
+        return unwindQueries.computeIfAbsent(startLabel + "|" + endLabel + "|" + relType, key ->
+                "UNWIND $rows AS r " +
+                        "MATCH (a:`" + startLabel + "` {cui: r.cui1}) " +
+                        "MATCH (b:`" + endLabel + "` {cui: r.cui2}) " +
+                        "CREATE (a)-[:`" + relType + "` {weight: r.weight, source: r.source}]->(b)");
     }
 
     /**
-     * יצירת אצווה של קשרים ב-Neo4j
+     * שליחת קבוצה אחת בסבב אחד; אם הקבוצה נכשלת היא מחולקת בחצאים עד לבידוד השורות הפגומות,
+     * שנרשמות לקובץ ה-dead-letter במקום לעצור את הייבוא
      */
-    private int createRelationshipsBatch(List<Map<String, Object>> relationships) {
-        if (relationships.isEmpty()) return 0;
-
-        logger.debug(ImportConstants.Messages.CREATING_BATCH + " of {} relationships", relationships.size());
-
-        int successCount = 0;
-
-        for (int i = 0; i < relationships.size(); i += SMALL_BATCH_SIZE) {
-            int endIndex = Math.min(i + SMALL_BATCH_SIZE, relationships.size());
-            List<Map<String, Object>> smallBatch = relationships.subList(i, endIndex);
-
-            successCount += createSmallBatch(smallBatch);
+    private int createRelationshipGroup(String query, List<Map<String, Object>> relationships, DeadLetterFile deadLetters) {
+        int[] rejected = {0};
+        int created = BatchBisector.write(relationships,
+                rows -> writeRelationshipRows(query, rows),
+                BatchBisector::isRowFailure,
+                (rel, cause) -> {
+                    deadLetters.write(deadLetterLine(rel, cause));
+                    rejected[0]++;
+                });
 
-            // הפסקה קטנה בין אצוות
-            if (i > 0 && i % 500 == 0) {
-                try {
-                    Thread.sleep(BATCH_DELAY_MS);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    break;
-                }
-            }
+        if (rejected[0] > 0) {
+            logger.warn("{} of {} {} relationships failed and were written to {}", rejected[0], relationships.size(),
+                    relationships.get(0).get("relType"), deadLetters.path());
         }
-
-        logger.debug(ImportConstants.Messages.BATCH_COMPLETED + " - {} relationships created", successCount);
-        return successCount;
+        return created;
     }
 
-    /**
-     * יצירת אצווה קטנה של קשרים
-     */
-    private int createSmallBatch(List<Map<String, Object>> relationships) {
+    private int writeRelationshipRows(String query, List<Map<String, Object>> relationships) {
+        List<Map<String, Object>> rows = new ArrayList<>(relationships.size());
+        for (Map<String, Object> rel : relationships) {
+            rows.add(Map.of(
+                    "cui1", rel.get("cui1"),
+                    "cui2", rel.get("cui2"),
+                    "weight", rel.get("weight"),
+                    "source", rel.get("source")
+            ));
+        }
         try (Session session = neo4jDriver.session()) {
-            return session.writeTransaction(tx -> {
-                int count = 0;
-
-                for (Map<String, Object> rel : relationships) {
-                    try {
-                        String cui1 = (String) rel.get("cui1");
-                        String cui2 = (String) rel.get("cui2");
-                        String relType = (String) rel.get("relType");
-                        double weight = (double) rel.get("weight");
-                        String source = (String) rel.get("source");
-
-                        String query = "MATCH (n1 {cui: $cui1}), (n2 {cui: $cui2}) " +
-                                "CREATE (n1)-[:" + relType + " {weight: $weight, source: $source}]->(n2)";
-
-                        tx.run(query, Map.of(
-                                "cui1", cui1,
-                                "cui2", cui2,
-                                "weight", weight,
-                                "source", source
-                        ));
-
-                        count++;
-
-                    } catch (Exception e) {
-                        logger.debug("Failed to create relationship: {}", e.getMessage());
-                    }
-                }
-
-                return count;
-            });
-
-        } catch (Exception e) {
-            logger.warn("Small batch creation failed: {}", e.getMessage());
-            return createRelationshipsIndividually(relationships);
+            return session.writeTransaction(tx ->
+                    tx.run(query, Map.of("rows", rows)).consume().counters().relationshipsCreated());
         }
     }
 
     /**
-     * יצירת קשרים אחד אחד במקרה של כשל באצווה
+     * שורת MRREL עם הנתונים של הקשר, וסיבת הכישלון כשדה נוסף אחרי CVF - הקורא מתעלם ממנו בייבוא חוזר
+     * CUI1|AUI1|STYPE1|REL|CUI2|AUI2|STYPE2|RELA|RUI|SRUI|SAB|SL|RG|DIR|SUPPRESS|CVF|REASON|
      */
-    private int createRelationshipsIndividually(List<Map<String, Object>> relationships) {
-        int successCount = 0;
-
-        for (Map<String, Object> rel : relationships) {
-            int retryCount = 0;
-            boolean success = false;
-
-            while (retryCount < MAX_RETRIES && !success) {
-                try (Session session = neo4jDriver.session()) {
-                    session.writeTransaction(tx -> {
-                        String cui1 = (String) rel.get("cui1");
-                        String cui2 = (String) rel.get("cui2");
-                        String relType = (String) rel.get("relType");
-                        double weight = (double) rel.get("weight");
-                        String source = (String) rel.get("source");
-
-                        String query = "MATCH (n1 {cui: $cui1}), (n2 {cui: $cui2}) " +
-                                "CREATE (n1)-[:" + relType + " {weight: $weight, source: $source}]->(n2)";
-
-                        tx.run(query, Map.of(
-                                "cui1", cui1,
-                                "cui2", cui2,
-                                "weight", weight,
-                                "source", source
-                        ));
-
-                        return null;
-                    });
-
-                    success = true;
-                    successCount++;
-
-                } catch (Exception e) {
-                    retryCount++;
-                    if (retryCount < MAX_RETRIES) {
-                        try {
-                            Thread.sleep(RETRY_DELAY_MS);
-                        } catch (InterruptedException ie) {
-                            Thread.currentThread().interrupt();
-                            break;
-                        }
-                    } else {
-                        logger.debug("Failed individual relationship creation after {} retries: {}",
-                                MAX_RETRIES, e.getMessage());
-                    }
-                }
-            }
-        }
-
-        return successCount;
+    private static String deadLetterLine(Map<String, Object> rel, Exception cause) {
+        Object rela = rel.get("originalRela");
+        return rel.get("cui1") + "|||" + rel.get("originalRel") + "|" + rel.get("cui2") + "|||" +
+                (rela != null ? rela : "") + "|||" + rel.get("source") + "||||||" + DeadLetterFile.reason(cause) + "|";
     }
 
     /**
@@ -375,141 +376,140 @@ public class UmlsRelationshipImporter{
         logger.info(ImportConstants.Messages.LOADING_NODES);
 
         try (Session session = neo4jDriver.session()) {
+            Map<String, IntHashSet> cuisByType = new LinkedHashMap<>();
             for (String entityType : INDEXED_ENTITY_TYPES) {
-                Set<String> cuis = loadCuisForType(session, entityType);
-                assignCuisToSet(entityType, cuis);
+                IntHashSet cuis = loadCuisForType(session, entityType);
+                cuisByType.put(entityType, cuis);
                 logger.debug("Loaded {} CUIs for entity type: {}", cuis.size(), entityType);
             }
+            useNodeCuis(cuisByType);
 
-            int totalCuis = diseaseCuis.size() + medicationCuis.size() + symptomCuis.size() +
-                    riskFactorCuis.size() + procedureCuis.size() + anatomicalCuis.size() +
-                    labTestCuis.size() + biologicalFunctionCuis.size();
-
-            logger.info("Loaded total {} CUIs from graph", totalCuis);
+            logger.info("Loaded total {} CUIs from graph", classifier.nodeCuis().size());
         }
     }
 
     /**
-     * הקצאת CUI לסט המתאים
+     * הגדרת הצמתים שהסיווג מתייחס אליהם כקיימים (מהגרף, או מהצמתים שיוצאו לקבצי CSV)
      */
-    private void assignCuisToSet(String entityType, Set<String> cuis) {
-        switch (entityType) {
-            case EntityTypes.DISEASE -> diseaseCuis = cuis;
-            case EntityTypes.MEDICATION -> medicationCuis = cuis;
-            case EntityTypes.SYMPTOM -> symptomCuis = cuis;
-            case EntityTypes.RISK_FACTOR -> riskFactorCuis = cuis;
-            case EntityTypes.PROCEDURE -> procedureCuis = cuis;
-            case EntityTypes.ANATOMICAL_STRUCTURE -> anatomicalCuis = cuis;
-            case EntityTypes.LABORATORY_TEST -> labTestCuis = cuis;
-            case EntityTypes.BIOLOGICAL_FUNCTION -> biologicalFunctionCuis = cuis;
-        }
+    private void useNodeCuis(Map<String, IntHashSet> cuisByType) {
+        classifier = new MrrelClassifier(cuisByType, MRREL_REL, MRREL_RELA, MRREL_SAB);
     }
 
     /**
-     * טעינת CUI עבור סוג ישות מסוים
+     * ייצוא הקשרים מ-MRREL לקבצי CSV של neo4j-admin במקום כתיבה ב-Bolt
+     * אותו סיווג בדיוק (סוג קשר, משקל, סינון Demo) - רק היעד שונה. כפילויות מסוננות בזיכרון, כי הגרף ריק.
+     * @param nodeCuis - הצמתים שיוצאו, לפי סוג ישות
+     * @return מספר הקשרים שנכתבו
      */
-    private Set<String> loadCuisForType(Session session, String entityType) {
-        return new HashSet<>(
-                session.readTransaction(tx -> {
-                    var result = tx.run("MATCH (n:" + entityType + ") RETURN n.cui AS cui");
-                    List<String> cuis = new ArrayList<>();
-                    result.forEachRemaining(record -> {
-                        if (record.get("cui") != null) {
-                            cuis.add(record.get("cui").asString());
+    public long exportRelationshipsToCsv(String mrrelPath, Map<String, IntHashSet> nodeCuis,
+                                         Neo4jAdminCsvWriter writer) throws IOException {
+        logger.info("Exporting MRREL relationships to neo4j-admin CSV files");
+        useNodeCuis(nodeCuis);
+
+        RelationshipImportTracker tracker = new RelationshipImportTracker();
+        LongHashSet accepted = new LongHashSet();
+
+        IntHashSet nodes = classifier.nodeCuis();
+        RrfReader.ScanResult scan = new RrfReader(mrrelPath,
+                MRREL_CUI1, MRREL_REL, MRREL_CUI2, MRREL_RELA, MRREL_SAB, MIN_MRREL_FIELDS - 1)
+                .cuiFilter(MRREL_CUI1, nodes)
+                .cuiFilter(MRREL_CUI2, nodes)
+                .forEach(row -> {
+                    tracker.classifiedRows.incrementAndGet();
+                    RelationshipCandidate candidate = processLine(row, tracker);
+                    if (candidate == null) {
+                        return;
+                    }
+                    synchronized (accepted) {
+                        if (!accepted.add(candidate.getRelationshipKey())) {
+                            tracker.skippedDuplicates.incrementAndGet();
+                            return;
                         }
-                    });
-                    return cuis;
-                })
-        );
+                    }
+                    tracker.acceptedRelationships.incrementAndGet();
+                    writer.writeRelationship(CuiCodec.decode(candidate.cui1), CuiCodec.decode(candidate.cui2),
+                            candidate.relationshipType, candidate.weight, candidate.source);
+                });
+
+        tracker.skippedInvalidFormat.set(scan.invalidLines);
+        tracker.skippedMissingNodes.addAndGet(scan.totalLines - scan.invalidLines - scan.deliveredRows);
+        tracker.totalLines.set(scan.totalLines);
+        tracker.totalCreated.set(tracker.acceptedRelationships.get());
+
+        printImportSummary(tracker);
+        return tracker.acceptedRelationships.get();
     }
 
     /**
-     * בדיקת קיום CUI בגרף
+     * טעינת CUI עבור סוג ישות מסוים
      */
-    private boolean nodeCuiExists(String cui) {
-        return diseaseCuis.contains(cui) ||
-                medicationCuis.contains(cui) ||
-                symptomCuis.contains(cui) ||
-                riskFactorCuis.contains(cui) ||
-                procedureCuis.contains(cui) ||
-                anatomicalCuis.contains(cui) ||
-                labTestCuis.contains(cui) ||
-                biologicalFunctionCuis.contains(cui);
+    private IntHashSet loadCuisForType(Session session, String entityType) {
+        return session.readTransaction(tx -> {
+            var result = tx.run("MATCH (n:" + entityType + ") RETURN n.cui AS cui");
+            IntHashSet cuis = new IntHashSet();
+            result.forEachRemaining(record -> {
+                if (!record.get("cui").isNull()) {
+                    int code = CuiCodec.encode(record.get("cui").asString());
+                    if (code != CuiCodec.INVALID) {
+                        cuis.add(code);
+                    }
+                }
+            });
+            return cuis;
+        });
     }
 
     /**
-     * יצירת אינדקסים לביצועים
+     * יצירת אינדקסים לביצועים - האילוץ על Concept(cui) ואינדקס cui לכל תווית (ConceptSchema)
      */
     private void ensureIndexesExist() {
         logger.info("Creating performance indexes");
-
-        try (Session session = neo4jDriver.session()) {
-            session.writeTransaction(tx -> {
-                for (String entityType : INDEXED_ENTITY_TYPES) {
-                    try {
-                        String indexQuery = "CREATE INDEX IF NOT EXISTS FOR (n:" + entityType + ") ON (n.cui)";
-                        tx.run(indexQuery);
-                    } catch (Exception e) {
-                        logger.debug("Index for {} might already exist", entityType);
-                    }
-                }
-                return null;
-            });
-
-            logger.info("Performance indexes created successfully");
-
-        } catch (Exception e) {
-            logger.warn("Could not create indexes: {}", e.getMessage());
-        }
+        conceptSchema.ensureConceptSchema();
     }
 
     /**
-     * טעינת קשרים קיימים למניעת כפילויות
+     * טעינת כל הקשרים הקיימים למניעת כפילויות
+     * הקשרים נקראים בזרימה (ללא הגבלת כמות) לקובץ ממופה מחוץ ל-heap, כך שגם גרף של מאות מיליוני קשרים
+     * לא מפעיל לחץ על ה-GC ולא מפספס כפילויות
      */
-    private Set<String> loadExistingRelationships() {
+    private MappedLongSet loadExistingRelationships() throws IOException {
         logger.debug("Loading existing relationships to prevent duplicates");
-        Set<String> existing = new HashSet<>();
+        MappedLongSet existing = new MappedLongSet(Path.of(RELATIONSHIP_KEYS_DIR));
 
         try (Session session = neo4jDriver.session()) {
             session.readTransaction(tx -> {
                 var result = tx.run(
-                        "MATCH (n1)-[r]->(n2) " +
-                                "WHERE n1.cui IS NOT NULL AND n2.cui IS NOT NULL " +
-                                "RETURN n1.cui as cui1, n2.cui as cui2, type(r) as relType " +
-                                "LIMIT " + MAX_CONNECTIONS_PER_ENTITY * 1000
+                        "MATCH (n1:" + EntityTypes.CONCEPT + ")-[r]->(n2:" + EntityTypes.CONCEPT + ") " +
+                                "RETURN n1.cui as cui1, n2.cui as cui2, type(r) as relType"
                 );
 
-                //יצירת מחרוזת שמבטאת את הקשר
+                //יצירת מפתח מספרי שמבטא את הקשר
                 result.forEachRemaining(record -> {
-                    String cui1 = record.get("cui1").asString();
-                    String cui2 = record.get("cui2").asString();
-                    String relType = record.get("relType").asString();
-                    existing.add(createRelationshipKey(cui1, cui2, relType));
+                    int cui1 = CuiCodec.encode(record.get("cui1").asString());
+                    int cui2 = CuiCodec.encode(record.get("cui2").asString());
+                    if (cui1 != CuiCodec.INVALID && cui2 != CuiCodec.INVALID) {
+                        existing.add(createRelationshipKey(cui1, cui2, record.get("relType").asString()));
+                    }
                 });
 
                 return null;
             });
         } catch (Exception e) {
-            logger.warn("Could not load existing relationships: {}", e.getMessage());
+            // קבוצה חלקית הייתה מובילה ליצירת קשרים כפולים - עדיף לעצור את ייבוא הקשרים
+            existing.close();
+            throw new IOException("Could not load existing relationships - aborting relationship import to avoid duplicates", e);
         }
 
+        // מיון ובניית מסנן ה-Bloom - מכאן הקבוצה לקריאה בלבד
+        existing.seal();
         return existing;
     }
 
     /**
      * יצירת מפתח ייחודי לקשר לבדיקת כפילויות
      */
-    private String createRelationshipKey(String cui1, String cui2, String relType) {
-        return cui1 + "|" + relType + "|" + cui2;
-    }
-
-    /**
-     * דיווח התקדמות
-     */
-    private void reportProgress(RelationshipImportTracker tracker) {
-        double acceptanceRate = (double) tracker.acceptedRelationships / tracker.totalLines * 100;
-        logger.info("Progress: {} lines processed, {} relationships accepted ({:.2f}% acceptance rate)",
-                tracker.totalLines, tracker.acceptedRelationships, acceptanceRate);
+    private long createRelationshipKey(int cui1, int cui2, String relType) {
+        return CuiCodec.relationshipKey(cui1, cui2, classifier.relationshipTypeId(relType));
     }
 
     /**
@@ -529,9 +529,12 @@ public class UmlsRelationshipImporter{
         logger.info("Missing nodes: {}", tracker.skippedMissingNodes);
         logger.info("Duplicates prevented: {}", tracker.skippedDuplicates);
         logger.info("Invalid format: {}", tracker.skippedInvalidFormat);
+        if (tracker.lostRelationships.get() > 0) {
+            logger.error("Lost (write and dead-letter both failed): {}", tracker.lostRelationships);
+        }
 
-        if (tracker.totalLines > 0) {
-            double acceptanceRate = (double) tracker.acceptedRelationships / tracker.totalLines * 100;
+        if (tracker.totalLines.get() > 0) {
+            double acceptanceRate = (double) tracker.acceptedRelationships.get() / tracker.totalLines.get() * 100;
             logger.info("Overall acceptance rate: {:.2f}%", acceptanceRate);
         }
 
@@ -544,35 +547,197 @@ public class UmlsRelationshipImporter{
      * מחלקה לעקיב אחר סטטיסטיקות הייבוא
      */
     private static class RelationshipImportTracker {
-        int totalLines = 0;
-        int acceptedRelationships = 0;
-        int totalCreated = 0;
-        int batchCount = 0;
-        int skippedSelfLoops = 0;
-        int skippedNonDemo = 0;
-        int skippedInvalidRelType = 0;
-        int skippedMissingNodes = 0;
-        int skippedDuplicates = 0;
-        int skippedInvalidFormat = 0;
+        final AtomicLong totalLines = new AtomicLong();
+        final AtomicLong classifiedRows = new AtomicLong();
+        final AtomicLong acceptedRelationships = new AtomicLong();
+        final AtomicLong totalCreated = new AtomicLong();
+        final AtomicLong batchCount = new AtomicLong();
+        final AtomicLong skippedSelfLoops = new AtomicLong();
+        final AtomicLong skippedNonDemo = new AtomicLong();
+        final AtomicLong skippedInvalidRelType = new AtomicLong();
+        final AtomicLong skippedMissingNodes = new AtomicLong();
+        final AtomicLong skippedDuplicates = new AtomicLong();
+        final AtomicLong skippedInvalidFormat = new AtomicLong();
+        final AtomicLong lostRelationships = new AtomicLong();
+    }
+
+    /**
+     * איסוף מועמדים מכל תהליכוני הסיווג לאצוות, במחיצה לפי hash של CUI ההתחלה.
+     * מפתח הכפילות כולל את CUI ההתחלה, ולכן כל מפתח שייך למחיצה אחת ובדיקת הכפילויות בתוך הריצה נעשית
+     * תחת הנעילה של המחיצה בלבד. אצווה מלאה ממוינת לפי (התחלה, סוף) ונמסרת לתור המחיצה מחוץ לנעילה -
+     * אם התור מלא, תהליכון הסיווג ממתין (לחץ חוזר).
+     */
+    private static class BatchCollector {
+        private final MappedLongSet existingRelationships;
+        private final Partition[] partitions;
+        private final int queueCapacity;
+        private final RelationshipImportTracker tracker;
+        private final ImportThrottle throttle;
+
+        BatchCollector(MappedLongSet existingRelationships, int partitionCount,
+                       RelationshipImportTracker tracker, ImportThrottle throttle) {
+            this.existingRelationships = existingRelationships;
+            this.tracker = tracker;
+            this.throttle = throttle;
+            this.queueCapacity = Math.max(2, RELATIONSHIP_QUEUE_CAPACITY / partitionCount);
+            this.partitions = new Partition[partitionCount];
+            for (int i = 0; i < partitionCount; i++) {
+                partitions[i] = new Partition(queueCapacity);
+            }
+        }
+
+        void offer(RelationshipCandidate candidate) {
+            // 5. בדיקת כפילויות - מול הגרף (קריאה בלבד, מחוץ לנעילה) ומול מה שכבר התקבל בריצה
+            long key = candidate.getRelationshipKey();
+            if (existingRelationships.contains(key)) {
+                tracker.skippedDuplicates.incrementAndGet();
+                return;
+            }
+            Partition partition = partitions[partitionOf(candidate.cui1, partitions.length)];
+            List<RelationshipCandidate> fullBatch = null;
+            synchronized (partition) {
+                if (!partition.accepted.add(key)) {
+                    tracker.skippedDuplicates.incrementAndGet();
+                    return;
+                }
+                tracker.acceptedRelationships.incrementAndGet();
+                partition.current.add(candidate);
+                // גודל האצווה קטן כשה-commit-ים איטיים
+                if (partition.current.size() >= throttle.batchSize(RELATIONSHIP_BATCH_SIZE)) {
+                    fullBatch = partition.current;
+                    partition.current = new ArrayList<>();
+                }
+            }
+            if (fullBatch != null) {
+                enqueue(partition, fullBatch);
+            }
+        }
+
+        void flush() {
+            for (Partition partition : partitions) {
+                List<RelationshipCandidate> lastBatch;
+                synchronized (partition) {
+                    lastBatch = partition.current;
+                    partition.current = new ArrayList<>();
+                }
+                if (!lastBatch.isEmpty()) {
+                    enqueue(partition, lastBatch);
+                }
+            }
+        }
+
+        List<BlockingQueue<List<Map<String, Object>>>> queues() {
+            List<BlockingQueue<List<Map<String, Object>>>> queues = new ArrayList<>(partitions.length);
+            for (Partition partition : partitions) {
+                queues.add(partition.queue);
+            }
+            return queues;
+        }
+
+        int queuedBatches() {
+            int queued = 0;
+            for (Partition partition : partitions) {
+                queued += partition.queue.size();
+            }
+            return queued;
+        }
+
+        int queueCapacity() {
+            return partitions.length * queueCapacity;
+        }
+
+        private void enqueue(Partition partition, List<RelationshipCandidate> candidates) {
+            // סדר קבוע בתוך הטרנזקציה - מצמצם deadlock-ים מול מחיצות אחרות, אבל לא מונע אותם
+            candidates.sort(Comparator.comparingInt((RelationshipCandidate c) -> c.cui1).thenComparingInt(c -> c.cui2));
+            List<Map<String, Object>> batch = new ArrayList<>(candidates.size());
+            for (RelationshipCandidate candidate : candidates) {
+                batch.add(candidate.toMap());
+            }
+            try {
+                // תהליכון הסיווג נעצר כאן בזמן השהיה, ויוצא מהסריקה אחרי ביטול
+                throttle.checkpoint();
+                partition.queue.put(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while queueing relationship batch", e);
+            }
+        }
+    }
+
+    /**
+     * מחיצה של צמתי התחלה - האצווה הנוכחית, הקשרים שהתקבלו בריצה והתור של הכותב שלה
+     */
+    private static class Partition {
+        final BlockingQueue<List<Map<String, Object>>> queue;
+        final LongHashSet accepted = new LongHashSet();
+        List<RelationshipCandidate> current = new ArrayList<>();
+
+        Partition(int queueCapacity) {
+            this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        }
+    }
+
+    /**
+     * המחיצה של CUI - פיזור (Fibonacci hashing) כדי שקודים עוקבים לא ייפלו כולם באותה מחיצה
+     */
+    static int partitionOf(int cui, int partitionCount) {
+        return (int) (((cui * 0x9E3779B9L) & 0xFFFFFFFFL) * partitionCount >>> 32);
+    }
+
+    /**
+     * דיווח תפוקה לכל שלב בצינור (לשנייה, מאז הדיווח הקודם) ועומק התור
+     */
+    private static class PipelineMeter {
+        private long lastTime = System.currentTimeMillis();
+        private long lastClassified;
+        private long lastAccepted;
+        private long lastCreated;
+
+        synchronized void report(RelationshipImportTracker tracker, BatchCollector collector, ImportThrottle throttle) {
+            long now = System.currentTimeMillis();
+            double seconds = Math.max(1, now - lastTime) / 1000.0;
+            long classified = tracker.classifiedRows.get();
+            long accepted = tracker.acceptedRelationships.get();
+            long created = tracker.totalCreated.get();
+
+            logger.info("Pipeline: classify {}/s ({} total), accept {}/s ({} total), write {}/s ({} total), " +
+                            "write queue {}/{} batches, {} writers, batch size {}",
+                    Math.round((classified - lastClassified) / seconds), classified,
+                    Math.round((accepted - lastAccepted) / seconds), accepted,
+                    Math.round((created - lastCreated) / seconds), created,
+                    collector.queuedBatches(), collector.queueCapacity(),
+                    throttle.writerLimit(), throttle.batchSize(RELATIONSHIP_BATCH_SIZE));
+
+            lastTime = now;
+            lastClassified = classified;
+            lastAccepted = accepted;
+            lastCreated = created;
+        }
     }
 
     /**
      * מחלקה לייצוג מועמד קשר
      */
     private static class RelationshipCandidate {
-        final String cui1;
-        final String cui2;
+        final int cui1;
+        final int cui2;
+        final String startLabel;
+        final String endLabel;
         final String relationshipType;
+        final long relationshipKey;
         final double weight;
         final String source;
         final String originalRel;
         final String originalRela;
 
-        RelationshipCandidate(String cui1, String cui2, String relationshipType, double weight,
-                              String source, String originalRel, String originalRela) {
+        RelationshipCandidate(int cui1, int cui2, String startLabel, String endLabel, String relationshipType,
+                              long relationshipKey, double weight, String source, String originalRel, String originalRela) {
             this.cui1 = cui1;
             this.cui2 = cui2;
+            this.startLabel = startLabel;
+            this.endLabel = endLabel;
             this.relationshipType = relationshipType;
+            this.relationshipKey = relationshipKey;
             this.weight = weight;
             this.source = source;
             this.originalRel = originalRel;
@@ -581,8 +746,10 @@ public class UmlsRelationshipImporter{
 
         Map<String, Object> toMap() {
             Map<String, Object> map = new HashMap<>();
-            map.put("cui1", cui1);
-            map.put("cui2", cui2);
+            map.put("cui1", CuiCodec.decode(cui1));
+            map.put("cui2", CuiCodec.decode(cui2));
+            map.put("startLabel", startLabel);
+            map.put("endLabel", endLabel);
             map.put("relType", relationshipType);
             map.put("weight", weight);
             map.put("source", source);
@@ -591,8 +758,8 @@ public class UmlsRelationshipImporter{
             return map;
         }
 
-        String getRelationshipKey() {
-            return cui1 + "|" + relationshipType + "|" + cui2;
+        long getRelationshipKey() {
+            return relationshipKey;
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,71 @@
+package com.example.mediaid.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+
+/**
+ * מסנן Bloom חסום (blocked) על מפתחות long, בזיכרון מחוץ ל-heap
+ * כל מפתח נופל לבלוק אחד של 512 ביט (שורת מטמון אחת), וכל הביטים שלו נבדקים בתוך הבלוק,
+ * כך שבדיקה עולה גישת זיכרון אחת במקום k גישות אקראיות.
+ * הוספה אינה בטוחה מכמה תהליכונים; בדיקה אחרי סיום הבנייה בטוחה.
+ */
+public class BlockedBloomFilter {
+
+    private static final int BLOCK_LONGS = 8;
+    private static final int BLOCK_BITS = BLOCK_LONGS * Long.SIZE;
+    private static final int BIT_INDEX_BITS = 9;
+    private static final int HASHES = 7;
+    private static final int MAX_BLOCKS = Integer.MAX_VALUE / (BLOCK_LONGS * Long.BYTES);
+
+    private final LongBuffer bits;
+    private final int blocks;
+
+    /**
+     * @param expectedKeys - מספר המפתחות הצפוי
+     * @param bitsPerKey - 10 ביט למפתח נותנים כ-1% התראות שווא
+     */
+    public BlockedBloomFilter(long expectedKeys, int bitsPerKey) {
+        long wanted = Math.max(1, (Math.max(1, expectedKeys) * bitsPerKey + BLOCK_BITS - 1) / BLOCK_BITS);
+        this.blocks = (int) Math.min(MAX_BLOCKS, wanted);
+        this.bits = ByteBuffer.allocateDirect(blocks * BLOCK_LONGS * Long.BYTES).asLongBuffer();
+    }
+
+    public void put(long key) {
+        long hash = mix(key);
+        int base = block(hash) * BLOCK_LONGS;
+        long probe = mix(hash);
+        for (int i = 0; i < HASHES; i++) {
+            int bit = (int) (probe >>> (i * BIT_INDEX_BITS)) & (BLOCK_BITS - 1);
+            int word = base + (bit >>> 6);
+            bits.put(word, bits.get(word) | (1L << bit));
+        }
+    }
+
+    /**
+     * @return false אם המפתח בוודאות לא נוסף; true אם ייתכן שנוסף
+     */
+    public boolean mightContain(long key) {
+        long hash = mix(key);
+        int base = block(hash) * BLOCK_LONGS;
+        long probe = mix(hash);
+        for (int i = 0; i < HASHES; i++) {
+            int bit = (int) (probe >>> (i * BIT_INDEX_BITS)) & (BLOCK_BITS - 1);
+            if ((bits.get(base + (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int block(long hash) {
+        return (int) Long.remainderUnsigned(hash, blocks);
+    }
+
+    // ערבוב מלא של 64 ביט (splitmix64), כדי שמפתחות ארוזים ודומים יתפזרו על כל הבלוקים
+    private static long mix(long key) {
+        long z = key + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
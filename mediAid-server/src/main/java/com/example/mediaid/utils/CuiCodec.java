@@ -0,0 +1,74 @@
+package com.example.mediaid.utils;
+
+/**
+ * קידוד CUI של UMLS למספר שלם
+ * CUI הוא תמיד האות C ואחריה 7 ספרות, ולכן הוא נכנס ב-int (ואפילו ב-24 ביט) בלי איבוד מידע.
+ * בתוך תהליכי הייבוא והניתוח עובדים עם הקוד המספרי, ומחרוזות נוצרות רק בגבולות ה-API וה-Cypher.
+ */
+public final class CuiCodec {
+
+    /** ערך שמוחזר עבור מחרוזת שאינה CUI תקין */
+    public static final int INVALID = -1;
+
+    private static final int DIGITS = 7;
+    private static final int LENGTH = DIGITS + 1;
+
+    /** מספר הביטים שקוד CUI תופס (9,999,999 < 2^24) */
+    public static final int CODE_BITS = 24;
+
+    /** מספר הביטים למזהה סוג קשר במפתח קשר */
+    public static final int REL_TYPE_BITS = 16;
+
+    private CuiCodec() {
+    }
+
+    /**
+     * קידוד CUI ("C0004057") למספר (4057)
+     * @return הקוד, או INVALID אם המחרוזת אינה CUI תקין
+     */
+    public static int encode(CharSequence cui) {
+        if (cui == null || cui.length() != LENGTH || cui.charAt(0) != 'C') {
+            return INVALID;
+        }
+        int code = 0;
+        for (int i = 1; i < LENGTH; i++) {
+            char c = cui.charAt(i);
+            if (c < '0' || c > '9') {
+                return INVALID;
+            }
+            code = code * 10 + (c - '0');
+        }
+        return code;
+    }
+
+    /**
+     * פענוח קוד חזרה למחרוזת CUI עם אפסים מובילים
+     */
+    public static String decode(int code) {
+        if (code < 0 || code >= (1 << CODE_BITS)) {
+            throw new IllegalArgumentException("Not a CUI code: " + code);
+        }
+        char[] chars = new char[LENGTH];
+        chars[0] = 'C';
+        for (int i = LENGTH - 1; i > 0; i--) {
+            chars[i] = (char) ('0' + code % 10);
+            code /= 10;
+        }
+        return new String(chars);
+    }
+
+    public static boolean isValid(CharSequence cui) {
+        return encode(cui) != INVALID;
+    }
+
+    /**
+     * מפתח ייחודי לקשר מכוון (cui1)-[relType]->(cui2) ב-long אחד - במקום מחרוזת "cui1|relType|cui2"
+     * @param relTypeId - מזהה מספרי של סוג הקשר (קטן מ-2^16)
+     */
+    public static long relationshipKey(int cui1, int cui2, int relTypeId) {
+        if (relTypeId < 0 || relTypeId >= (1 << REL_TYPE_BITS)) {
+            throw new IllegalArgumentException("Relationship type id out of range: " + relTypeId);
+        }
+        return ((long) cui1 << (CODE_BITS + REL_TYPE_BITS)) | ((long) cui2 << REL_TYPE_BITS) | relTypeId;
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.mediaid.utils;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * קבוצת int בכתובת פתוחה (linear probing), ללא עטיפה ב-Integer
+ * תא ריק מסומן ב-0, ולכן המפתח 0 עצמו נשמר בדגל נפרד.
+ * לא בטוח לשימוש מכמה תהליכונים במקביל בזמן כתיבה.
+ */
+public class IntHashSet {
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private int[] keys;
+    private int mask;
+    private int size;
+    private boolean containsZero;
+
+    public IntHashSet() {
+        this(16);
+    }
+
+    public IntHashSet(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        keys = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * @return true אם המפתח נוסף (לא היה קיים)
+     */
+    public boolean add(int key) {
+        if (key == 0) {
+            if (containsZero) {
+                return false;
+            }
+            containsZero = true;
+            size++;
+            return true;
+        }
+        int slot = slot(key);
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        if (++size > keys.length * LOAD_FACTOR) {
+            rehash(keys.length << 1);
+        }
+        return true;
+    }
+
+    public void addAll(IntHashSet other) {
+        other.forEach(this::add);
+    }
+
+    public boolean contains(int key) {
+        if (key == 0) {
+            return containsZero;
+        }
+        int slot = slot(key);
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void forEach(IntConsumer action) {
+        if (containsZero) {
+            action.accept(0);
+        }
+        for (int key : keys) {
+            if (key != 0) {
+                action.accept(key);
+            }
+        }
+    }
+
+    public int[] toArray() {
+        int[] result = new int[size];
+        int index = 0;
+        if (containsZero) {
+            result[index++] = 0;
+        }
+        for (int key : keys) {
+            if (key != 0) {
+                result[index++] = key;
+            }
+        }
+        return result;
+    }
+
+    private int slot(int key) {
+        return mix(key) & mask;
+    }
+
+    static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private void rehash(int capacity) {
+        int[] old = keys;
+        keys = new int[capacity];
+        mask = capacity - 1;
+        for (int key : old) {
+            if (key != 0) {
+                int slot = slot(key);
+                while (keys[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        int[] sorted = toArray();
+        Arrays.sort(sorted);
+        return Arrays.toString(sorted);
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.mediaid.utils;
+
+/**
+ * מיפוי int -> int בכתובת פתוחה (linear probing), ללא עטיפה ב-Integer
+ * תא ריק מסומן במפתח 0, ולכן המפתח 0 עצמו נשמר בשדות נפרדים.
+ * לא בטוח לשימוש מכמה תהליכונים במקביל בזמן כתיבה.
+ */
+public class IntIntHashMap {
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private int[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+    private boolean containsZero;
+    private int zeroValue;
+
+    public IntIntHashMap() {
+        this(16);
+    }
+
+    public IntIntHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        keys = new int[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * @return הערך הקודם, או missingValue אם המפתח לא היה קיים
+     */
+    public int put(int key, int value, int missingValue) {
+        if (key == 0) {
+            int previous = containsZero ? zeroValue : missingValue;
+            if (!containsZero) {
+                containsZero = true;
+                size++;
+            }
+            zeroValue = value;
+            return previous;
+        }
+        int slot = IntHashSet.mix(key) & mask;
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) {
+                int previous = values[slot];
+                values[slot] = value;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size > keys.length * LOAD_FACTOR) {
+            rehash(keys.length << 1);
+        }
+        return missingValue;
+    }
+
+    public void put(int key, int value) {
+        put(key, value, 0);
+    }
+
+    /**
+     * @return הערך של המפתח, או missingValue אם אינו קיים
+     */
+    public int get(int key, int missingValue) {
+        if (key == 0) {
+            return containsZero ? zeroValue : missingValue;
+        }
+        int slot = IntHashSet.mix(key) & mask;
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return missingValue;
+    }
+
+    public boolean containsKey(int key) {
+        if (key == 0) {
+            return containsZero;
+        }
+        int slot = IntHashSet.mix(key) & mask;
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void forEach(IntIntConsumer action) {
+        if (containsZero) {
+            action.accept(0, zeroValue);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0) {
+                action.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new int[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int slot = IntHashSet.mix(oldKeys[i]) & mask;
+                while (keys[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface IntIntConsumer {
+        void accept(int key, int value);
+    }
+}
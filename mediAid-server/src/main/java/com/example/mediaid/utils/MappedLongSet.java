@@ -0,0 +1,193 @@
+package com.example.mediaid.utils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * קבוצת long גדולה מחוץ ל-heap - מערך ממוין בקובץ זמני ממופה לזיכרון, עם מסנן Bloom לפניו
+ * שני שלבים: add בזמן הטעינה, ואז seal שממיין ובונה את המסנן. אחרי seal הקבוצה לקריאה בלבד
+ * ו-contains בטוח מכמה תהליכונים. רוב המפתחות שאינם בקבוצה נדחים במסנן בלי לגעת במערך,
+ * ופגיעה במסנן מאומתת בחיפוש בינארי כך שהתשובה תמיד מדויקת.
+ */
+public class MappedLongSet implements AutoCloseable {
+
+    /** מספר ה-long בכל מיפוי (512MB) - מיפוי בודד מוגבל לאינדקס int */
+    private static final int DEFAULT_CHUNK_LONGS = 1 << 26;
+    private static final int BLOOM_BITS_PER_KEY = 10;
+    private static final int INSERTION_SORT_THRESHOLD = 32;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final int chunkLongs;
+    private final List<LongBuffer> chunks = new ArrayList<>();
+    private long size;
+    private BlockedBloomFilter bloom;
+
+    public MappedLongSet(Path directory) throws IOException {
+        this(directory, DEFAULT_CHUNK_LONGS);
+    }
+
+    MappedLongSet(Path directory, int chunkLongs) throws IOException {
+        Files.createDirectories(directory);
+        this.file = Files.createTempFile(directory, "mediaid-keys-", ".bin");
+        this.channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.chunkLongs = chunkLongs;
+    }
+
+    /**
+     * הוספת מפתח בשלב הטעינה (לא בטוח מכמה תהליכונים)
+     */
+    public void add(long key) {
+        if (bloom != null) {
+            throw new IllegalStateException("Set is sealed");
+        }
+        int offset = (int) (size % chunkLongs);
+        if (offset == 0) {
+            chunks.add(mapChunk(chunks.size()));
+        }
+        chunks.get(chunks.size() - 1).put(offset, key);
+        size++;
+    }
+
+    /**
+     * סיום הטעינה: מיון כל מיפוי בנפרד ובניית מסנן ה-Bloom
+     */
+    public void seal() {
+        if (bloom != null) {
+            return;
+        }
+        bloom = new BlockedBloomFilter(size, BLOOM_BITS_PER_KEY);
+        for (int c = 0; c < chunks.size(); c++) {
+            LongBuffer chunk = chunks.get(c);
+            int length = chunkLength(c);
+            sort(chunk, 0, length - 1);
+            for (int i = 0; i < length; i++) {
+                bloom.put(chunk.get(i));
+            }
+        }
+    }
+
+    public boolean contains(long key) {
+        if (bloom == null) {
+            throw new IllegalStateException("Set must be sealed before lookups");
+        }
+        if (!bloom.mightContain(key)) {
+            return false;
+        }
+        // כל מיפוי ממוין בנפרד, ויש רק מעטים כאלה
+        for (int c = 0; c < chunks.size(); c++) {
+            if (binarySearch(chunks.get(c), chunkLength(c), key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public void close() {
+        chunks.clear();
+        try {
+            channel.close();
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            // ב-Windows אי אפשר למחוק קובץ שעדיין ממופה - נמחק ביציאה
+            file.toFile().deleteOnExit();
+        }
+    }
+
+    private int chunkLength(int chunkIndex) {
+        return chunkIndex < chunks.size() - 1 ? chunkLongs : (int) (size - (long) chunkIndex * chunkLongs);
+    }
+
+    private LongBuffer mapChunk(int chunkIndex) {
+        long bytes = (long) chunkLongs * Long.BYTES;
+        try {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, chunkIndex * bytes, bytes);
+            return mapped.order(ByteOrder.nativeOrder()).asLongBuffer();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not map key file " + file, e);
+        }
+    }
+
+    private static boolean binarySearch(LongBuffer buffer, int length, long key) {
+        int low = 0;
+        int high = length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long value = buffer.get(mid);
+            if (value < key) {
+                low = mid + 1;
+            } else if (value > key) {
+                high = mid - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * מיון מהיר במקום על LongBuffer (Arrays.sort דורש מערך ב-heap).
+     * רקורסיה רק על החלק הקטן, כך שעומק המחסנית לוגריתמי.
+     */
+    private static void sort(LongBuffer buffer, int low, int high) {
+        while (high - low > INSERTION_SORT_THRESHOLD) {
+            long pivot = medianOfThree(buffer, low, (low + high) >>> 1, high);
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (buffer.get(i) < pivot) {
+                    i++;
+                }
+                while (buffer.get(j) > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(buffer, i++, j--);
+                }
+            }
+            if (j - low < high - i) {
+                sort(buffer, low, j);
+                low = i;
+            } else {
+                sort(buffer, i, high);
+                high = j;
+            }
+        }
+        for (int i = low + 1; i <= high; i++) {
+            long value = buffer.get(i);
+            int j = i - 1;
+            while (j >= low && buffer.get(j) > value) {
+                buffer.put(j + 1, buffer.get(j));
+                j--;
+            }
+            buffer.put(j + 1, value);
+        }
+    }
+
+    private static long medianOfThree(LongBuffer buffer, int a, int b, int c) {
+        long x = buffer.get(a);
+        long y = buffer.get(b);
+        long z = buffer.get(c);
+        return Math.max(Math.min(x, y), Math.min(Math.max(x, y), z));
+    }
+
+    private static void swap(LongBuffer buffer, int i, int j) {
+        long tmp = buffer.get(i);
+        buffer.put(i, buffer.get(j));
+        buffer.put(j, tmp);
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.mediaid.bl.build_UMLS_terms;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.example.mediaid.bl.build_UMLS_terms.UmlsTermHelper.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BestTermReducerTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void keepsSingleBestCandidatePerCui() throws Exception {
+        BestTermReducer reducer = new BestTermReducer(List.of("SNOMEDCT_US", "MSH"));
+
+        accept(reducer,
+                mrconso("C0018681", "Cephalgia", "MEDDRA", "PT", "Y"),
+                mrconso("C0018681", "Headache, NOS", "MSH", "PT", "Y"),
+                mrconso("C0018681", "Headache", "MSH", "PT", "Y"),
+                mrconso("C0018681", "Headache (finding)", "SNOMEDCT_US", "SY", "N"),
+                mrconso("C0004057", "Aspirin", "MSH", "SY", "Y"),
+                mrconso("C0004057", "Acetylsalicylic acid", "MSH", "PT", "Y"));
+
+        assertThat(reducer.size()).isEqualTo(2);
+        assertThat(reducer.results())
+                .containsEntry("C0018681", "Headache (finding)")
+                .containsEntry("C0004057", "Acetylsalicylic acid");
+    }
+
+    @Test
+    void breaksFullTiesAlphabetically() throws Exception {
+        BestTermReducer reducer = new BestTermReducer(List.of("MSH"));
+
+        accept(reducer,
+                mrconso("C1", "Beta", "MSH", "PT", "Y"),
+                mrconso("C1", "Alfa", "MSH", "PT", "Y"));
+
+        assertThat(reducer.results()).containsEntry("C1", "Alfa");
+    }
+
+    @Test
+    void ranksSourcesAndTermTypesByTheirPositionOnly() throws Exception {
+        // מקור שחוזר ברשימה שומר על המקום הראשון שלו, ומקור שהוא תחילית של מקור מועדף לא מקבל את הדירוג שלו
+        BestTermReducer reducer = new BestTermReducer(List.of("NCI", "MSH", "NCI", "RXNORM"));
+
+        accept(reducer,
+                mrconso("C1", "From RxNorm", "RXNORM", "PT", "Y"),
+                mrconso("C1", "From NCI", "NCI", "SY", "Y"),
+                mrconso("C2", "From MSHFRE", "MSHFRE", "PT", "Y"),
+                mrconso("C2", "From MSH", "MSH", "XX", "Y"),
+                mrconso("C3", "Unknown type", "MSH", "XX", "Y"),
+                mrconso("C3", "Synonym", "MSH", "SY", "Y"));
+
+        assertThat(reducer.results())
+                .containsEntry("C1", "From NCI")
+                .containsEntry("C2", "From MSH")
+                .containsEntry("C3", "Synonym");
+    }
+
+    // שורת MRCONSO מלאה עם השדות שהבוחר קורא
+    private static String mrconso(String cui, String name, String sab, String tty, String ispref) {
+        String[] fields = new String[18];
+        Arrays.fill(fields, "");
+        fields[MRCONSO_CUI] = cui;
+        fields[MRCONSO_LAT] = "ENG";
+        fields[MRCONSO_ISPREF] = ispref;
+        fields[MRCONSO_SAB] = sab;
+        fields[MRCONSO_TTY] = tty;
+        fields[MRCONSO_STR] = name;
+        return String.join("|", fields) + "|\n";
+    }
+
+    private void accept(BestTermReducer reducer, String... rows) throws Exception {
+        Path file = tempDir.resolve("MRCONSO-" + System.nanoTime() + ".RRF");
+        Files.writeString(file, String.join("", rows), StandardCharsets.UTF_8);
+        new RrfReader(file.toString(), MRCONSO_CUI, MRCONSO_LAT, MRCONSO_SAB, MRCONSO_TTY, MRCONSO_STR, MRCONSO_ISPREF)
+                .parallelism(1)
+                .forEach(row -> reducer.accept(row.getString(MRCONSO_CUI), row));
+    }
+}
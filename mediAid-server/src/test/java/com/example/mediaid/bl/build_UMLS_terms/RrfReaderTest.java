@@ -0,0 +1,106 @@
+package com.example.mediaid.bl.build_UMLS_terms;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RrfReaderTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void readsRequestedFieldsAcrossChunks() throws Exception {
+        Path file = tempDir.resolve("MRCONSO.RRF");
+        Files.writeString(file,
+                "C0004057|ENG|P|L1|PF|S1|Y|A1||||RXNORM|IN|1191|aspirin|0|N||\n" +
+                "C0004057|FRE|P|L2|PF|S2|Y|A2||||MSHFRE|MH|D1|aspirine|0|N||\r\n" +
+                "C0025598|ENG|P|L3|PF|S3|Y|A3||||MSH|MH|D2|Metformin|0|N||\n" +
+                "broken line\n" +
+                "C0018681|ENG|P|L4|PF|S4|Y|A4||||SNOMEDCT_US|PT|25064002|Céphalée|0|N||\n",
+                StandardCharsets.UTF_8);
+
+        Set<String> names = ConcurrentHashMap.newKeySet();
+        RrfReader.ScanResult result = new RrfReader(file.toString(), 0, 1, 11, 14)
+                .chunkSize(40)
+                .parallelism(4)
+                .filter(row -> row.fieldEquals(1, "ENG"))
+                .idFilter(0, List.of("C0004057", "C0018681"))
+                .forEach(row -> names.add(row.getString(0) + ":" + row.getString(11) + ":" + row.getString(14)));
+
+        assertThat(names).containsExactlyInAnyOrder(
+                "C0004057:RXNORM:aspirin",
+                "C0018681:SNOMEDCT_US:Céphalée");
+        assertThat(result.totalLines).isEqualTo(5);
+        assertThat(result.invalidLines).isEqualTo(1);
+        assertThat(result.deliveredRows).isEqualTo(2);
+    }
+
+    @Test
+    void readsGzipAndZipEntriesLikeThePlainFile() throws Exception {
+        // יותר מבלוק פריסה אחד, כדי לעבור גם על שורות שנחתכות בגבול בין בלוקים
+        StringBuilder content = new StringBuilder();
+        long expectedSum = 0;
+        for (int i = 0; i < 250_000; i++) {
+            content.append(String.format("C%07d|ENG|P|L%d|PF|S%d|Y|A%d||||MSH|MH|D%d|term number %d|0|N||%n", i, i, i, i, i, i));
+            expectedSum += i;
+        }
+        byte[] bytes = content.toString().getBytes(StandardCharsets.UTF_8);
+
+        Path gz = tempDir.resolve("MRCONSO.RRF.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(gz))) {
+            out.write(bytes);
+        }
+        Path zip = tempDir.resolve("umls.zip");
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zip))) {
+            out.putNextEntry(new ZipEntry("2024AB/META/MRCONSO.RRF"));
+            out.write(bytes);
+            out.closeEntry();
+        }
+
+        for (String location : List.of(gz.toString(), zip + "!/2024AB/META/MRCONSO.RRF", zip.toString())) {
+            AtomicLong sum = new AtomicLong();
+            RrfReader.ScanResult result = new RrfReader(location, 0, 14)
+                    .parallelism(3)
+                    .forEach(row -> sum.addAndGet(row.idCode(0)));
+
+            assertThat(result.totalLines).as(location).isEqualTo(250_000);
+            assertThat(result.invalidLines).as(location).isZero();
+            assertThat(sum.get()).as(location).isEqualTo(expectedSum);
+        }
+    }
+
+    @Test
+    void handlerFailureStopsCompressedRead() throws Exception {
+        Path gz = tempDir.resolve("MRSTY.RRF.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(gz))) {
+            out.write("C0004057|T109|A1.4.1.1.1|Organic Chemical|AT1|256|\n".repeat(1000).getBytes(StandardCharsets.UTF_8));
+        }
+
+        assertThatThrownBy(() -> new RrfReader(gz.toString(), 0, 1).parallelism(2).forEach(row -> {
+            throw new IllegalStateException("stop");
+        })).isInstanceOf(IllegalStateException.class).hasMessage("stop");
+    }
+
+    @Test
+    void idCodeRejectsMalformedIds() {
+        assertThat(RrfReader.idCode("C0004057")).isEqualTo(4057);
+        assertThat(RrfReader.idCode("T047")).isEqualTo(47);
+        assertThat(RrfReader.idCode("C00A4057")).isEqualTo(-1);
+        assertThat(RrfReader.idCode("")).isEqualTo(-1);
+    }
+}
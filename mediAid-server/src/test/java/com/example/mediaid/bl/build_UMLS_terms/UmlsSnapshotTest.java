@@ -0,0 +1,70 @@
+package com.example.mediaid.bl.build_UMLS_terms;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UmlsSnapshotTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void roundTripsOnlyMatchingTargets() throws Exception {
+        Path file = tempDir.resolve("terms.snapshot");
+        long diseaseKey = UmlsSnapshot.targetKey(Set.of("T047", "T191"), List.of("SNOMEDCT_US"));
+        long symptomKey = UmlsSnapshot.targetKey(Set.of("T184"), List.of("SNOMEDCT_US"));
+
+        UmlsSnapshot.write(file, 42L, Map.of("Diseases", diseaseKey, "Symptoms", symptomKey), Map.of(
+                "Diseases", Map.of("C0011849", "Diabetes mellitus", "C0020538", "Hypertensive disease"),
+                "Symptoms", Map.of("C0018681", "Headache")));
+
+        Map<String, Map<String, String>> read = UmlsSnapshot.read(file, 42L, Map.of(
+                "Diseases", UmlsSnapshot.targetKey(Set.of("T191", "T047"), List.of("SNOMEDCT_US")),
+                "Symptoms", UmlsSnapshot.targetKey(Set.of("T184"), List.of("MSH"))));
+
+        assertThat(read).containsOnlyKeys("Diseases");
+        assertThat(read.get("Diseases"))
+                .containsEntry("C0011849", "Diabetes mellitus")
+                .containsEntry("C0020538", "Hypertensive disease");
+    }
+
+    @Test
+    void keepsOtherTargetsOfTheSameReleaseWhenRewriting() throws Exception {
+        Path file = tempDir.resolve("terms.snapshot");
+        long diseaseKey = UmlsSnapshot.targetKey(Set.of("T047"), List.of("SNOMEDCT_US"));
+        long symptomKey = UmlsSnapshot.targetKey(Set.of("T184"), List.of("MSH"));
+        Map<String, Long> keys = Map.of("Diseases", diseaseKey, "Symptoms", symptomKey);
+
+        UmlsSnapshot.write(file, 42L, Map.of("Diseases", diseaseKey), Map.of("Diseases", Map.of("C0011849", "Diabetes mellitus")));
+        UmlsSnapshot.write(file, 42L, Map.of("Symptoms", symptomKey), Map.of("Symptoms", Map.of("C0018681", "Headache")));
+        assertThat(UmlsSnapshot.read(file, 42L, keys)).containsOnlyKeys("Diseases", "Symptoms");
+
+        UmlsSnapshot.write(file, 42L, Map.of("Symptoms", symptomKey), Map.of("Symptoms", Map.of("C0018681", "Cephalgia")));
+        assertThat(UmlsSnapshot.read(file, 42L, keys).get("Symptoms")).containsEntry("C0018681", "Cephalgia");
+        assertThat(UmlsSnapshot.read(file, 42L, keys)).containsOnlyKeys("Diseases", "Symptoms");
+
+        // גרסת מקור חדשה - הקבוצות הישנות לא עוברות
+        UmlsSnapshot.write(file, 43L, Map.of("Symptoms", symptomKey), Map.of("Symptoms", Map.of("C0018681", "Headache")));
+        assertThat(UmlsSnapshot.read(file, 43L, keys)).containsOnlyKeys("Symptoms");
+    }
+
+    @Test
+    void ignoresSnapshotOfDifferentSourceRelease() throws Exception {
+        Path file = tempDir.resolve("terms.snapshot");
+        long key = UmlsSnapshot.targetKey(Set.of("T184"), List.of("MSH"));
+        UmlsSnapshot.write(file, 1L, Map.of("Symptoms", key), Map.of("Symptoms", Map.of("C0018681", "Headache")));
+
+        assertThat(UmlsSnapshot.read(file, 2L, Map.of("Symptoms", key))).isEmpty();
+
+        Files.write(file, new byte[]{1, 2, 3});
+        assertThat(UmlsSnapshot.read(file, 1L, Map.of("Symptoms", key))).isEmpty();
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.mediaid.bl.emergency;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static com.example.mediaid.neo4j.EntityTypes.*;
+import static com.example.mediaid.neo4j.RelationshipTypes.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class MedicalGraphTest {
+
+    // M1 -TREATS-> D1 -CAUSES_SYMPTOM-> S1 <-CAUSES_SYMPTOM- D2 <-INFLUENCES- M1
+    // R1 -RISK_FACTOR_FOR-> D1 -REQUIRES_TEST-> L1, M1 -CAUSES_SIDE_EFFECT-> S2
+    // R1 -RISK_FACTOR_FOR-> G1 -LEADS_TO-> S2 (G1 בלי תווית מ-LABELS), D1 -CAUSES_SYMPTOM-> X1 (מחלה וגם סימפטום)
+    private final MedicalGraph graph = MedicalGraph.builder()
+            .addNode("M1", "Aspirin", MEDICATION)
+            .addNode("D1", "Gastritis", DISEASE)
+            .addNode("D2", "Ulcer", DISEASE)
+            .addNode("S1", "Abdominal pain", SYMPTOM)
+            .addNode("S2", "Nausea", SYMPTOM)
+            .addNode("R1", "Smoking", MedicalGraph.RISK_FACTOR_LABEL)
+            .addNode("L1", "Endoscopy", LABORATORY_TEST)
+            .addNode("G1", "Gene", "Gene")
+            .addNode("X1", "Chronic pain", DISEASE, SYMPTOM)
+            .addNode("M1", "Duplicate", MEDICATION)
+            .addRelationship("M1", "D1", TREATS, 0.8)
+            .addRelationship("D1", "S1", CAUSES_SYMPTOM, 0.6)
+            .addRelationship("M1", "D2", INFLUENCES, 0.9)
+            .addRelationship("D2", "S1", CAUSES_SYMPTOM, 0.9)
+            .addRelationship("R1", "D1", RISK_FACTOR_FOR, 0.5)
+            .addRelationship("D1", "L1", REQUIRES_TEST, 0.9)
+            .addRelationship("M1", "S2", CAUSES_SIDE_EFFECT, 0.7)
+            .addRelationship("M1", "G1", TREATS, 0.9)
+            .addRelationship("M1", "S1", "UNKNOWN_TYPE", 0.9)
+            .addRelationship("R1", "G1", RISK_FACTOR_FOR, 0.5)
+            .addRelationship("G1", "S2", LEADS_TO, 0.6)
+            .addRelationship("D1", "X1", CAUSES_SYMPTOM, 0.4)
+            .build();
+
+    @Test
+    void skipsUnknownTypesAndDuplicateNodesAndKeepsOnlyRiskEdgesOfUnlabelledNodes() {
+        assertThat(graph.nodeCount()).isEqualTo(9);
+        // M1 -TREATS-> G1 ו-UNKNOWN_TYPE מדולגים
+        assertThat(graph.relationshipCount()).isEqualTo(10);
+    }
+
+    @Test
+    void findsPathwaysScoredByAverageWeightAndLength() {
+        List<MedicalGraph.ScoredPath> paths = graph.findPathways("M1", List.of("S1"), 5, 100, 10);
+
+        assertThat(paths).hasSize(2);
+        // (0.9 + 0.9) / 2 * 0.72 לפני (0.8 + 0.6) / 2 * 0.72
+        assertThat(paths.get(0).score()).isCloseTo(0.648, within(1e-6));
+        assertThat(paths.get(1).score()).isCloseTo(0.504, within(1e-6));
+        assertThat(IntStream.of(paths.get(1).nodes()).mapToObj(graph::cui)).containsExactly("M1", "D1", "S1");
+        assertThat(IntStream.of(paths.get(1).edges()).mapToObj(graph::relationshipType)).containsExactly(TREATS, CAUSES_SYMPTOM);
+
+        assertThat(graph.findPathways("M1", List.of("S1"), 5, 100, 1)).hasSize(1);
+        assertThat(graph.findPathways("M1", List.of("S1"), 1, 100, 10)).isEmpty();
+    }
+
+    @Test
+    void propagatesRiskAsProductOfWeightsWithDecay() {
+        List<MedicalGraph.ScoredPath> paths = graph.findRiskPaths("R1", 0.8, List.of("S1"), 0.85, 4, 0.1, 100, 5);
+
+        assertThat(paths).hasSize(1);
+        assertThat(paths.get(0).score()).isCloseTo(0.8 * 0.5 * 0.6 * 0.85 * 0.85, within(1e-6));
+        assertThat(paths.get(0).length()).isEqualTo(2);
+
+        assertThat(graph.findRiskPaths("R1", 0.8, List.of("S1"), 0.85, 4, 0.2, 100, 5)).isEmpty();
+    }
+
+    @Test
+    void propagatesRiskThroughNodesWithoutLoadedLabels() {
+        List<MedicalGraph.ScoredPath> paths = graph.findRiskPaths("R1", 0.8, List.of("S2"), 0.85, 4, 0.1, 100, 5);
+
+        assertThat(paths).singleElement()
+                .satisfies(p -> assertThat(IntStream.of(p.nodes()).mapToObj(graph::cui)).containsExactly("R1", "G1", "S2"));
+        assertThat(graph.findPathways("R1", List.of("S2"), 5, 100, 10)).isEmpty();
+    }
+
+    @Test
+    void matchesNodesByAnyOfTheirLabels() {
+        int x1 = graph.diseaseSymptoms("D1", "X1").get(0).to();
+
+        assertThat(graph.label(x1)).isEqualTo(DISEASE);
+        assertThat(graph.hasLabel(x1, SYMPTOM)).isTrue();
+        assertThat(graph.hasLabel(x1, MEDICATION)).isFalse();
+        assertThat(graph.possibleTreatments("X1", 5)).singleElement()
+                .satisfies(t -> assertThat(t.confidence()).isCloseTo(0.6, within(1e-6)));
+    }
+
+    @Test
+    void findsTreatmentsThroughDiseasesCausingTheSymptom() {
+        List<MedicalGraph.Treatment> treatments = graph.possibleTreatments("S1", 5);
+
+        assertThat(treatments).hasSize(1);
+        assertThat(graph.cui(treatments.get(0).medication())).isEqualTo("M1");
+        assertThat(graph.cui(treatments.get(0).disease())).isEqualTo("D1");
+        assertThat(treatments.get(0).confidence()).isCloseTo(0.7, within(1e-6));
+    }
+
+    @Test
+    void findsDirectConnectionsAndTests() {
+        assertThat(graph.medicationSideEffects("M1", "S2")).singleElement()
+                .satisfies(c -> assertThat(c.confidence()).isCloseTo(0.7, within(1e-6)));
+        assertThat(graph.medicationSideEffects("M1", "S1")).isEmpty();
+        assertThat(graph.diseaseSymptoms("D1", "S1")).hasSize(1);
+
+        assertThat(graph.requiredTests("D1", DISEASE, 5)).singleElement()
+                .satisfies(c -> assertThat(graph.cui(c.to())).isEqualTo("L1"));
+        assertThat(graph.requiredTests("D1", SYMPTOM, 5)).isEmpty();
+    }
+}
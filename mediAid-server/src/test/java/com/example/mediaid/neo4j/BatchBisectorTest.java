@@ -0,0 +1,52 @@
+package com.example.mediaid.neo4j;
+
+import org.junit.jupiter.api.Test;
+import org.neo4j.driver.exceptions.ServiceUnavailableException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BatchBisectorTest {
+
+    @Test
+    void isolatesBadRowsAndWritesTheRestInLargeChunks() {
+        List<Integer> rows = IntStream.range(0, 64).boxed().toList();
+        List<Integer> written = new ArrayList<>();
+        List<Integer> rejected = new ArrayList<>();
+        int[] transactions = {0};
+
+        int created = BatchBisector.write(rows, chunk -> {
+            transactions[0]++;
+            if (chunk.contains(13) || chunk.contains(40)) {
+                throw new IllegalArgumentException("bad row");
+            }
+            written.addAll(chunk);
+            return chunk.size();
+        }, BatchBisector::isRowFailure, (row, cause) -> rejected.add(row));
+
+        assertThat(rejected).containsExactly(13, 40);
+        assertThat(created).isEqualTo(62);
+        assertThat(written).hasSize(62).doesNotContain(13, 40);
+        // שתי שורות פגומות ב-64: לכל היותר 2 * (log2(64) * 2) + 1 טרנזקציות, לא 64
+        assertThat(transactions[0]).isLessThanOrEqualTo(25);
+    }
+
+    @Test
+    void doesNotSplitWhenTheDatabaseIsUnavailable() {
+        List<Integer> rows = List.of(1, 2, 3, 4);
+        List<Integer> rejected = new ArrayList<>();
+        int[] transactions = {0};
+
+        int created = BatchBisector.write(rows, chunk -> {
+            transactions[0]++;
+            throw new ServiceUnavailableException("connection refused");
+        }, BatchBisector::isRowFailure, (row, cause) -> rejected.add(row));
+
+        assertThat(created).isZero();
+        assertThat(transactions[0]).isEqualTo(1);
+        assertThat(rejected).containsExactly(1, 2, 3, 4);
+    }
+}
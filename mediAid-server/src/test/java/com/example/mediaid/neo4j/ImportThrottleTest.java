@@ -0,0 +1,80 @@
+package com.example.mediaid.neo4j;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ImportThrottleTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(500);
+
+    @Test
+    void halvesOnSlowCommitAndGrowsBackAfterFastWindows() throws Exception {
+        ImportThrottle throttle = new ImportThrottle(100, 4);
+        assertThat(throttle.writerLimit()).isEqualTo(4);
+        assertThat(throttle.batchSize(5000)).isEqualTo(5000);
+
+        throttle.acquire();
+        throttle.release(SLOW, true);
+        assertThat(throttle.writerLimit()).isEqualTo(2);
+        assertThat(throttle.batchSize(5000)).isEqualTo(2500);
+
+        // חלון של commit-ים מהירים (כמספר הכותבים המותרים) מוסיף כותב אחד וצעד אחד לאצווה
+        for (int i = 0; i < 2; i++) {
+            throttle.acquire();
+            throttle.release(FAST, true);
+        }
+        assertThat(throttle.writerLimit()).isEqualTo(3);
+        assertThat(throttle.batchSize(5000)).isEqualTo(3000);
+    }
+
+    @Test
+    void slowCommitsThatStartedBeforeTheLastDecreaseDoNotDecreaseAgain() throws Exception {
+        ImportThrottle throttle = new ImportThrottle(100, 8);
+        for (int i = 0; i < 3; i++) {
+            throttle.acquire();
+        }
+        // שלושה commit-ים איטיים שרצו במקביל - ירידה אחת בלבד
+        long elapsed = TimeUnit.SECONDS.toNanos(5);
+        throttle.release(elapsed, true);
+        throttle.release(elapsed, true);
+        throttle.release(elapsed, false);
+        assertThat(throttle.writerLimit()).isEqualTo(4);
+        assertThat(throttle.details()).containsEntry("slowCommits", 2L).containsEntry("failedCommits", 1L);
+    }
+
+    @Test
+    void pausedWritersWaitAndCancelReleasesThem() throws Exception {
+        ImportThrottle throttle = new ImportThrottle(100, 2);
+        throttle.pause();
+
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicReference<Throwable> outcome = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            started.countDown();
+            try {
+                throttle.acquire();
+            } catch (Throwable t) {
+                outcome.set(t);
+            }
+        });
+        writer.start();
+        started.await();
+
+        writer.join(200);
+        assertThat(writer.isAlive()).isTrue();
+
+        throttle.cancel();
+        writer.join(5000);
+        assertThat(writer.isAlive()).isFalse();
+        assertThat(outcome.get()).isInstanceOf(CancellationException.class);
+        assertThatThrownBy(throttle::checkpoint).isInstanceOf(CancellationException.class);
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.mediaid.neo4j;
+
+import com.example.mediaid.bl.build_UMLS_terms.RrfReader;
+import com.example.mediaid.utils.CuiCodec;
+import com.example.mediaid.utils.IntHashSet;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MrrelClassifierTest {
+
+    private static final int REL = 3;
+    private static final int RELA = 7;
+    private static final int SAB = 10;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void internsEachRelationCombinationOnceAndMatchesSlowPath() throws Exception {
+        Path mrrel = tempDir.resolve("MRREL.RRF");
+        Files.write(mrrel, List.of(
+                line("C0025598", "RO", "C0011849", "may_treat", "RXNORM"),
+                line("C0025598", "RO", "C0011860", "may_treat", "RXNORM"),
+                line("C0011849", "RN", "C0011860", "", "MSH"),
+                line("C0011849", "RO", "C0025598", "may_be_treated_by", "RXNORM"),
+                line("C0011849", "RN", "C0011860", "", "MSH")));
+
+        IntHashSet diseases = new IntHashSet();
+        diseases.add(CuiCodec.encode("C0011849"));
+        diseases.add(CuiCodec.encode("C0011860"));
+        IntHashSet medications = new IntHashSet();
+        medications.add(CuiCodec.encode("C0025598"));
+        IntHashSet symptoms = new IntHashSet();
+        symptoms.add(CuiCodec.encode("C0011849"));
+
+        MrrelClassifier classifier = new MrrelClassifier(Map.of(
+                EntityTypes.DISEASE, diseases,
+                EntityTypes.MEDICATION, medications,
+                EntityTypes.SYMPTOM, symptoms), REL, RELA, SAB);
+
+        ConcurrentLinkedQueue<MrrelClassifier.RelationEntry> entries = new ConcurrentLinkedQueue<>();
+        new RrfReader(mrrel.toString(), 0, REL, 4, RELA, SAB, 14)
+                .parallelism(1)
+                .forEach(row -> entries.add(classifier.relation(row)));
+
+        assertThat(classifier.dictionarySize()).isEqualTo(3);
+        List<MrrelClassifier.RelationEntry> list = List.copyOf(entries);
+        assertThat(list.get(0)).isSameAs(list.get(1));
+        assertThat(list.get(2)).isSameAs(list.get(4));
+
+        MrrelClassifier.RelationEntry mayTreat = list.get(0);
+        assertThat(mayTreat.relationshipType()).isEqualTo(MrrelClassifier.relationshipType("RO", "may_treat"));
+        assertThat(mayTreat.weight()).isEqualTo(RelationshipTypes.calculateRelationshipWeight("may_treat", "RXNORM"));
+        assertThat(mayTreat.source()).isEqualTo("RXNORM");
+
+        int both = classifier.typeMask(CuiCodec.encode("C0011849"));
+        assertThat(MrrelClassifier.primaryLabel(both)).isEqualTo(EntityTypes.DISEASE);
+        assertThat(Integer.bitCount(both)).isEqualTo(2);
+        assertThat(classifier.typeMask(CuiCodec.encode("C9999999"))).isZero();
+        assertThat(classifier.nodeCuis().size()).isEqualTo(3);
+    }
+
+    private static String line(String cui1, String rel, String cui2, String rela, String sab) {
+        // CUI1|AUI1|STYPE1|REL|CUI2|AUI2|STYPE2|RELA|RUI|SRUI|SAB|SL|RG|DIR|SUPPRESS|CVF|
+        return cui1 + "|A1|SCUI|" + rel + "|" + cui2 + "|A2|SCUI|" + rela + "|R1||" + sab + "|" + sab + "|||N||";
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.mediaid.neo4j;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class Neo4jAdminCsvWriterTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void writesOneCompressedFilePerLabelAndTypeWithHeaders() throws Exception {
+        String command;
+        try (Neo4jAdminCsvWriter writer = new Neo4jAdminCsvWriter(tempDir)) {
+            writer.writeNode("C0011849", "Diabetes \"type 2\"", EntityTypes.DISEASE,
+                    List.of(EntityTypes.CONCEPT, EntityTypes.DISEASE, EntityTypes.SYMPTOM));
+            writer.writeNode("C0025598", "Metformin", EntityTypes.MEDICATION,
+                    List.of(EntityTypes.CONCEPT, EntityTypes.MEDICATION));
+            writer.writeRelationship("C0025598", "C0011849", "TREATS", 0.9, "RXNORM");
+            command = writer.importCommand("neo4j");
+        }
+
+        assertThat(read(tempDir.resolve("nodes-Disease.csv.gz"))).containsExactly(
+                "cui:ID(Concept),name,:LABEL",
+                "C0011849,\"Diabetes \"\"type 2\"\"\",Concept;Disease;Symptom");
+        assertThat(read(tempDir.resolve("relationships-TREATS.csv.gz"))).containsExactly(
+                ":START_ID(Concept),:END_ID(Concept),:TYPE,weight:double,source",
+                "C0025598,C0011849,TREATS,0.9,\"RXNORM\"");
+        assertThat(command)
+                .startsWith("neo4j-admin database import full --nodes=")
+                .contains("nodes-Medication.csv.gz", "--relationships=")
+                .endsWith(" neo4j");
+    }
+
+    private static List<String> read(Path file) throws Exception {
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8).lines().toList();
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.mediaid.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CuiCodecTest {
+
+    @Test
+    void encodesAndDecodesCuis() {
+        assertThat(CuiCodec.encode("C0004057")).isEqualTo(4057);
+        assertThat(CuiCodec.decode(4057)).isEqualTo("C0004057");
+        assertThat(CuiCodec.decode(CuiCodec.encode("C9999999"))).isEqualTo("C9999999");
+
+        assertThat(CuiCodec.encode("T047")).isEqualTo(CuiCodec.INVALID);
+        assertThat(CuiCodec.encode("C000405")).isEqualTo(CuiCodec.INVALID);
+        assertThat(CuiCodec.encode("C00040X7")).isEqualTo(CuiCodec.INVALID);
+        assertThat(CuiCodec.encode(null)).isEqualTo(CuiCodec.INVALID);
+    }
+
+    @Test
+    void relationshipKeysAreDirectionalAndTypeSpecific() {
+        int aspirin = CuiCodec.encode("C0004057");
+        int headache = CuiCodec.encode("C0018681");
+
+        long treats = CuiCodec.relationshipKey(aspirin, headache, 1);
+        assertThat(treats).isNotEqualTo(CuiCodec.relationshipKey(headache, aspirin, 1));
+        assertThat(treats).isNotEqualTo(CuiCodec.relationshipKey(aspirin, headache, 2));
+        assertThat(treats).isEqualTo(CuiCodec.relationshipKey(aspirin, headache, 1));
+    }
+}
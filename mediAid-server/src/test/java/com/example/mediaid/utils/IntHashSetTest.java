@@ -0,0 +1,45 @@
+package com.example.mediaid.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IntHashSetTest {
+
+    @Test
+    void growsAndKeepsAllKeysIncludingZero() {
+        IntHashSet set = new IntHashSet(2);
+        for (int i = 0; i < 10_000; i += 3) {
+            assertThat(set.add(i)).isTrue();
+        }
+        assertThat(set.add(0)).isFalse();
+
+        assertThat(set.size()).isEqualTo(3334);
+        assertThat(set.contains(0)).isTrue();
+        assertThat(set.contains(9999)).isTrue();
+        assertThat(set.contains(10)).isFalse();
+        assertThat(set.toArray()).hasSize(3334);
+    }
+
+    @Test
+    void intIntMapReplacesValues() {
+        IntIntHashMap map = new IntIntHashMap();
+        for (int i = 0; i < 1000; i++) {
+            map.put(i, i * 2);
+        }
+        assertThat(map.put(7, 70, -1)).isEqualTo(14);
+        assertThat(map.get(7, -1)).isEqualTo(70);
+        assertThat(map.get(0, -1)).isEqualTo(0);
+        assertThat(map.get(5000, -1)).isEqualTo(-1);
+        assertThat(map.size()).isEqualTo(1000);
+    }
+
+    @Test
+    void longSetDeduplicatesRelationshipKeys() {
+        LongHashSet set = new LongHashSet();
+        assertThat(set.add(CuiCodec.relationshipKey(4057, 18681, 3))).isTrue();
+        assertThat(set.add(CuiCodec.relationshipKey(4057, 18681, 3))).isFalse();
+        assertThat(set.contains(CuiCodec.relationshipKey(18681, 4057, 3))).isFalse();
+        assertThat(set.size()).isEqualTo(1);
+    }
+}
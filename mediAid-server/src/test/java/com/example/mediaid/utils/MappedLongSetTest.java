@@ -0,0 +1,69 @@
+package com.example.mediaid.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MappedLongSetTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void answersExactlyAcrossSeveralChunks() throws Exception {
+        Random random = new Random(42);
+        Set<Long> expected = new HashSet<>();
+        try (MappedLongSet set = new MappedLongSet(tempDir, 1024)) {
+            for (int i = 0; i < 5000; i++) {
+                long key = CuiCodec.relationshipKey(random.nextInt(1 << 20), random.nextInt(1 << 20), random.nextInt(40));
+                expected.add(key);
+                set.add(key);
+            }
+            set.seal();
+
+            assertThat(set.size()).isEqualTo(5000);
+            for (long key : expected) {
+                assertThat(set.contains(key)).isTrue();
+            }
+            for (int i = 0; i < 5000; i++) {
+                long probe = random.nextLong();
+                assertThat(set.contains(probe)).isEqualTo(expected.contains(probe));
+            }
+        }
+        assertThat(tempDir).isEmptyDirectory();
+    }
+
+    @Test
+    void rejectsLookupsBeforeSealAndAddsAfter() throws Exception {
+        try (MappedLongSet set = new MappedLongSet(tempDir)) {
+            set.add(7);
+            assertThatThrownBy(() -> set.contains(7)).isInstanceOf(IllegalStateException.class);
+            set.seal();
+            assertThat(set.contains(7)).isTrue();
+            assertThatThrownBy(() -> set.add(8)).isInstanceOf(IllegalStateException.class);
+        }
+    }
+
+    @Test
+    void bloomFilterHasNoFalseNegatives() {
+        BlockedBloomFilter bloom = new BlockedBloomFilter(10_000, 10);
+        for (long key = 0; key < 10_000; key++) {
+            bloom.put(key << 16);
+        }
+        int falsePositives = 0;
+        for (long key = 0; key < 10_000; key++) {
+            assertThat(bloom.mightContain(key << 16)).isTrue();
+            if (bloom.mightContain((key << 16) | 1)) {
+                falsePositives++;
+            }
+        }
+        assertThat(falsePositives).isLessThan(500);
+    }
+}